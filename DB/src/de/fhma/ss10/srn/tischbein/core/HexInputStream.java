@@ -0,0 +1,123 @@
+package de.fhma.ss10.srn.tischbein.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Ein {@link InputStream}, der Hextext aus dem darunter liegenden Stream liest und die dekodierten Bytes liefert.
+ * Zeilenumbrüche werden überlesen, so dass sowohl {@link Utils#toHexLine(byte[])} als auch
+ * {@link Utils#toHexText(byte[])} gelesen werden kann. Es wird kein String für den gesamten Text aufgebaut.
+ * 
+ * @author Smolli
+ */
+public final class HexInputStream extends FilterInputStream {
+
+    /** Hält die Größe des Zeichenpuffers. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Hält die gelesenen Zeichen. */
+    private final byte[] buffer = new byte[HexInputStream.BUFFER_SIZE];
+    /** Hält die Leseposition im Puffer. */
+    private int pos;
+    /** Hält die Anzahl der Zeichen im Puffer. */
+    private int limit;
+
+    /**
+     * Erstellt einen neuen {@link HexInputStream}.
+     * 
+     * @param in
+     *            Der Stream mit dem Hextext.
+     */
+    public HexInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (this.limit - this.pos + this.in.available()) / 2;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int high = this.nextDigit();
+
+        if (high < 0) {
+            return -1;
+        }
+
+        int low = this.nextDigit();
+
+        if (low < 0) {
+            throw new IOException("Der Hextext endet mit einer halben Ziffer!");
+        }
+
+        return (high << Utils.NIBBLE_BITS) | low;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        int count = 0;
+
+        while (count < len) {
+            int value = this.read();
+
+            if (value < 0) {
+                break;
+            }
+
+            b[off + count++] = (byte) value;
+        }
+
+        return ((count == 0) && (len > 0)) ? -1 : count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long skipped = 0;
+
+        while ((skipped < n) && (this.read() >= 0)) {
+            skipped++;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * Liest die nächste Hexziffer und überliest dabei Zeilenumbrüche.
+     * 
+     * @return Der Wert der Ziffer oder -1 am Ende des Streams.
+     * @throws IOException
+     *             Wird geworfen, wenn der Stream nicht gelesen werden kann oder ein ungültiges Zeichen enthält.
+     */
+    private int nextDigit() throws IOException {
+        while (true) {
+            if (this.pos == this.limit) {
+                this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+                this.pos = 0;
+
+                if (this.limit <= 0) {
+                    this.limit = 0;
+
+                    return -1;
+                }
+            }
+
+            char c = (char) this.buffer[this.pos++];
+
+            if ((c != '\n') && (c != '\r')) {
+                try {
+                    return Utils.hexValue(c);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Ungültiger Hextext!", e);
+                }
+            }
+        }
+    }
+
+}
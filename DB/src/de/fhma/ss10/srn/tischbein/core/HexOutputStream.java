@@ -0,0 +1,93 @@
+package de.fhma.ss10.srn.tischbein.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Ein {@link OutputStream}, der die geschriebenen Bytes als Hextext in den darunter liegenden Stream schreibt. Wie bei
+ * {@link Utils#toHexText(byte[])} wird nach jeweils {@link Utils#TEXT_BLOCK_WIDTH} Ziffern ein Zeilenumbruch
+ * eingefügt, die letzte Zeile endet ohne Umbruch. Es wird kein String für den gesamten Text aufgebaut.
+ * 
+ * @author Smolli
+ */
+public final class HexOutputStream extends FilterOutputStream {
+
+    /** Hält die Größe des Zeichenpuffers. */
+    private static final int BUFFER_SIZE = 4096;
+
+    /** Hält die kodierten Zeichen, bis sie geschrieben werden. */
+    private final byte[] buffer = new byte[HexOutputStream.BUFFER_SIZE];
+    /** Hält die Anzahl der Zeichen im Puffer. */
+    private int count;
+    /** Hält die Anzahl der Ziffern in der aktuellen Zeile. */
+    private int column;
+
+    /**
+     * Erstellt einen neuen {@link HexOutputStream}.
+     * 
+     * @param out
+     *            Der Stream, in den der Hextext geschrieben wird.
+     */
+    public HexOutputStream(final OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.flushBuffer();
+
+        this.out.flush();
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            this.write(b[i]);
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.writeDigit(Utils.HEX_DIGITS[(b >> Utils.NIBBLE_BITS) & Utils.NIBBLE_MASK]);
+        this.writeDigit(Utils.HEX_DIGITS[b & Utils.NIBBLE_MASK]);
+    }
+
+    /**
+     * Schreibt den Puffer in den darunter liegenden Stream.
+     * 
+     * @throws IOException
+     *             Wird geworfen, wenn der Puffer nicht geschrieben werden kann.
+     */
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buffer, 0, this.count);
+
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Schreibt eine Ziffer und bricht die Zeile gegebenenfalls vorher um.
+     * 
+     * @param digit
+     *            Die Hexziffer.
+     * @throws IOException
+     *             Wird geworfen, wenn der Puffer nicht geschrieben werden kann.
+     */
+    private void writeDigit(final char digit) throws IOException {
+        // Platz für Umbruch und Ziffer
+        if (this.count + 2 > this.buffer.length) {
+            this.flushBuffer();
+        }
+
+        if (this.column == Utils.TEXT_BLOCK_WIDTH) {
+            this.buffer[this.count++] = '\n';
+            this.column = 0;
+        }
+
+        this.buffer[this.count++] = (byte) digit;
+        this.column++;
+    }
+
+}
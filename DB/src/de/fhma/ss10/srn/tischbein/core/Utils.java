@@ -4,15 +4,34 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.security.Key;
+import java.security.KeyFactory;
 import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
 
 /**
  * Werkzeugklasse. Enthält viele Methoden zum Konvertieren von Daten und zum Erzeugen von MD5-Summen.
@@ -21,37 +40,108 @@ import java.security.SecureRandom;
  */
 public final class Utils {
     /** Hält die Breite eines Hextextes. */
-    private static final int TEXT_BLOCK_WIDTH = 64;
-    /** Hält den Wert für 0xff. */
-    private static final int NIBBLE_MAX_VALUE = 16;
-    /** Hält das Maximum eines Unsinged Byte (255). */
-    private static final int UNSIGNED_BYTE_MAX_VALUE = 0xff;
+    static final int TEXT_BLOCK_WIDTH = 64;
+    /** Hält die Anzahl der Bits eines Nibbles. */
+    static final int NIBBLE_BITS = 4;
+    /** Hält die Maske für das untere Nibble. */
+    static final int NIBBLE_MASK = 0x0f;
+    /** Hält die Hexziffern, indiziert nach ihrem Wert. */
+    static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** Hält den Wert jeder Hexziffer, indiziert nach ihrem Zeichen, oder -1 für andere Zeichen. */
+    static final byte[] HEX_VALUES = new byte[Byte.MAX_VALUE + 1];
+    /** Hält die Puffergröße beim Kopieren von Streams. */
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    /** Kennung eines AES-Schlüssels im Rohformat. */
+    private static final byte KEY_AES_RAW = 1;
+    /** Kennung eines öffentlichen RSA-Schlüssels im X.509-Format. */
+    private static final byte KEY_RSA_X509 = 2;
+    /** Kennung eines privaten RSA-Schlüssels im PKCS#8-Format. */
+    private static final byte KEY_RSA_PKCS8 = 3;
+    /** Das erste Byte eines serialisierten Java-Objekts (0xAC), an dem das alte Schlüsselformat erkannt wird. */
+    private static final byte SERIALIZED_MAGIC = (byte) 0xac;
+    /** Hält die RSA-Schlüsselfabrik pro Thread, da {@link KeyFactory} nicht threadsicher ist. */
+    private static final ThreadLocal<KeyFactory> RSA_KEY_FACTORY = new ThreadLocal<KeyFactory>() {
+
+        @Override
+        protected KeyFactory initialValue() {
+            try {
+                return KeyFactory.getInstance(RsaCrypto.RSA_ALGO_NAME);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                return null;
+            }
+        }
+
+    };
     /** Hält den globalen SecureRandom-Generator. */
     private static final SecureRandom SECURE_RANDOM = new SecureRandom();
 
-    /** Enthält den MD5-Konverter. */
-    private static MessageDigest md5 = null;
+    /** Enthält den MD5-Konverter pro Thread, da {@link MessageDigest} nicht threadsicher ist. */
+    private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                return null;
+            }
+        }
+
+    };
 
     static {
-        try {
-            Utils.md5 = MessageDigest.getInstance("MD5");
-        } catch (Exception e) {
-            e.printStackTrace();
+        Arrays.fill(Utils.HEX_VALUES, (byte) -1);
+
+        for (int i = 0; i < Utils.HEX_DIGITS.length; i++) {
+            Utils.HEX_VALUES[Utils.HEX_DIGITS[i]] = (byte) i;
+            Utils.HEX_VALUES[Character.toUpperCase(Utils.HEX_DIGITS[i])] = (byte) i;
         }
     }
 
+    /**
+     * Kopiert den gesamten Inhalt eines Streams in einen anderen Stream. Keiner der beiden Streams wird geschlossen.
+     * 
+     * @param in
+     *            Der Quellstream.
+     * @param out
+     *            Der Zielstream.
+     * @return Die Anzahl der kopierten Bytes.
+     * @throws IOException
+     *             Wird geworfen, wenn einer der Streams nicht gelesen oder beschrieben werden konnte.
+     */
+    public static long copyStream(final InputStream in, final OutputStream out) throws IOException {
+        byte[] buffer = new byte[Utils.STREAM_BUFFER_SIZE];
+        long total = 0;
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+
+            total += read;
+        }
+
+        return total;
+    }
+
     /**
      * Erstellt einen {@link BufferedReader} anhand des Dateinamens.
      * 
      * @param filename
      *            Der Dateiname.
+     * @param charset
+     *            Der Zeichensatz der Datei.
      * @return Gibt einen {@link BufferedReader} zurück.
      * @throws UtilsException
      *             Wird geworfen, wenn der Reader nicht erstellt werden konnte.
      */
-    public static BufferedReader createBufferedReader(final String filename) throws UtilsException {
+    public static BufferedReader createBufferedReader(final String filename, final Charset charset)
+            throws UtilsException {
         try {
-            return new BufferedReader(new FileReader(filename));
+            return new BufferedReader(new InputStreamReader(new FileInputStream(filename), charset));
         } catch (FileNotFoundException e) {
             throw new UtilsException("Kann den Reader nicht erzeugen!", e);
         }
@@ -66,21 +156,25 @@ public final class Utils {
      *            Wenn <code>append</code> auf <code>true</code> gesetzt ist, wird der Writer im anhänge-Modus geöffnet
      *            und alle Daten, die hineingeschrieben werden, werden an das Ende der Datei angehängt. Wenn er auf
      *            <code>false</code> gesetzt ist, wird eine bestehende Datei überschrieben.
+     * @param charset
+     *            Der Zeichensatz der Datei.
      * @return Gibt den {@link BufferedWriter} zurück.
      * @throws UtilsException
      *             Wird geworfen, wenn die Datei nicht zum Schreiben geöffnet werden konnte.
      */
-    public static BufferedWriter createBufferedWriter(final String filename, final boolean append)
-            throws UtilsException {
+    public static BufferedWriter createBufferedWriter(final String filename, final boolean append,
+            final Charset charset) throws UtilsException {
         try {
-            return new BufferedWriter(new FileWriter(filename, append));
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, append), charset));
         } catch (IOException e) {
             throw new UtilsException("Kann den Writer nicht erzeugen!", e);
         }
     }
 
     /**
-     * Lädt einen serialisierten {@link Key} aus einem Byte-Array.
+     * Lädt einen serialisierten {@link Key} aus einem Byte-Array. Das erste Byte gibt das Format an; Schlüssel, die
+     * noch mit der Java-Serialisierung geschrieben wurden, werden an ihrer Kennung 0xAC 0xED erkannt und weiterhin
+     * gelesen.
      * 
      * @param stream
      *            Der Schlüssel als Array.
@@ -90,9 +184,30 @@ public final class Utils {
      */
     public static Key deserializeKey(final byte[] stream) throws UtilsException {
         try {
-            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(stream));
+            if (stream.length == 0) {
+                throw new IllegalArgumentException("Der Schlüssel ist leer!");
+            }
+
+            byte[] encoded = Arrays.copyOfRange(stream, 1, stream.length);
+
+            switch (stream[0]) {
+            case KEY_AES_RAW:
+                return new SecretKeySpec(encoded, AesCrypto.AES_ALGO_NAME);
+
+            case KEY_RSA_X509:
+                return Utils.RSA_KEY_FACTORY.get().generatePublic(new X509EncodedKeySpec(encoded));
+
+            case KEY_RSA_PKCS8:
+                return Utils.RSA_KEY_FACTORY.get().generatePrivate(new PKCS8EncodedKeySpec(encoded));
+
+            case SERIALIZED_MAGIC:
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(stream));
+
+                return (Key) ois.readObject();
 
-            return (Key) ois.readObject();
+            default:
+                throw new IllegalArgumentException("Unbekanntes Schlüsselformat!");
+            }
         } catch (Exception e) {
             throw new UtilsException("Kann den Schlüssel nicht konvertieren!", e);
         }
@@ -111,6 +226,31 @@ public final class Utils {
         return Utils.deserializeKey(Utils.fromHexLine(line));
     }
 
+    /**
+     * Dekodiert einen hexadezimalen Bereich direkt aus einem Puffer, ohne ihn vorher in einen String zu wandeln. Wie
+     * bei {@link #fromHexLine(String)} sind nur Paare von Hexziffern erlaubt.
+     * 
+     * @param buffer
+     *            Der Puffer mit ASCII-Zeichen.
+     * @param start
+     *            Die Position der ersten Hexziffer.
+     * @param end
+     *            Die Position hinter der letzten Hexziffer.
+     * @return Gibt den Bereich als Byte-Array zurück.
+     */
+    public static byte[] fromHexBuffer(final ByteBuffer buffer, final int start, final int end) {
+        byte[] res = new byte[(end - start) / 2];
+
+        for (int i = 0; i < res.length; i++) {
+            int pos = start + 2 * i;
+
+            res[i] = (byte) ((Utils.hexValue((char) buffer.get(pos)) << Utils.NIBBLE_BITS) | Utils
+                    .hexValue((char) buffer.get(pos + 1)));
+        }
+
+        return res;
+    }
+
     /**
      * Erzeugt aus dem übergebenen String ein Byte-Array. Der String muss aus hexadezimalen paaren zu je zwei Ziffern
      * bestehen. Leer-, Satz- oder Sonderzeichen sind nicht erlaubt.
@@ -122,14 +262,9 @@ public final class Utils {
     public static byte[] fromHexLine(final String hex) {
         byte[] res = new byte[hex.length() / 2];
 
-        for (int i = 0; i < hex.length() / 2; i++) {
-            int t = Integer.decode("#" + hex.substring(i * 2, i * 2 + 2));
-
-            if (t <= Byte.MAX_VALUE) {
-                res[i] = (byte) t;
-            } else {
-                res[i] = (byte) (t - Utils.UNSIGNED_BYTE_MAX_VALUE - 1);
-            }
+        for (int i = 0; i < res.length; i++) {
+            res[i] = (byte) ((Utils.hexValue(hex.charAt(2 * i)) << Utils.NIBBLE_BITS) | Utils
+                    .hexValue(hex.charAt(2 * i + 1)));
         }
 
         return res;
@@ -143,14 +278,26 @@ public final class Utils {
      * @return Gibt den Text als byte-Array zurück.
      */
     public static byte[] fromHexText(final String text) {
-        String[] lines = text.split("\n");
-        StringBuilder sb = new StringBuilder();
+        byte[] res = new byte[text.length() / 2];
+        int count = 0;
+        int high = -1;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
 
-        for (String line : lines) {
-            sb.append(line);
+            if ((c == '\n') || (c == '\r')) {
+                continue;
+            }
+
+            if (high < 0) {
+                high = Utils.hexValue(c);
+            } else {
+                res[count++] = (byte) ((high << Utils.NIBBLE_BITS) | Utils.hexValue(c));
+                high = -1;
+            }
         }
 
-        return Utils.fromHexLine(sb.toString());
+        return (count == res.length) ? res : Arrays.copyOf(res, count);
     }
 
     /**
@@ -163,7 +310,9 @@ public final class Utils {
     }
 
     /**
-     * Serialisiert und konvertiert einen {@link Key} in ein {@link Byte}-Array.
+     * Serialisiert und konvertiert einen {@link Key} in ein {@link Byte}-Array. AES-Schlüssel werden roh, öffentliche
+     * RSA-Schlüssel als X.509 und private RSA-Schlüssel als PKCS#8 abgelegt, jeweils mit einem vorangestellten
+     * Kennungsbyte. Nur andere Schlüssel werden noch mit der Java-Serialisierung geschrieben.
      * 
      * @param key
      *            Der Schlüssel.
@@ -172,6 +321,19 @@ public final class Utils {
      *             Wird geworfen, wenn der Schlüssel nicht konvertiert werden konnte.
      */
     public static byte[] serializeKey(final Key key) throws UtilsException {
+        byte marker = Utils.keyMarker(key);
+
+        if (marker != 0) {
+            byte[] encoded = key.getEncoded();
+            byte[] res = new byte[encoded.length + 1];
+
+            res[0] = marker;
+
+            System.arraycopy(encoded, 0, res, 1, encoded.length);
+
+            return res;
+        }
+
         try {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
             ObjectOutputStream oos = new ObjectOutputStream(bos);
@@ -207,17 +369,14 @@ public final class Utils {
      * @return Das Array als Hex-String.
      */
     public static String toHexLine(final byte[] hex) {
-        StringBuilder hexString = new StringBuilder();
+        char[] res = new char[hex.length * 2];
 
-        for (byte b : hex) {
-            if ((b < Utils.NIBBLE_MAX_VALUE) && (b >= 0)) {
-                hexString.append("0");
-            }
-
-            hexString.append(Integer.toHexString(b & Utils.UNSIGNED_BYTE_MAX_VALUE));
+        for (int i = 0; i < hex.length; i++) {
+            res[2 * i] = Utils.HEX_DIGITS[(hex[i] >> Utils.NIBBLE_BITS) & Utils.NIBBLE_MASK];
+            res[2 * i + 1] = Utils.HEX_DIGITS[hex[i] & Utils.NIBBLE_MASK];
         }
 
-        return hexString.toString();
+        return new String(res);
     }
 
     /**
@@ -228,19 +387,25 @@ public final class Utils {
      * @return Den Hextext.
      */
     public static String toHexText(final byte[] hex) {
-        String line = Utils.toHexLine(hex);
-        StringBuilder sb = new StringBuilder();
-
-        while (line.length() > Utils.TEXT_BLOCK_WIDTH) {
-            sb.append(line.substring(0, Utils.TEXT_BLOCK_WIDTH));
-            sb.append("\n");
+        int digits = hex.length * 2;
+        int breaks = (digits == 0) ? 0 : (digits - 1) / Utils.TEXT_BLOCK_WIDTH;
+        char[] res = new char[digits + breaks];
+        int pos = 0;
+        int column = 0;
 
-            line = line.substring(Utils.TEXT_BLOCK_WIDTH);
+        for (byte b : hex) {
+            for (int shift = Utils.NIBBLE_BITS; shift >= 0; shift -= Utils.NIBBLE_BITS) {
+                if (column == Utils.TEXT_BLOCK_WIDTH) {
+                    res[pos++] = '\n';
+                    column = 0;
+                }
+
+                res[pos++] = Utils.HEX_DIGITS[(b >> shift) & Utils.NIBBLE_MASK];
+                column++;
+            }
         }
 
-        sb.append(line);
-
-        return sb.toString();
+        return new String(res);
     }
 
     /**
@@ -251,10 +416,38 @@ public final class Utils {
      * @return Die MD5-Summe als Byte-Array.
      */
     public static byte[] toMD5(final byte[] text) {
-        Utils.md5.reset();
-        Utils.md5.update(text);
+        MessageDigest md5 = Utils.MD5.get();
+
+        md5.reset();
+        md5.update(text);
+
+        return md5.digest();
+    }
 
-        return Utils.md5.digest();
+    /**
+     * Bildet die MD5-Summe über den gesamten Inhalt eines Streams, ohne ihn vollständig in den Speicher zu laden. Der
+     * Stream wird nicht geschlossen.
+     * 
+     * @param in
+     *            Der Stream.
+     * @return Die MD5-Summe als Byte-Array.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der Stream nicht gelesen werden konnte.
+     */
+    public static byte[] toMD5(final InputStream in) throws UtilsException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[Utils.STREAM_BUFFER_SIZE];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+
+            return digest.digest();
+        } catch (Exception e) {
+            throw new UtilsException("Kann die MD5-Summe nicht bilden!", e);
+        }
     }
 
     /**
@@ -290,4 +483,97 @@ public final class Utils {
         return Utils.toHexLine(Utils.toMD5(text));
     }
 
+    /**
+     * Ersetzt den Inhalt einer Datei atomar. Der Inhalt wird zuerst in eine temporäre Datei im selben Verzeichnis
+     * geschrieben, die dann über die Zieldatei umbenannt wird. Nach einem Absturz steht in der Datei deshalb entweder
+     * der alte oder der neue Inhalt, aber nie ein halb geschriebener.
+     * 
+     * @param filename
+     *            Der Dateiname.
+     * @param content
+     *            Der neue Inhalt.
+     * @param sync
+     *            Wenn <code>true</code>, wird der Inhalt vor dem Umbenennen auf die Platte gebracht.
+     * @throws UtilsException
+     *             Wird geworfen, wenn die Datei nicht geschrieben werden konnte. Die Zieldatei bleibt dann unverändert.
+     */
+    public static void writeFileAtomic(final String filename, final byte[] content, final boolean sync)
+            throws UtilsException {
+        File target = new File(filename);
+        File temp = null;
+
+        try {
+            temp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+
+            FileOutputStream out = new FileOutputStream(temp);
+
+            try {
+                out.write(content);
+
+                if (sync) {
+                    out.getChannel().force(true);
+                }
+            } finally {
+                out.close();
+            }
+
+            // unter Windows kann nicht über eine bestehende Datei umbenannt werden
+            if (!temp.renameTo(target) && !(target.delete() && temp.renameTo(target))) {
+                throw new IOException("Kann die Datei nicht umbenennen!");
+            }
+        } catch (IOException e) {
+            if ((temp != null) && temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+
+            throw new UtilsException("Kann die Datei " + filename + " nicht schreiben!", e);
+        }
+    }
+
+    /**
+     * Ermittelt die Kennung des kompakten Formats für den Schlüssel.
+     * 
+     * @param key
+     *            Der Schlüssel.
+     * @return Die Kennung oder 0, wenn der Schlüssel nur mit der Java-Serialisierung abgelegt werden kann.
+     */
+    private static byte keyMarker(final Key key) {
+        String format = key.getFormat();
+
+        if ((key instanceof SecretKey) && AesCrypto.AES_ALGO_NAME.equals(key.getAlgorithm()) && "RAW".equals(format)) {
+            return Utils.KEY_AES_RAW;
+        }
+
+        if (RsaCrypto.RSA_ALGO_NAME.equals(key.getAlgorithm())) {
+            if ((key instanceof PublicKey) && "X.509".equals(format)) {
+                return Utils.KEY_RSA_X509;
+            }
+
+            if ((key instanceof PrivateKey) && "PKCS#8".equals(format)) {
+                return Utils.KEY_RSA_PKCS8;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Ermittelt den Wert einer Hexziffer.
+     * 
+     * @param c
+     *            Die Hexziffer.
+     * @return Der Wert der Ziffer (0 bis 15).
+     * @throws NumberFormatException
+     *             Wird geworfen, wenn das Zeichen keine Hexziffer ist.
+     */
+    static int hexValue(final char c) {
+        int value = (c < Utils.HEX_VALUES.length) ? Utils.HEX_VALUES[c] : -1;
+
+        if (value < 0) {
+            throw new NumberFormatException("Ungültige Hexziffer: " + c);
+        }
+
+        return value;
+    }
+
 }
@@ -43,7 +43,8 @@ public class AesCrypto {
 
         @Override
         public byte[] getEncoded() {
-            return this.secret;
+            // Kopie, da manche Provider die Schlüsseldaten nach der Initialisierung überschreiben
+            return this.secret.clone();
         }
 
         @Override
@@ -59,16 +60,14 @@ public class AesCrypto {
     public static final int AES_KEY_SIZE = 16;
     /** Die Standard-Schlüssellänge für den AES-Algorithmus in Bits. */
     public static final int AES_KEY_SIZE_BITS = AesCrypto.AES_KEY_SIZE * 8;
-    /** Enthält den AES-Algorithmus. */
-    private static Cipher cipher = null;
-
-    static {
-        try {
-            AesCrypto.cipher = Cipher.getInstance(AesCrypto.AES_ALGO_NAME);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+    /** Die Blockgröße des AES-Algorithmus in Bytes. */
+    public static final int AES_BLOCK_SIZE = 16;
+    /** Der Algorithmus, mit dem die Segmente großer Dateien verschlüsselt werden. */
+    public static final String AES_SEGMENT_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    /** Die Größe eines Klartextsegments in Bytes. */
+    public static final int SEGMENT_SIZE = 64 * 1024;
+    /** Stellt jedem Thread seinen eigenen AES-Algorithmus bereit. */
+    private static final CipherProvider CIPHER = new CipherProvider(AesCrypto.AES_ALGO_NAME);
 
     /**
      * Entschlüsselt einen Geheimtext mit dem AES-Algorithmus und dem übergebenen Passwort.
@@ -83,9 +82,11 @@ public class AesCrypto {
      */
     public static byte[] decrypt(final byte[] cipherText, final SecretKey secret) throws UtilsException {
         try {
-            AesCrypto.cipher.init(Cipher.DECRYPT_MODE, secret);
+            Cipher cipher = AesCrypto.CIPHER.get();
+
+            cipher.init(Cipher.DECRYPT_MODE, secret);
 
-            byte[] res = AesCrypto.cipher.doFinal(cipherText);
+            byte[] res = cipher.doFinal(cipherText);
 
             return res;
         } catch (Exception e) {
@@ -106,9 +107,11 @@ public class AesCrypto {
      */
     public static byte[] encrypt(final byte[] message, final SecretKey secret) throws UtilsException {
         try {
-            AesCrypto.cipher.init(Cipher.ENCRYPT_MODE, secret);
+            Cipher cipher = AesCrypto.CIPHER.get();
+
+            cipher.init(Cipher.ENCRYPT_MODE, secret);
 
-            byte[] res = AesCrypto.cipher.doFinal(message);
+            byte[] res = cipher.doFinal(message);
 
             return res;
         } catch (Exception e) {
@@ -1,14 +1,18 @@
 package de.fhma.ss10.srn.tischbein.core.crypto;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
 import javax.crypto.SecretKey;
 
+import de.fhma.ss10.srn.tischbein.core.HexInputStream;
 import de.fhma.ss10.srn.tischbein.core.Utils;
 
 /**
@@ -82,20 +86,22 @@ public final class AesReader extends BufferedReader {
      *             wird geworfen, wenn die Datei nicht gelesen werden konnte.
      */
     private static byte[] readData(final String filename) throws CryptoException {
-        byte[] buffer;
-
         try {
             File file = new File(filename);
-            FileInputStream fis = new FileInputStream(file);
-            buffer = new byte[(int) file.length()];
+            InputStream in = new HexInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) (file.length() / 2));
+
+                Utils.copyStream(in, buffer);
 
-            fis.read(buffer);
-            fis.close();
+                return buffer.toByteArray();
+            } finally {
+                in.close();
+            }
         } catch (Exception e) {
             throw new CryptoException("Kann die angegebene Datei nicht öffnen!", e);
         }
-
-        return Utils.fromHexText(new String(buffer));
     }
 
     /**
@@ -0,0 +1,337 @@
+package de.fhma.ss10.srn.tischbein.core.crypto;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * Liest Daten, die mit dem {@link AesSegmentOutputStream} geschrieben wurden. Es wird immer nur ein Segment
+ * entschlüsselt und im Speicher gehalten, so dass auch sehr große Dateien mit konstantem Speicherbedarf gelesen werden
+ * können.
+ * 
+ * @author Smolli
+ */
+public final class AesSegmentInputStream extends InputStream {
+
+    /** Maske, um ein Byte vorzeichenlos zu lesen. */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * Entschlüsselt die Länge des Klartexts am Ende einer Datei im Segmentformat.
+     * 
+     * @param cipher
+     *            Der AES-Algorithmus.
+     * @param key
+     *            Der geheime Schlüssel.
+     * @param data
+     *            Der Puffer mit IV und verschlüsselter Länge.
+     * @param off
+     *            Die Startposition im Puffer.
+     * @return Die Länge des Klartexts.
+     * @throws IOException
+     *             Wird geworfen, wenn die Länge nicht entschlüsselt werden kann.
+     */
+    static long decryptLength(final Cipher cipher, final SecretKey key, final byte[] data, final int off)
+            throws IOException {
+        byte[] plain;
+
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(data, off, AesSegmentOutputStream.IV_SIZE));
+
+            plain = cipher.doFinal(data, off + AesSegmentOutputStream.IV_SIZE, AesCrypto.AES_BLOCK_SIZE);
+        } catch (Exception e) {
+            throw new IOException("Kann die Länge der Datei nicht entschlüsseln!", e);
+        }
+
+        if (plain.length != Long.SIZE / Byte.SIZE) {
+            throw new IOException("Die Länge der Datei ist beschädigt!");
+        }
+
+        return ByteBuffer.wrap(plain).getLong();
+    }
+
+    /**
+     * Prüft, ob die angegebene Datei im Segmentformat vorliegt.
+     * 
+     * @param filename
+     *            Der Dateiname.
+     * @return Gibt <code>true</code> zurück, wenn die Datei mit der Kennung des Segmentformats beginnt, andernfalls
+     *         <code>false</code>.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht gelesen werden konnte.
+     */
+    public static boolean isSegmentFile(final String filename) throws IOException {
+        InputStream in = new FileInputStream(filename);
+
+        try {
+            byte[] magic = new byte[AesSegmentOutputStream.MAGIC.length];
+
+            return (AesSegmentInputStream.readFully(in, magic, 0, magic.length) == magic.length)
+                    && (Arrays.equals(magic, AesSegmentOutputStream.MAGIC) || Arrays.equals(magic,
+                            AesSegmentOutputStream.LEGACY_MAGIC));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Liest so lange aus dem Stream, bis der Puffer voll ist oder das Ende des Streams erreicht wurde.
+     * 
+     * @param in
+     *            Der Stream.
+     * @param b
+     *            Der Puffer.
+     * @param off
+     *            Die Startposition im Puffer.
+     * @param len
+     *            Die Anzahl der zu lesenden Bytes.
+     * @return Die Anzahl der tatsächlich gelesenen Bytes.
+     * @throws IOException
+     *             Wird geworfen, wenn der Stream nicht gelesen werden konnte.
+     */
+    static int readFully(final InputStream in, final byte[] b, final int off, final int len) throws IOException {
+        int total = 0;
+
+        while (total < len) {
+            int read = in.read(b, off + total, len - total);
+
+            if (read < 0) {
+                break;
+            }
+
+            total += read;
+        }
+
+        return total;
+    }
+
+    /**
+     * Liest die Kennung des Segmentformats.
+     * 
+     * @param in
+     *            Die Eingabe, positioniert am Anfang der Datei.
+     * @return Gibt <code>true</code> zurück, wenn am Ende der Datei die Länge des Klartexts steht, oder
+     *         <code>false</code> beim älteren Format ohne Länge.
+     * @throws IOException
+     *             Wird geworfen, wenn die Kennung fehlt oder unbekannt ist.
+     */
+    static boolean readMagic(final DataInput in) throws IOException {
+        byte[] magic = new byte[AesSegmentOutputStream.MAGIC.length];
+
+        in.readFully(magic);
+
+        if (Arrays.equals(magic, AesSegmentOutputStream.MAGIC)) {
+            return true;
+        }
+
+        if (Arrays.equals(magic, AesSegmentOutputStream.LEGACY_MAGIC)) {
+            return false;
+        }
+
+        throw new IOException("Die Datei liegt nicht im Segmentformat vor!");
+    }
+
+    /**
+     * Liest die Segmentgröße aus dem Dateikopf und prüft sie. Ein beschädigter Kopf darf keine beliebig großen Puffer
+     * anfordern.
+     * 
+     * @param in
+     *            Die Eingabe, positioniert hinter der Kennung.
+     * @return Die Segmentgröße.
+     * @throws IOException
+     *             Wird geworfen, wenn die Segmentgröße ungültig ist.
+     */
+    static int readSegmentSize(final DataInput in) throws IOException {
+        int segmentSize = in.readInt();
+
+        if ((segmentSize <= 0) || (segmentSize > AesSegmentOutputStream.MAX_SEGMENT_SIZE)
+                || (segmentSize % AesCrypto.AES_BLOCK_SIZE != 0)) {
+            throw new IOException("Ungültige Segmentgröße!");
+        }
+
+        return segmentSize;
+    }
+
+    /** Hält den Eingabestream. */
+    private final InputStream in;
+    /** Hält den geheimen Schlüssel. */
+    private final SecretKey secret;
+    /** Hält den AES-Algorithmus. */
+    private final Cipher cipher;
+    /** Hält die Länge eines vollen Segments auf der Platte (IV, Geheimtext und Padding). */
+    private final int stride;
+    /** Hält die Größe der Länge am Ende der Datei oder 0 beim älteren Format. */
+    private final int trailerSize;
+    /** Hält die gelesenen, noch nicht entschlüsselten Bytes: ein volles Segment und die Länge am Ende. */
+    private final byte[] cipherBuffer;
+    /** Hält die Anzahl der Bytes im <code>cipherBuffer</code>. */
+    private int buffered;
+    /** Hält den Klartext des aktuellen Segments. */
+    private final byte[] plain;
+    /** Hält die Leseposition im aktuellen Segment. */
+    private int pos;
+    /** Hält die Anzahl der Klartext-Bytes im aktuellen Segment. */
+    private int limit;
+    /** Hält die Anzahl aller bisher entschlüsselten Klartext-Bytes. */
+    private long total;
+    /** Gibt an, ob das Ende des Streams erreicht wurde. */
+    private boolean eof;
+
+    /**
+     * Erstellt einen neuen {@link AesSegmentInputStream} und liest den Dateikopf.
+     * 
+     * @param stream
+     *            Der Stream mit den verschlüsselten Segmenten.
+     * @param key
+     *            Der geheime Schlüssel.
+     * @throws IOException
+     *             Wird geworfen, wenn der Dateikopf fehlt oder beschädigt ist.
+     */
+    public AesSegmentInputStream(final InputStream stream, final SecretKey key) throws IOException {
+        this.in = stream;
+        this.secret = key;
+
+        DataInputStream dis = new DataInputStream(this.in);
+
+        this.trailerSize = AesSegmentInputStream.readMagic(dis) ? AesSegmentOutputStream.TRAILER_SIZE : 0;
+
+        int segmentSize = AesSegmentInputStream.readSegmentSize(dis);
+
+        this.stride = AesSegmentOutputStream.IV_SIZE + segmentSize + AesCrypto.AES_BLOCK_SIZE;
+        this.cipherBuffer = new byte[this.stride + this.trailerSize];
+        this.plain = new byte[segmentSize + AesCrypto.AES_BLOCK_SIZE];
+
+        try {
+            this.cipher = Cipher.getInstance(AesCrypto.AES_SEGMENT_TRANSFORMATION);
+        } catch (Exception e) {
+            throw new IOException("Kann den AES-Algorithmus nicht laden!", e);
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.limit - this.pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(this.plain, (byte) 0);
+
+        this.in.close();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((this.pos == this.limit) && !this.nextSegment()) {
+            return -1;
+        }
+
+        return this.plain[this.pos++] & AesSegmentInputStream.BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if ((this.pos == this.limit) && !this.nextSegment()) {
+            return -1;
+        }
+
+        int chunk = Math.min(len, this.limit - this.pos);
+
+        System.arraycopy(this.plain, this.pos, b, off, chunk);
+
+        this.pos += chunk;
+
+        return chunk;
+    }
+
+    /**
+     * Liest und entschlüsselt das nächste Segment. Solange hinter einem Segment noch mindestens die Länge am Ende
+     * folgt, ist es ein volles Segment. Am Ende des Streams wird die Länge entschlüsselt und mit der Anzahl der
+     * gelesenen Bytes verglichen.
+     * 
+     * @return Gibt <code>true</code> zurück, wenn ein Segment gelesen wurde, oder <code>false</code>, wenn das Ende
+     *         des Streams erreicht ist.
+     * @throws IOException
+     *             Wird geworfen, wenn das Segment unvollständig ist, nicht entschlüsselt werden konnte oder die Datei
+     *             abgeschnitten wurde.
+     */
+    private boolean nextSegment() throws IOException {
+        while (!this.eof) {
+            this.buffered += AesSegmentInputStream.readFully(this.in, this.cipherBuffer, this.buffered,
+                    this.cipherBuffer.length - this.buffered);
+
+            int segment = this.stride;
+
+            if (this.buffered < this.cipherBuffer.length) {
+                this.eof = true;
+
+                segment = this.buffered - this.trailerSize;
+
+                if (segment < 0) {
+                    throw new IOException("Die Datei ist abgeschnitten!");
+                }
+            }
+
+            this.limit = 0;
+            this.pos = 0;
+
+            if (segment > 0) {
+                this.decryptSegment(segment);
+            }
+
+            this.total += this.limit;
+            this.buffered -= segment;
+
+            System.arraycopy(this.cipherBuffer, segment, this.cipherBuffer, 0, this.buffered);
+
+            if (this.eof && (this.trailerSize > 0)
+                    && (AesSegmentInputStream.decryptLength(this.cipher, this.secret, this.cipherBuffer, 0)
+                            != this.total)) {
+                throw new IOException("Die Datei ist abgeschnitten!");
+            }
+
+            if (this.limit > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Entschlüsselt das Segment am Anfang des <code>cipherBuffer</code>.
+     * 
+     * @param length
+     *            Die Länge des Segments auf der Platte.
+     * @throws IOException
+     *             Wird geworfen, wenn das Segment unvollständig ist oder nicht entschlüsselt werden konnte.
+     */
+    private void decryptSegment(final int length) throws IOException {
+        if (length < AesSegmentOutputStream.IV_SIZE + AesCrypto.AES_BLOCK_SIZE) {
+            throw new IOException("Das letzte Segment ist unvollständig!");
+        }
+
+        try {
+            this.cipher.init(Cipher.DECRYPT_MODE, this.secret, new IvParameterSpec(this.cipherBuffer, 0,
+                    AesSegmentOutputStream.IV_SIZE));
+
+            this.limit = this.cipher.doFinal(this.cipherBuffer, AesSegmentOutputStream.IV_SIZE, length
+                    - AesSegmentOutputStream.IV_SIZE, this.plain, 0);
+        } catch (Exception e) {
+            throw new IOException("Kann das Segment nicht entschlüsseln!", e);
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+package de.fhma.ss10.srn.tischbein.core.crypto;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+
+/**
+ * Ein {@link OutputStream}, der die geschriebenen Daten in Segmenten fester Größe AES-verschlüsselt. Jedes Segment
+ * wird für sich mit einem eigenen, zufälligen IV verschlüsselt, daher wird nie mehr als ein Segment im Speicher
+ * gehalten. Das Format ist:
+ * <p>
+ * <code>"TBS2" | Segmentgröße (int) | IV | Segment 0 | IV | Segment 1 | ... | IV | Länge (long)</code>
+ * <p>
+ * Alle Segmente außer dem letzten enthalten genau {@link AesCrypto#SEGMENT_SIZE} Bytes Klartext. Da das Padding immer
+ * einen vollen Block anhängt, ist jedes volle Segment auf der Platte {@link #IV_SIZE} + Segmentgröße +
+ * {@link AesCrypto#AES_BLOCK_SIZE} Bytes lang. Dadurch lässt sich die Position eines jeden Segments direkt berechnen.
+ * Am Ende steht die verschlüsselte Länge des Klartexts. Aus ihr ergibt sich die Länge der ganzen Datei, so dass eine
+ * abgeschnittene Datei auch dann erkannt wird, wenn sie genau an einer Segmentgrenze endet.
+ * <p>
+ * Dateien im älteren Format <code>"TBS1"</code> haben noch keine Länge am Ende; sie werden weiterhin gelesen.
+ * 
+ * @author Smolli
+ */
+public final class AesSegmentOutputStream extends OutputStream {
+
+    /** Hält die Kennung des Segmentformats. */
+    static final byte[] MAGIC = { 'T', 'B', 'S', '2' };
+    /** Hält die Kennung des älteren Segmentformats ohne Länge am Ende. */
+    static final byte[] LEGACY_MAGIC = { 'T', 'B', 'S', '1' };
+    /** Hält die Größe des Dateikopfes (Kennung und Segmentgröße). */
+    static final int HEADER_SIZE = AesSegmentOutputStream.MAGIC.length + Integer.SIZE / Byte.SIZE;
+    /** Hält die Größe des IV, der jedem Segment vorangestellt ist. */
+    static final int IV_SIZE = 16;
+    /** Hält die Größe der verschlüsselten Länge am Ende der Datei (IV und ein Block). */
+    static final int TRAILER_SIZE = AesSegmentOutputStream.IV_SIZE + AesCrypto.AES_BLOCK_SIZE;
+    /** Hält die größte Segmentgröße, die beim Lesen akzeptiert wird. */
+    static final int MAX_SEGMENT_SIZE = AesCrypto.SEGMENT_SIZE * 16;
+    /** Hält die Größe der Länge im Klartext des Endes. */
+    private static final int LENGTH_SIZE = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Berechnet die Länge der Segmente auf der Platte für einen Klartext der angegebenen Länge, ohne Dateikopf und
+     * ohne die Länge am Ende.
+     * 
+     * @param plainLength
+     *            Die Länge des Klartexts.
+     * @param segmentSize
+     *            Die Klartextgröße eines vollen Segments.
+     * @return Die Länge der Segmente in Bytes.
+     */
+    static long segmentsSize(final long plainLength, final int segmentSize) {
+        long stride = AesSegmentOutputStream.IV_SIZE + segmentSize + AesCrypto.AES_BLOCK_SIZE;
+        long rest = plainLength % segmentSize;
+        long size = plainLength / segmentSize * stride;
+
+        if (rest > 0) {
+            size += AesSegmentOutputStream.IV_SIZE + (rest / AesCrypto.AES_BLOCK_SIZE + 1) * AesCrypto.AES_BLOCK_SIZE;
+        }
+
+        return size;
+    }
+
+    /** Hält den Ausgabestream. */
+    private final OutputStream out;
+    /** Hält den geheimen Schlüssel. */
+    private final SecretKey secret;
+    /** Hält den AES-Algorithmus. */
+    private final Cipher cipher;
+    /** Hält den Klartext des aktuellen Segments. */
+    private final byte[] buffer;
+    /** Hält den Puffer für den IV und den Geheimtext eines Segments. */
+    private final byte[] cipherBuffer;
+    /** Hält die Anzahl der Bytes im aktuellen Segment. */
+    private int count;
+    /** Hält die Anzahl aller bisher geschriebenen Klartext-Bytes. */
+    private long total;
+    /** Gibt an, ob der Stream schon geschlossen wurde. */
+    private boolean closed;
+
+    /**
+     * Erstellt einen neuen {@link AesSegmentOutputStream} und schreibt den Dateikopf.
+     * 
+     * @param stream
+     *            Der Stream, in den die verschlüsselten Segmente geschrieben werden.
+     * @param key
+     *            Der geheime Schlüssel.
+     * @throws IOException
+     *             Wird geworfen, wenn der Dateikopf nicht geschrieben werden konnte oder der Algorithmus nicht zur
+     *             Verfügung steht.
+     */
+    public AesSegmentOutputStream(final OutputStream stream, final SecretKey key) throws IOException {
+        this.out = stream;
+        this.secret = key;
+        this.buffer = new byte[AesCrypto.SEGMENT_SIZE];
+        this.cipherBuffer = new byte[AesSegmentOutputStream.IV_SIZE + AesCrypto.SEGMENT_SIZE
+                + AesCrypto.AES_BLOCK_SIZE];
+
+        try {
+            this.cipher = Cipher.getInstance(AesCrypto.AES_SEGMENT_TRANSFORMATION);
+        } catch (Exception e) {
+            throw new IOException("Kann den AES-Algorithmus nicht laden!", e);
+        }
+
+        DataOutputStream dos = new DataOutputStream(this.out);
+
+        dos.write(AesSegmentOutputStream.MAGIC);
+        dos.writeInt(AesCrypto.SEGMENT_SIZE);
+    }
+
+    /**
+     * Verschlüsselt das letzte, unvollständige Segment, schreibt die Länge des Klartexts und schließt den darunter
+     * liegenden Stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+
+        try {
+            if (this.count > 0) {
+                this.writeSegment();
+            }
+
+            ByteBuffer length = ByteBuffer.allocate(AesSegmentOutputStream.LENGTH_SIZE);
+
+            length.putLong(this.total);
+
+            this.encrypt(length.array(), length.position());
+        } finally {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Leert nur den darunter liegenden Stream. Ein unvollständiges Segment wird erst beim Schließen geschrieben, da
+     * sonst die festen Segmentpositionen nicht mehr stimmen würden.
+     */
+    @Override
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        int offset = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            int chunk = Math.min(remaining, this.buffer.length - this.count);
+
+            System.arraycopy(b, offset, this.buffer, this.count, chunk);
+
+            this.count += chunk;
+            offset += chunk;
+            remaining -= chunk;
+
+            if (this.count == this.buffer.length) {
+                this.writeSegment();
+            }
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.buffer[this.count++] = (byte) b;
+
+        if (this.count == this.buffer.length) {
+            this.writeSegment();
+        }
+    }
+
+    /**
+     * Verschlüsselt Klartext mit einem neuen IV und schreibt IV und Geheimtext in den Ausgabestream.
+     * 
+     * @param plain
+     *            Der Klartext.
+     * @param length
+     *            Die Anzahl der Bytes im Klartext.
+     * @throws IOException
+     *             Wird geworfen, wenn der Klartext nicht verschlüsselt oder geschrieben werden konnte.
+     */
+    private void encrypt(final byte[] plain, final int length) throws IOException {
+        try {
+            byte[] iv = new byte[AesSegmentOutputStream.IV_SIZE];
+
+            Utils.getRandom().nextBytes(iv);
+
+            this.cipher.init(Cipher.ENCRYPT_MODE, this.secret, new IvParameterSpec(iv));
+
+            System.arraycopy(iv, 0, this.cipherBuffer, 0, iv.length);
+
+            int written = this.cipher.doFinal(plain, 0, length, this.cipherBuffer, iv.length);
+
+            this.out.write(this.cipherBuffer, 0, iv.length + written);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Kann das Segment nicht verschlüsseln!", e);
+        }
+    }
+
+    /**
+     * Verschlüsselt das aktuelle Segment mit einem neuen IV und schreibt es in den Ausgabestream.
+     * 
+     * @throws IOException
+     *             Wird geworfen, wenn das Segment nicht verschlüsselt oder geschrieben werden konnte.
+     */
+    private void writeSegment() throws IOException {
+        this.encrypt(this.buffer, this.count);
+
+        this.total += this.count;
+        this.count = 0;
+    }
+
+}
@@ -0,0 +1,268 @@
+package de.fhma.ss10.srn.tischbein.core.crypto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * Liest beliebige Bereiche einer Datei im Segmentformat des {@link AesSegmentOutputStream}. Da alle Segmente außer
+ * dem letzten gleich lang sind, kann die Position eines Segments direkt berechnet werden. Es werden nur die Segmente
+ * gelesen und entschlüsselt, die den angeforderten Bereich überdecken; das zuletzt entschlüsselte Segment wird für
+ * aufeinanderfolgende Zugriffe vorgehalten.
+ * <p>
+ * Beim Öffnen wird die Länge am Ende der Datei entschlüsselt und mit der Dateigröße verglichen, so dass eine
+ * abgeschnittene Datei sofort auffällt.
+ * 
+ * @author Smolli
+ */
+public final class AesSegmentReader implements Closeable {
+
+    /** Hält die Datei. */
+    private final RandomAccessFile file;
+    /** Hält den Kanal der Datei für positionierte Lesezugriffe. */
+    private final FileChannel channel;
+    /** Hält den geheimen Schlüssel. */
+    private final SecretKey secret;
+    /** Hält den AES-Algorithmus. */
+    private final Cipher cipher;
+    /** Hält die Klartextgröße eines vollen Segments. */
+    private final int segmentSize;
+    /** Hält die Länge eines vollen Segments auf der Platte (IV, Geheimtext und Padding). */
+    private final int stride;
+    /** Hält die Anzahl der Segmente in der Datei. */
+    private final long segmentCount;
+    /** Hält die Länge des Klartexts oder -1 beim älteren Format, das keine Länge am Ende hat. */
+    private final long plainLength;
+    /** Hält die Position hinter dem letzten Segment, also vor der Länge am Ende. */
+    private final long segmentsEnd;
+    /** Hält den IV und den Geheimtext des aktuellen Segments. */
+    private final ByteBuffer cipherBuffer;
+    /** Hält den Klartext des aktuellen Segments. */
+    private final byte[] plain;
+    /** Hält den Index des aktuell entschlüsselten Segments oder -1. */
+    private long currentSegment = -1;
+    /** Hält die Anzahl der Klartext-Bytes im aktuellen Segment. */
+    private int limit;
+
+    /**
+     * Öffnet eine Datei im Segmentformat und liest den Dateikopf.
+     * 
+     * @param filename
+     *            Der Dateiname.
+     * @param key
+     *            Der geheime Schlüssel.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht geöffnet werden kann oder nicht im Segmentformat vorliegt.
+     */
+    public AesSegmentReader(final String filename, final SecretKey key) throws IOException {
+        this.file = new RandomAccessFile(filename, "r");
+        this.channel = this.file.getChannel();
+        this.secret = key;
+
+        try {
+            boolean trailer = AesSegmentInputStream.readMagic(this.file);
+
+            this.segmentSize = AesSegmentInputStream.readSegmentSize(this.file);
+            this.stride = AesSegmentOutputStream.IV_SIZE + this.segmentSize + AesCrypto.AES_BLOCK_SIZE;
+            this.cipherBuffer = ByteBuffer.allocate(this.stride);
+            this.plain = new byte[this.stride];
+
+            try {
+                this.cipher = Cipher.getInstance(AesCrypto.AES_SEGMENT_TRANSFORMATION);
+            } catch (Exception e) {
+                throw new IOException("Kann den AES-Algorithmus nicht laden!", e);
+            }
+
+            long payload = this.channel.size() - AesSegmentOutputStream.HEADER_SIZE;
+
+            if (trailer) {
+                this.plainLength = this.readLength(payload);
+                this.segmentsEnd = this.channel.size() - AesSegmentOutputStream.TRAILER_SIZE;
+                this.segmentCount = (this.plainLength + this.segmentSize - 1) / this.segmentSize;
+            } else {
+                this.plainLength = -1;
+                this.segmentsEnd = this.channel.size();
+                this.segmentCount = (payload + this.stride - 1) / this.stride;
+            }
+        } catch (IOException e) {
+            this.file.close();
+
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(this.plain, (byte) 0);
+
+        this.currentSegment = -1;
+
+        this.file.close();
+    }
+
+    /**
+     * Ermittelt die Länge des Klartexts. Beim älteren Format ohne Länge am Ende muss dazu das letzte Segment
+     * entschlüsselt werden.
+     * 
+     * @return Die Länge des Klartexts in Bytes.
+     * @throws IOException
+     *             Wird geworfen, wenn das letzte Segment nicht gelesen werden kann.
+     */
+    public long length() throws IOException {
+        if (this.plainLength >= 0) {
+            return this.plainLength;
+        }
+
+        if (this.segmentCount == 0) {
+            return 0;
+        }
+
+        long last = this.segmentCount - 1;
+
+        this.loadSegment(last);
+
+        return last * this.segmentSize + this.limit;
+    }
+
+    /**
+     * Liest ab der angegebenen Klartextposition so viele Bytes wie möglich, höchstens aber <code>len</code>. Der
+     * Bereich darf sich über mehrere Segmente erstrecken.
+     * 
+     * @param position
+     *            Die Position im Klartext.
+     * @param b
+     *            Der Zielpuffer.
+     * @param off
+     *            Die Startposition im Zielpuffer.
+     * @param len
+     *            Die maximale Anzahl der zu lesenden Bytes.
+     * @return Die Anzahl der gelesenen Bytes oder -1, wenn die Position hinter dem Ende des Klartexts liegt.
+     * @throws IOException
+     *             Wird geworfen, wenn ein Segment nicht gelesen oder entschlüsselt werden kann.
+     */
+    public int read(final long position, final byte[] b, final int off, final int len) throws IOException {
+        if (position < 0) {
+            throw new IOException("Ungültige Position!");
+        }
+
+        int total = 0;
+
+        while (total < len) {
+            long pos = position + total;
+            long index = pos / this.segmentSize;
+
+            if (index >= this.segmentCount) {
+                break;
+            }
+
+            this.loadSegment(index);
+
+            int start = (int) (pos - index * this.segmentSize);
+
+            if (start >= this.limit) {
+                break;
+            }
+
+            int chunk = Math.min(len - total, this.limit - start);
+
+            System.arraycopy(this.plain, start, b, off + total, chunk);
+
+            total += chunk;
+        }
+
+        if ((total == 0) && (len > 0)) {
+            return -1;
+        }
+
+        return total;
+    }
+
+    /**
+     * Liest und entschlüsselt das Segment mit dem angegebenen Index, sofern es nicht schon vorgehalten wird.
+     * 
+     * @param index
+     *            Der Index des Segments.
+     * @throws IOException
+     *             Wird geworfen, wenn das Segment nicht gelesen oder entschlüsselt werden kann.
+     */
+    private void loadSegment(final long index) throws IOException {
+        if (index == this.currentSegment) {
+            return;
+        }
+
+        long offset = AesSegmentOutputStream.HEADER_SIZE + index * this.stride;
+
+        this.cipherBuffer.clear();
+        this.cipherBuffer.limit((int) Math.min(this.stride, this.segmentsEnd - offset));
+
+        while (this.cipherBuffer.hasRemaining()) {
+            if (this.channel.read(this.cipherBuffer, offset + this.cipherBuffer.position()) < 0) {
+                break;
+            }
+        }
+
+        int read = this.cipherBuffer.position();
+
+        if (read < AesSegmentOutputStream.IV_SIZE + AesCrypto.AES_BLOCK_SIZE) {
+            throw new IOException("Das Segment ist unvollständig!");
+        }
+
+        byte[] data = this.cipherBuffer.array();
+
+        try {
+            this.cipher.init(Cipher.DECRYPT_MODE, this.secret, new IvParameterSpec(data, 0,
+                    AesSegmentOutputStream.IV_SIZE));
+
+            this.limit = this.cipher.doFinal(data, AesSegmentOutputStream.IV_SIZE, read
+                    - AesSegmentOutputStream.IV_SIZE, this.plain, 0);
+            this.currentSegment = index;
+        } catch (Exception e) {
+            this.currentSegment = -1;
+
+            throw new IOException("Kann das Segment nicht entschlüsseln!", e);
+        }
+    }
+
+    /**
+     * Liest die Länge des Klartexts am Ende der Datei und prüft, ob die Datei genau so lang ist, wie es die Länge
+     * verlangt.
+     * 
+     * @param payload
+     *            Die Länge der Datei ohne Dateikopf.
+     * @return Die Länge des Klartexts.
+     * @throws IOException
+     *             Wird geworfen, wenn die Länge nicht gelesen werden kann oder die Datei abgeschnitten wurde.
+     */
+    private long readLength(final long payload) throws IOException {
+        if (payload < AesSegmentOutputStream.TRAILER_SIZE) {
+            throw new IOException("Die Datei ist abgeschnitten!");
+        }
+
+        ByteBuffer trailer = ByteBuffer.allocate(AesSegmentOutputStream.TRAILER_SIZE);
+        long offset = AesSegmentOutputStream.HEADER_SIZE + payload - AesSegmentOutputStream.TRAILER_SIZE;
+
+        while (trailer.hasRemaining()) {
+            if (this.channel.read(trailer, offset + trailer.position()) < 0) {
+                throw new IOException("Die Datei ist abgeschnitten!");
+            }
+        }
+
+        long length = AesSegmentInputStream.decryptLength(this.cipher, this.secret, trailer.array(), 0);
+
+        if ((length < 0)
+                || (AesSegmentOutputStream.segmentsSize(length, this.segmentSize) != payload
+                        - AesSegmentOutputStream.TRAILER_SIZE)) {
+            throw new IOException("Die Datei ist abgeschnitten!");
+        }
+
+        return length;
+    }
+
+}
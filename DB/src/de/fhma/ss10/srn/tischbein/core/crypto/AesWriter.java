@@ -1,16 +1,17 @@
 package de.fhma.ss10.srn.tischbein.core.crypto;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 
 import javax.crypto.SecretKey;
 
+import de.fhma.ss10.srn.tischbein.core.HexOutputStream;
 import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.UtilsException;
 
 /**
  * Ein spezialisierter {@link BufferedWriter}, der AES-verschlüsselte Dateien lesen kann.
@@ -58,28 +59,47 @@ public final class AesWriter extends BufferedWriter {
         super(writer);
     }
 
+    /**
+     * Verschlüsselt den Puffer und schreibt ihn in die Datei. Die Datei wird über eine temporäre Datei ersetzt, so dass
+     * ein Absturz beim Schreiben den alten Inhalt nicht zerstört.
+     * 
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht geschrieben werden kann.
+     */
     @Override
     public void close() throws IOException {
-        BufferedOutputStream bos = null;
-
-        this.flush();
+        byte[] content = this.toByteArray();
 
         try {
-            bos = new BufferedOutputStream(new FileOutputStream(this.filename));
+            Utils.writeFileAtomic(this.filename, content, true);
+        } catch (UtilsException e) {
+            throw new IOException("Kann Datei nicht speichern!", e);
+        }
+    }
 
-            if (this.buffer.size() > 0) {
-                byte[] encrypted = AesCrypto.encrypt(this.buffer.toByteArray(), this.secret);
+    /**
+     * Gibt den verschlüsselten Inhalt so zurück, wie er bei {@link #close()} in die Datei geschrieben würde. Die Datei
+     * selbst wird nicht geschrieben.
+     * 
+     * @return Der Dateiinhalt.
+     * @throws IOException
+     *             Wird geworfen, wenn der Inhalt nicht verschlüsselt werden kann.
+     */
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        OutputStream hex = new HexOutputStream(content);
 
-                bos.write(Utils.toHexText(encrypted).getBytes());
-            }
+        this.flush();
 
+        try {
+            this.writeEncrypted(hex);
         } catch (Exception e) {
-            throw new IOException("Kann Datei nicht speichern!", e);
+            throw new IOException("Kann den Inhalt nicht verschlüsseln!", e);
         } finally {
-            if (bos != null) {
-                bos.close();
-            }
+            hex.close();
         }
+
+        return content.toByteArray();
     }
 
     /**
@@ -94,4 +114,18 @@ public final class AesWriter extends BufferedWriter {
         this.write(line.toCharArray());
         this.write("\n");
     }
+
+    /**
+     * Verschlüsselt den Puffer und schreibt ihn in den angegebenen Stream.
+     * 
+     * @param out
+     *            Der Stream.
+     * @throws Exception
+     *             Wird geworfen, wenn der Puffer nicht verschlüsselt oder geschrieben werden kann.
+     */
+    private void writeEncrypted(final OutputStream out) throws Exception {
+        if (this.buffer.size() > 0) {
+            out.write(AesCrypto.encrypt(this.buffer.toByteArray(), this.secret));
+        }
+    }
 }
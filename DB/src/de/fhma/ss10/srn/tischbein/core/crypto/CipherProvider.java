@@ -0,0 +1,51 @@
+package de.fhma.ss10.srn.tischbein.core.crypto;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * Stellt für jeden Thread eine eigene, wiederverwendbare {@link Cipher}-Instanz bereit. Ein {@link Cipher} ist nicht
+ * threadsicher, das Erzeugen einer neuen Instanz pro Aufruf ist aber teuer. Jeder Thread erhält daher beim ersten
+ * Zugriff seine eigene Instanz, die er danach immer wieder verwendet.
+ * 
+ * @author Smolli
+ */
+final class CipherProvider {
+
+    /** Hält den Namen der Transformation. */
+    private final String transformation;
+    /** Hält die Instanzen der einzelnen Threads. */
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>();
+
+    /**
+     * Erstellt einen neuen Provider für die angegebene Transformation.
+     * 
+     * @param name
+     *            Der Name der Transformation, z.B. <code>"AES"</code>.
+     */
+    CipherProvider(final String name) {
+        this.transformation = name;
+    }
+
+    /**
+     * Gibt die {@link Cipher}-Instanz des aktuellen Threads zurück und legt sie gegebenenfalls an. Die Instanz muss vor
+     * jeder Verwendung mit <code>init()</code> initialisiert werden.
+     * 
+     * @return Die Instanz des aktuellen Threads.
+     * @throws GeneralSecurityException
+     *             Wird geworfen, wenn die Transformation nicht zur Verfügung steht.
+     */
+    Cipher get() throws GeneralSecurityException {
+        Cipher cipher = this.ciphers.get();
+
+        if (cipher == null) {
+            cipher = Cipher.getInstance(this.transformation);
+
+            this.ciphers.set(cipher);
+        }
+
+        return cipher;
+    }
+
+}
@@ -5,6 +5,15 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
 
 import de.fhma.ss10.srn.tischbein.core.Utils;
 import de.fhma.ss10.srn.tischbein.core.UtilsException;
@@ -17,6 +26,32 @@ import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
  */
 public class RsaAppender {
 
+    /**
+     * Kennzeichnet eine Zeile, deren zweite Spalte einen mit {@link RsaCrypto#wrap(SecretKey, PublicKey)} verpackten
+     * Schlüssel enthält. Zeilen ohne diese Kennung sind im alten Format, in dem der serialisierte Schlüssel blockweise
+     * mit {@link RsaCrypto#encode(String, PublicKey)} verschlüsselt wurde.
+     */
+    public static final String WRAPPED_KEY = "w";
+
+    /**
+     * Fügt eine Zeile mit einem verpackten Schlüssel zu einer RSA-verschlüsselten Datei hinzu.
+     * 
+     * @param filename
+     *            Die Datei.
+     * @param publicKey
+     *            Der öffentliche Schlüssel der Datei.
+     * @param key
+     *            Der Schlüssel, der verpackt werden soll.
+     * @param rawMessage
+     *            Der Teil der Zeile, der nicht verschlüsselt werden soll.
+     * @throws UtilsException
+     *             Wird geworfen, wenn die Zeile nicht hinzugefügt werden kann.
+     */
+    public static void appendKey(final String filename, final PublicKey publicKey, final SecretKey key,
+            final String rawMessage) throws UtilsException {
+        RsaAppender.appendRaw(filename, RsaAppender.compileKey(publicKey, key, rawMessage));
+    }
+
     /**
      * Fügt eine einzelne Zeile zu einer RSA-verschlüsselten Datei hinzu.
      * 
@@ -33,15 +68,114 @@ public class RsaAppender {
      */
     public static void appendLine(final String filename, final PublicKey publicKey, final String message,
             final String rawMessage) throws UtilsException {
+        byte[] encoded = RsaCrypto.encode(message, publicKey);
+
+        RsaAppender.appendRaw(filename, rawMessage + DatabaseStructure.SEPARATOR + Utils.toHexLine(encoded));
+    }
+
+    /**
+     * Erzeugt eine Zeile mit einem verpackten Schlüssel, ohne sie zu schreiben.
+     * 
+     * @param publicKey
+     *            Der öffentliche Schlüssel der Datei.
+     * @param key
+     *            Der Schlüssel, der verpackt werden soll.
+     * @param rawMessage
+     *            Der Teil der Zeile, der nicht verschlüsselt werden soll.
+     * @return Gibt die Zeile zurück.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der Schlüssel nicht verpackt werden kann.
+     */
+    public static String compileKey(final PublicKey publicKey, final SecretKey key, final String rawMessage)
+            throws UtilsException {
+        return rawMessage + DatabaseStructure.SEPARATOR + RsaAppender.WRAPPED_KEY + DatabaseStructure.SEPARATOR
+                + Utils.toHexLine(RsaCrypto.wrap(key, publicKey));
+    }
+
+    /**
+     * Erzeugt die Zeilen mit einem verpackten Schlüssel für mehrere öffentliche Schlüssel auf einmal, z.B. wenn eine
+     * Datei vielen Benutzern freigegeben wird. Die Schlüssel werden mit der angegebenen Anzahl von Threads parallel
+     * verpackt; die Reihenfolge der Zeilen entspricht der Reihenfolge der öffentlichen Schlüssel.
+     * 
+     * @param publicKeys
+     *            Die öffentlichen Schlüssel.
+     * @param key
+     *            Der Schlüssel, der verpackt werden soll.
+     * @param rawMessage
+     *            Der Teil der Zeilen, der nicht verschlüsselt werden soll.
+     * @param threads
+     *            Die Anzahl der Threads.
+     * @return Gibt die Zeilen zurück.
+     * @throws UtilsException
+     *             Wird geworfen, wenn einer der Schlüssel nicht verpackt werden kann.
+     */
+    public static String[] compileKeys(final PublicKey[] publicKeys, final SecretKey key, final String rawMessage,
+            final int threads) throws UtilsException {
+        if ((threads <= 1) || (publicKeys.length < 2)) {
+            return RsaAppender.compileKeyRange(publicKeys, 0, publicKeys.length, key, rawMessage);
+        }
+
+        int count = Math.min(threads, publicKeys.length);
+        int chunk = (publicKeys.length + count - 1) / count;
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+
+        try {
+            List<Future<String[]>> futures = new ArrayList<Future<String[]>>();
+
+            for (int from = 0; from < publicKeys.length; from += chunk) {
+                final int start = from;
+                final int end = Math.min(from + chunk, publicKeys.length);
+
+                futures.add(executor.submit(new Callable<String[]>() {
+
+                    @Override
+                    public String[] call() throws Exception {
+                        return RsaAppender.compileKeyRange(publicKeys, start, end, key, rawMessage);
+                    }
+
+                }));
+            }
+
+            String[] lines = new String[publicKeys.length];
+            int pos = 0;
+
+            for (Future<String[]> future : futures) {
+                String[] part = future.get();
+
+                System.arraycopy(part, 0, lines, pos, part.length);
+
+                pos += part.length;
+            }
+
+            return lines;
+        } catch (ExecutionException e) {
+            throw new UtilsException("Kann die Schlüssel nicht verpacken!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new UtilsException("Das Verpacken wurde unterbrochen!", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Hängt eine fertige Zeile an die Datei an.
+     * 
+     * @param filename
+     *            Die Datei.
+     * @param line
+     *            Die Zeile.
+     * @throws UtilsException
+     *             Wird geworfen, wenn die Zeile nicht geschrieben werden kann.
+     */
+    private static void appendRaw(final String filename, final String line) throws UtilsException {
         BufferedWriter writer = null;
 
         try {
             writer = new BufferedWriter(new FileWriter(new File(filename), true));
-            byte[] encoded = RsaCrypto.encode(message, publicKey);
 
-            writer.write(rawMessage);
-            writer.write(DatabaseStructure.SEPARATOR);
-            writer.write(Utils.toHexLine(encoded));
+            writer.write(line);
             writer.write("\n");
         } catch (Exception e) {
             throw new UtilsException("Kann die Zeile nicht schreiben!", e);
@@ -55,4 +189,32 @@ public class RsaAppender {
             }
         }
     }
+
+    /**
+     * Erzeugt die Zeilen für einen Bereich der öffentlichen Schlüssel.
+     * 
+     * @param publicKeys
+     *            Die öffentlichen Schlüssel.
+     * @param from
+     *            Der Index des ersten Schlüssels.
+     * @param to
+     *            Der Index hinter dem letzten Schlüssel.
+     * @param key
+     *            Der Schlüssel, der verpackt werden soll.
+     * @param rawMessage
+     *            Der Teil der Zeilen, der nicht verschlüsselt werden soll.
+     * @return Gibt die Zeilen des Bereichs zurück.
+     * @throws UtilsException
+     *             Wird geworfen, wenn einer der Schlüssel nicht verpackt werden kann.
+     */
+    private static String[] compileKeyRange(final PublicKey[] publicKeys, final int from, final int to,
+            final SecretKey key, final String rawMessage) throws UtilsException {
+        String[] lines = new String[to - from];
+
+        for (int i = from; i < to; i++) {
+            lines[i - from] = RsaAppender.compileKey(publicKeys[i], key, rawMessage);
+        }
+
+        return lines;
+    }
 }
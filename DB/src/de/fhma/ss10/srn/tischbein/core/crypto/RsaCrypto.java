@@ -9,6 +9,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 
 import de.fhma.ss10.srn.tischbein.core.Utils;
 import de.fhma.ss10.srn.tischbein.core.UtilsException;
@@ -21,7 +22,7 @@ import de.fhma.ss10.srn.tischbein.core.UtilsException;
 public class RsaCrypto {
 
     /** Hält den Standardnamen für die RSA-Verschlüsselung. */
-    private static final String RSA_ALGO_NAME = "RSA";
+    public static final String RSA_ALGO_NAME = "RSA";
     /** Hält die Schlüssellänge für den RSA-Alogrithmus in Bytes. */
     public static final int RSA_KEY_SIZE = 128;
     /** Hält die Größe des Padding-Blocks. */
@@ -31,16 +32,12 @@ public class RsaCrypto {
     /** Hält die Schlüssellänge für den RSA-Alogrithmus in Bits. */
     public static final int RSA_KEY_SIZE_BITS = RsaCrypto.RSA_KEY_SIZE * 8;
 
-    /** Enthält den RSA-Algorithmus. */
-    private static Cipher cipher = null;
-
-    static {
-        try {
-            RsaCrypto.cipher = Cipher.getInstance(RsaCrypto.RSA_ALGO_NAME);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+    /** Stellt jedem Thread seinen eigenen RSA-Algorithmus bereit. */
+    private static final CipherProvider CIPHER = new CipherProvider(RsaCrypto.RSA_ALGO_NAME);
+    /** Hält die Anzahl der Schlüsselpaare, die für neue Benutzer und Gruppen bereitgehalten werden. */
+    private static final int KEY_PAIR_POOL_SIZE = 4;
+    /** Hält die vorab erzeugten Schlüsselpaare. */
+    private static final RsaKeyPairPool POOL = new RsaKeyPairPool(RsaCrypto.KEY_PAIR_POOL_SIZE);
 
     /**
      * Entschlüsselt den angegebenen Geheimtext mit dem privaten Schlüssel.
@@ -67,7 +64,10 @@ public class RsaCrypto {
      */
     public static byte[] decode(final byte[] cipherText, final PrivateKey privateKey) throws UtilsException {
         try {
-            RsaCrypto.cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            Cipher cipher = RsaCrypto.CIPHER.get();
+
+            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
             ByteArrayInputStream in = new ByteArrayInputStream(cipherText);
             byte[] res = new byte[RsaCrypto.RSA_KEY_SIZE];
@@ -76,7 +76,7 @@ public class RsaCrypto {
             while (size > 0) {
                 size -= in.read(res);
 
-                buffer.write(RsaCrypto.cipher.doFinal(res));
+                buffer.write(cipher.doFinal(res));
             }
 
             return buffer.toByteArray();
@@ -107,7 +107,10 @@ public class RsaCrypto {
      */
     public static byte[] encode(final String messageText, final PublicKey publicKey) throws UtilsException {
         try {
-            RsaCrypto.cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            Cipher cipher = RsaCrypto.CIPHER.get();
+
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
             ByteArrayInputStream in = new ByteArrayInputStream(messageText.getBytes());
             int size = messageText.length();
@@ -116,7 +119,7 @@ public class RsaCrypto {
             while (size > 0) {
                 size -= in.read(res);
 
-                buffer.write(RsaCrypto.cipher.doFinal(res));
+                buffer.write(cipher.doFinal(res));
             }
 
             return buffer.toByteArray();
@@ -146,4 +149,74 @@ public class RsaCrypto {
         return generatedKeyPair;
     }
 
+    /**
+     * Gibt den Pool der vorab erzeugten Schlüsselpaare zurück, z.B. um ihn beim Start schon zu füllen oder um die
+     * Treffer auszuwerten.
+     * 
+     * @return Der {@link RsaKeyPairPool}.
+     */
+    public static RsaKeyPairPool getKeyPairPool() {
+        return RsaCrypto.POOL;
+    }
+
+    /**
+     * Entnimmt ein Schlüsselpaar aus dem Pool der vorab erzeugten Schlüsselpaare. Ist der Pool leer, wird es wie bei
+     * {@link #generateRSAKeyPair()} sofort erzeugt.
+     * 
+     * @return Gibt das Schlüsselpaar zurück.
+     * @throws NoSuchAlgorithmException
+     *             Wird geworfen, wenn der RSA-Algorithmus nicht zur Verfügung steht.
+     */
+    public static KeyPair takeRSAKeyPair() throws NoSuchAlgorithmException {
+        return RsaCrypto.POOL.take();
+    }
+
+    /**
+     * Entschlüsselt einen mit {@link #wrap(SecretKey, PublicKey)} verpackten AES-Schlüssel. Dazu ist genau eine
+     * RSA-Operation nötig.
+     * 
+     * @param wrappedKey
+     *            Der verpackte Schlüssel.
+     * @param privateKey
+     *            Der private Schlüssel.
+     * @return Gibt den AES-Schlüssel zurück.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der Schlüssel nicht entpackt werden kann.
+     */
+    public static SecretKey unwrap(final byte[] wrappedKey, final PrivateKey privateKey) throws UtilsException {
+        try {
+            Cipher cipher = RsaCrypto.CIPHER.get();
+
+            cipher.init(Cipher.UNWRAP_MODE, privateKey);
+
+            return (SecretKey) cipher.unwrap(wrappedKey, AesCrypto.AES_ALGO_NAME, Cipher.SECRET_KEY);
+        } catch (Exception e) {
+            throw new UtilsException("Kann den Schlüssel nicht entpacken!", e);
+        }
+    }
+
+    /**
+     * Verschlüsselt die rohen Bytes eines AES-Schlüssels mit dem öffentlichen Schlüssel. Da ein AES-Schlüssel
+     * kleiner als die RSA-Blockgröße ist, ist dazu genau eine RSA-Operation nötig.
+     * 
+     * @param key
+     *            Der AES-Schlüssel.
+     * @param publicKey
+     *            Der öffentliche Schlüssel.
+     * @return Gibt den verpackten Schlüssel zurück.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der Schlüssel nicht verpackt werden kann.
+     */
+    public static byte[] wrap(final SecretKey key, final PublicKey publicKey) throws UtilsException {
+        try {
+            Cipher cipher = RsaCrypto.CIPHER.get();
+
+            cipher.init(Cipher.WRAP_MODE, publicKey);
+
+            return cipher.wrap(key);
+        } catch (Exception e) {
+            throw new UtilsException("Kann den Schlüssel nicht verpacken!", e);
+        }
+    }
+
 }
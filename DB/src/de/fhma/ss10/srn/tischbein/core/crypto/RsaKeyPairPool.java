@@ -0,0 +1,181 @@
+package de.fhma.ss10.srn.tischbein.core.crypto;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vorrat an vorab erzeugten RSA-Schlüsselpaaren. Das Erzeugen eines Schlüsselpaars ist mit Abstand der teuerste Teil
+ * beim Anlegen eines Benutzers oder einer Gruppe. Der Pool hält deshalb eine begrenzte Anzahl fertiger Schlüsselpaare
+ * bereit und füllt sich nach jeder Entnahme in einem Hintergrund-Thread wieder auf.
+ * <p>
+ * Ist der Pool leer, wird das Schlüsselpaar wie bisher sofort im aufrufenden Thread erzeugt. Treffer und Fehlgriffe
+ * werden gezählt, damit sich die Größe des Pools beurteilen lässt. Der Pool beginnt erst mit der ersten Entnahme oder
+ * einem Aufruf von {@link #fill()} zu arbeiten, Anwendungen ohne Benutzerverwaltung erzeugen also keine Schlüssel im
+ * Hintergrund.
+ * 
+ * @author Smolli
+ */
+public final class RsaKeyPairPool {
+
+    /** Hält die fertigen Schlüsselpaare. */
+    private final BlockingQueue<KeyPair> pairs;
+    /** Hält die Anzahl der Schlüsselpaare, die gerade im Hintergrund erzeugt werden. */
+    private final AtomicInteger pending = new AtomicInteger();
+    /** Zählt die Entnahmen, die ein fertiges Schlüsselpaar bekommen haben. */
+    private final AtomicLong hits = new AtomicLong();
+    /** Zählt die Entnahmen, für die ein Schlüsselpaar sofort erzeugt werden musste. */
+    private final AtomicLong misses = new AtomicLong();
+    /** Hält die Größe des Pools. */
+    private final int capacity;
+    /** Hält den Hintergrund-Thread, der die Schlüsselpaare erzeugt. */
+    private final ExecutorService generator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, "RsaKeyPairPool-Generator");
+
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+
+            return thread;
+        }
+
+    });
+
+    /**
+     * Erstellt einen neuen, leeren Pool.
+     * 
+     * @param size
+     *            Die Anzahl der Schlüsselpaare, die höchstens bereitgehalten werden.
+     */
+    public RsaKeyPairPool(final int size) {
+        this.capacity = size;
+        this.pairs = new ArrayBlockingQueue<KeyPair>(size);
+    }
+
+    /**
+     * Füllt den Pool im Hintergrund bis zu seiner Größe auf. Der Aufruf kehrt sofort zurück.
+     */
+    public void fill() {
+        while (true) {
+            int inFlight = this.pending.get();
+
+            if ((this.pairs.size() + inFlight >= this.capacity) || this.generator.isShutdown()) {
+                return;
+            }
+
+            if (this.pending.compareAndSet(inFlight, inFlight + 1)) {
+                try {
+                    this.generator.execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            RsaKeyPairPool.this.generate();
+                        }
+
+                    });
+                } catch (RejectedExecutionException e) {
+                    // der Pool wurde zwischenzeitlich beendet
+                    this.pending.decrementAndGet();
+
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gibt die Anzahl der fertigen Schlüsselpaare zurück.
+     * 
+     * @return Die Anzahl.
+     */
+    public int getAvailable() {
+        return this.pairs.size();
+    }
+
+    /**
+     * Gibt die Größe des Pools zurück.
+     * 
+     * @return Die Größe.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Gibt die Anzahl der Entnahmen zurück, die ein fertiges Schlüsselpaar bekommen haben.
+     * 
+     * @return Die Anzahl der Treffer.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Gibt die Anzahl der Entnahmen zurück, für die das Schlüsselpaar sofort erzeugt werden musste.
+     * 
+     * @return Die Anzahl der Fehlgriffe.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Beendet den Hintergrund-Thread. Danach werden Schlüsselpaare nur noch sofort erzeugt.
+     */
+    public void shutdown() {
+        this.generator.shutdownNow();
+    }
+
+    /**
+     * Entnimmt ein Schlüsselpaar. Ist der Pool leer, wird das Schlüsselpaar sofort erzeugt. In beiden Fällen wird der
+     * Pool danach im Hintergrund wieder aufgefüllt.
+     * 
+     * @return Das Schlüsselpaar. Jedes Schlüsselpaar wird nur einmal ausgegeben.
+     * @throws NoSuchAlgorithmException
+     *             Wird geworfen, wenn der RSA-Algorithmus nicht zur Verfügung steht.
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        KeyPair pair = this.pairs.poll();
+
+        if (pair != null) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+
+            pair = RsaCrypto.generateRSAKeyPair();
+        }
+
+        this.fill();
+
+        return pair;
+    }
+
+    @Override
+    public String toString() {
+        return "RsaKeyPairPool[verfügbar=" + this.getAvailable() + "/" + this.capacity + ", Treffer=" + this.getHits()
+                + ", Fehlgriffe=" + this.getMisses() + "]";
+    }
+
+    /**
+     * Erzeugt ein Schlüsselpaar im Hintergrund und legt es in den Pool.
+     */
+    private void generate() {
+        try {
+            this.pairs.offer(RsaCrypto.generateRSAKeyPair());
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        } finally {
+            this.pending.decrementAndGet();
+        }
+    }
+
+}
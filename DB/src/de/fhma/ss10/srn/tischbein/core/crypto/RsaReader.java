@@ -5,11 +5,18 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.Reader;
 import java.io.StringReader;
-import java.nio.ByteBuffer;
 import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.UtilsException;
 import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
 
 /**
@@ -20,7 +27,7 @@ import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
 public final class RsaReader extends BufferedReader {
 
     /**
-     * Erzeugt ein neues {@link RsaReader}-Objekt.
+     * Erzeugt ein neues {@link RsaReader}-Objekt, das die Zeilen nacheinander entschlüsselt.
      * 
      * @param filename
      *            Der Dateiname der verschlüsselten Datei.
@@ -31,78 +38,203 @@ public final class RsaReader extends BufferedReader {
      *             Wird geworfen, wenn die Datei nicht geöffnet werden kann.
      */
     public static RsaReader createReader(final String filename, final PrivateKey privateKey) throws CryptoException {
-        // Rohdaten lesen
-        Vector<ByteBuffer> encrypts = new Vector<ByteBuffer>();
-        Vector<String> raws = new Vector<String>();
+        return RsaReader.createReader(filename, privateKey, 1);
+    }
 
-        RsaReader.readData(filename, raws, encrypts);
+    /**
+     * Erzeugt ein neues {@link RsaReader}-Objekt, das die Zeilen mit der angegebenen Anzahl von Threads parallel
+     * entschlüsselt. Die Reihenfolge der Zeilen bleibt dabei erhalten. Das lohnt sich nur für Aufrufer, die wirklich
+     * alle Zeilen benötigen, z.B. beim Export oder beim Neuverschlüsseln.
+     * <p>
+     * Zeilen mit einem verpackten Schlüssel (siehe {@link RsaAppender#WRAPPED_KEY}) werden in dasselbe Format wie die
+     * Zeilen im alten Format gebracht, also <code>roh;serialisierterSchlüssel</code>.
+     * 
+     * @param filename
+     *            Der Dateiname der verschlüsselten Datei.
+     * @param privateKey
+     *            Der private Schlüssel.
+     * @param threads
+     *            Die Anzahl der Threads.
+     * @return Gibt einen Reader zurück.
+     * @throws CryptoException
+     *             Wird geworfen, wenn die Datei nicht geöffnet oder entschlüsselt werden kann.
+     */
+    public static RsaReader createReader(final String filename, final PrivateKey privateKey, final int threads)
+            throws CryptoException {
+        // Rohdaten lesen
+        Vector<String[]> rows = RsaReader.readData(filename);
 
         // entschlüsseln und in einen Reader wandeln
-        return new RsaReader(RsaReader.decodeAndWrap(raws, encrypts, privateKey));
+        String[] lines;
+
+        if ((threads <= 1) || (rows.size() < 2)) {
+            lines = RsaReader.decodeRange(rows, 0, rows.size(), privateKey);
+        } else {
+            lines = RsaReader.decodeParallel(rows, privateKey, threads);
+        }
+
+        return new RsaReader(RsaReader.wrap(lines));
     }
 
     /**
-     * Entschlüsselt die einzelnen Zeilen.
+     * Entschlüsselt eine einzelne Zeile.
      * 
-     * @param raws
-     *            Die Liste der unverschlüsselten Zeilenelemente.
-     * @param encrypts
-     *            Die List der verschlüsselten Zeilenelemente.
+     * @param cols
+     *            Die Spalten der Zeile.
      * @param privateKey
      *            Der private Schlüssel.
-     * @return Gibt einen {@link Reader} auf die entschlüsselten Zeilen zurück.
+     * @return Gibt die entschlüsselte Zeile zurück.
+     * @throws UtilsException
+     *             Wird geworfen, wenn die Zeile nicht entschlüsselt werden kann.
+     */
+    private static String decode(final String[] cols, final PrivateKey privateKey) throws UtilsException {
+        String plain;
+
+        if ((cols.length > 2) && RsaAppender.WRAPPED_KEY.equals(cols[1])) {
+            plain = Utils.serializeKeyHex(RsaCrypto.unwrap(Utils.fromHexLine(cols[2]), privateKey));
+        } else {
+            plain = new String(RsaCrypto.decode(Utils.fromHexLine(cols[1]), privateKey));
+        }
+
+        return cols[0] + DatabaseStructure.SEPARATOR + plain;
+    }
+
+    /**
+     * Teilt die Zeilen in zusammenhängende Bereiche auf und entschlüsselt sie parallel. Jeder Thread verwendet dabei
+     * seinen eigenen RSA-Algorithmus.
+     * 
+     * @param rows
+     *            Die verschlüsselten Zeilen.
+     * @param privateKey
+     *            Der private Schlüssel.
+     * @param threads
+     *            Die Anzahl der Threads.
+     * @return Gibt die entschlüsselten Zeilen in der ursprünglichen Reihenfolge zurück.
      * @throws CryptoException
-     *             Wird geworfen, wenn die Puffer nicht entschlüsselt werden konnten.
+     *             Wird geworfen, wenn eine der Zeilen nicht entschlüsselt werden kann.
      */
-    private static Reader decodeAndWrap(final Vector<String> raws, final Vector<ByteBuffer> encrypts,
+    private static String[] decodeParallel(final Vector<String[]> rows, final PrivateKey privateKey,
+            final int threads) throws CryptoException {
+        int count = Math.min(threads, rows.size());
+        int chunk = (rows.size() + count - 1) / count;
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+
+        try {
+            List<Future<String[]>> futures = new ArrayList<Future<String[]>>();
+
+            for (int from = 0; from < rows.size(); from += chunk) {
+                final int start = from;
+                final int end = Math.min(from + chunk, rows.size());
+
+                futures.add(executor.submit(new Callable<String[]>() {
+
+                    @Override
+                    public String[] call() throws Exception {
+                        return RsaReader.decodeRange(rows, start, end, privateKey);
+                    }
+
+                }));
+            }
+
+            String[] lines = new String[rows.size()];
+            int pos = 0;
+
+            // die Bereiche in der Reihenfolge ihres Starts zusammensetzen
+            for (Future<String[]> future : futures) {
+                String[] part = future.get();
+
+                System.arraycopy(part, 0, lines, pos, part.length);
+
+                pos += part.length;
+            }
+
+            return lines;
+        } catch (ExecutionException e) {
+            throw new CryptoException("Kann den Text nicht entschlüsseln!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new CryptoException("Das Entschlüsseln wurde unterbrochen!", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Entschlüsselt einen Bereich der Zeilen.
+     * 
+     * @param rows
+     *            Die verschlüsselten Zeilen.
+     * @param from
+     *            Der Index der ersten Zeile.
+     * @param to
+     *            Der Index hinter der letzten Zeile.
+     * @param privateKey
+     *            Der private Schlüssel.
+     * @return Gibt die entschlüsselten Zeilen des Bereichs zurück.
+     * @throws CryptoException
+     *             Wird geworfen, wenn eine der Zeilen nicht entschlüsselt werden kann.
+     */
+    private static String[] decodeRange(final Vector<String[]> rows, final int from, final int to,
             final PrivateKey privateKey) throws CryptoException {
         try {
-            StringBuilder sb = new StringBuilder();
+            String[] lines = new String[to - from];
 
-            for (int i = 0; i < raws.size(); i++) {
-                sb.append(raws.get(i));
-                sb.append(DatabaseStructure.SEPARATOR);
-                sb.append(new String(RsaCrypto.decode(encrypts.get(i).array(), privateKey)));
-                sb.append("\n");
+            for (int i = from; i < to; i++) {
+                lines[i - from] = RsaReader.decode(rows.get(i), privateKey);
             }
 
-            return new StringReader(sb.toString());
+            return lines;
         } catch (Exception e) {
             throw new CryptoException("Kann den Text nicht entschlüsseln!", e);
         }
     }
 
     /**
-     * Ließt den Dateiinhalt und speichert jede einzelne verschlüsselte Zeile in einem separaten {@link ByteBuffer}.
+     * Ließt den Dateiinhalt und zerlegt jede Zeile in ihre Spalten.
      * 
      * @param filename
      *            Der Dateiname.
-     * @param raws
-     *            Die Liste, in die die unverschlüsselten Zeilenelemente gespeichert werden sollen.
-     * @param encrypts
-     *            Die Liste, in die die verschlüsselten Zeilenelemente gespeichert werden sollen.
+     * @return Gibt die Spalten aller Zeilen zurück.
      * @throws CryptoException
      *             Wird geworfen, wenn die Datei nicht gelesen werden kann.
      */
-    private static void readData(final String filename, final Vector<String> raws, final Vector<ByteBuffer> encrypts)
-            throws CryptoException {
+    private static Vector<String[]> readData(final String filename) throws CryptoException {
         try {
             BufferedReader reader = new BufferedReader(new FileReader(new File(filename)));
+            Vector<String[]> rows = new Vector<String[]>();
             String line;
 
             while ((line = reader.readLine()) != null) {
-                String[] cols = line.split(DatabaseStructure.SEPARATOR);
-
-                raws.add(cols[0]);
-                encrypts.add(ByteBuffer.wrap(Utils.fromHexLine(cols[1])));
+                rows.add(line.split(DatabaseStructure.SEPARATOR));
             }
 
             reader.close();
+
+            return rows;
         } catch (Exception e) {
             throw new CryptoException("Kann die Datei nicht lesen!", e);
         }
     }
 
+    /**
+     * Fügt die entschlüsselten Zeilen zu einem {@link Reader} zusammen.
+     * 
+     * @param lines
+     *            Die entschlüsselten Zeilen.
+     * @return Gibt einen {@link Reader} auf die entschlüsselten Zeilen zurück.
+     */
+    private static Reader wrap(final String[] lines) {
+        StringBuilder sb = new StringBuilder();
+
+        for (String line : lines) {
+            sb.append(line);
+            sb.append("\n");
+        }
+
+        return new StringReader(sb.toString());
+    }
+
     /**
      * Versteckter Ctor.
      * 
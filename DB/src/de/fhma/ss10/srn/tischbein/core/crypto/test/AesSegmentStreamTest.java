@@ -0,0 +1,209 @@
+package de.fhma.ss10.srn.tischbein.core.crypto.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesSegmentInputStream;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesSegmentOutputStream;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesSegmentReader;
+
+/**
+ * {@link AesSegmentInputStream}-, {@link AesSegmentOutputStream}- & {@link AesSegmentReader}-Tests.
+ * 
+ * @author Smolli
+ */
+public final class AesSegmentStreamTest {
+
+    /** Die Länge des Dateikopfes: Kennung und Segmentgröße. */
+    private static final int HEADER_SIZE = 8;
+    /** Die Länge eines vollen Segments auf der Platte: IV, Klartext und ein Block Padding. */
+    private static final int STRIDE = 16 + AesCrypto.SEGMENT_SIZE + 16;
+
+    /**
+     * Testet, ob ein Dateikopf mit einer unsinnigen Segmentgröße abgewiesen wird, anstatt riesige Puffer anzulegen.
+     */
+    @Test
+    public void hugeSegmentSize() {
+        byte[] header = { 'T', 'B', 'S', '2', 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xf0 };
+
+        try {
+            new AesSegmentInputStream(new ByteArrayInputStream(header), AesCrypto.generateKey("1234"));
+
+            Assert.fail();
+        } catch (IOException e) {
+            // erwartet
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob der {@link AesSegmentReader} beliebige Bereiche, auch über Segmentgrenzen hinweg, korrekt liest.
+     */
+    @Test
+    public void rangeRead() {
+        try {
+            SecretKey key = AesCrypto.generateKey("1234");
+            byte[] data = new byte[2 * AesCrypto.SEGMENT_SIZE + 100];
+
+            Utils.getRandom().nextBytes(data);
+
+            File file = File.createTempFile("segment", ".test");
+            AesSegmentOutputStream out = new AesSegmentOutputStream(new FileOutputStream(file), key);
+
+            out.write(data);
+            out.close();
+
+            AesSegmentReader reader = new AesSegmentReader(file.getPath(), key);
+
+            try {
+                Assert.assertEquals(data.length, reader.length());
+
+                this.assertRange(reader, data, 0, 10);
+                this.assertRange(reader, data, AesCrypto.SEGMENT_SIZE - 5, 10);
+                this.assertRange(reader, data, AesCrypto.SEGMENT_SIZE + 7, AesCrypto.SEGMENT_SIZE + 50);
+                this.assertRange(reader, data, data.length - 3, 10);
+
+                Assert.assertEquals(-1, reader.read(data.length, new byte[1], 0, 1));
+            } finally {
+                reader.close();
+
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob Daten an den Segmentgrenzen korrekt verschlüsselt und wieder entschlüsselt werden.
+     */
+    @Test
+    public void roundTrip() {
+        try {
+            SecretKey key = AesCrypto.generateKey("1234");
+
+            this.roundTrip(key, 0);
+            this.roundTrip(key, 1);
+            this.roundTrip(key, AesCrypto.SEGMENT_SIZE - 1);
+            this.roundTrip(key, AesCrypto.SEGMENT_SIZE);
+            this.roundTrip(key, 3 * AesCrypto.SEGMENT_SIZE + 17);
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob eine Datei erkannt wird, die genau an einer Segmentgrenze abgeschnitten wurde.
+     */
+    @Test
+    public void truncated() {
+        try {
+            SecretKey key = AesCrypto.generateKey("1234");
+            byte[] data = new byte[2 * AesCrypto.SEGMENT_SIZE];
+
+            Utils.getRandom().nextBytes(data);
+
+            ByteArrayOutputStream cipherText = new ByteArrayOutputStream();
+            AesSegmentOutputStream out = new AesSegmentOutputStream(cipherText, key);
+
+            out.write(data);
+            out.close();
+
+            byte[] cut = Arrays.copyOf(cipherText.toByteArray(), AesSegmentStreamTest.HEADER_SIZE
+                    + AesSegmentStreamTest.STRIDE);
+            File file = File.createTempFile("segment", ".test");
+            FileOutputStream fos = new FileOutputStream(file);
+
+            fos.write(cut);
+            fos.close();
+
+            try {
+                new AesSegmentReader(file.getPath(), key).close();
+
+                Assert.fail();
+            } catch (IOException e) {
+                // erwartet
+            } finally {
+                file.delete();
+            }
+
+            try {
+                Utils.copyStream(new AesSegmentInputStream(new ByteArrayInputStream(cut), key),
+                        new ByteArrayOutputStream());
+
+                Assert.fail();
+            } catch (IOException e) {
+                // erwartet
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Liest einen Bereich und vergleicht ihn mit den Originaldaten.
+     * 
+     * @param reader
+     *            Der Reader.
+     * @param data
+     *            Die Originaldaten.
+     * @param offset
+     *            Die Startposition.
+     * @param length
+     *            Die angeforderte Länge.
+     * @throws Exception
+     *             Wird geworfen, wenn der Bereich nicht gelesen werden konnte.
+     */
+    private void assertRange(final AesSegmentReader reader, final byte[] data, final int offset, final int length)
+            throws Exception {
+        byte[] buffer = new byte[length];
+        int read = reader.read(offset, buffer, 0, length);
+        int expected = Math.min(length, data.length - offset);
+
+        Assert.assertEquals(expected, read);
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, offset, offset + expected), Arrays.copyOf(buffer, read));
+    }
+
+    /**
+     * Verschlüsselt zufällige Daten der angegebenen Länge und prüft, ob sie unverändert wieder gelesen werden.
+     * 
+     * @param key
+     *            Der geheime Schlüssel.
+     * @param length
+     *            Die Länge der Daten.
+     * @throws Exception
+     *             Wird geworfen, wenn die Daten nicht verarbeitet werden konnten.
+     */
+    private void roundTrip(final SecretKey key, final int length) throws Exception {
+        byte[] data = new byte[length];
+
+        Utils.getRandom().nextBytes(data);
+
+        ByteArrayOutputStream cipherText = new ByteArrayOutputStream();
+        AesSegmentOutputStream out = new AesSegmentOutputStream(cipherText, key);
+
+        out.write(data);
+        out.close();
+
+        ByteArrayOutputStream plainText = new ByteArrayOutputStream();
+        AesSegmentInputStream in = new AesSegmentInputStream(new ByteArrayInputStream(cipherText.toByteArray()), key);
+
+        Utils.copyStream(in, plainText);
+        in.close();
+
+        Assert.assertArrayEquals(data, plainText.toByteArray());
+    }
+
+}
@@ -0,0 +1,196 @@
+package de.fhma.ss10.srn.tischbein.core.crypto.test;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
+
+/**
+ * Misst den Durchsatz von {@link AesCrypto} und {@link RsaCrypto} bei steigender Threadzahl. Jeder Thread
+ * verschlüsselt und entschlüsselt dieselbe Anzahl von Nachrichten und prüft das Ergebnis. Da jeder Thread seinen
+ * eigenen Algorithmus verwendet, sollte der Durchsatz bis zur Anzahl der Prozessorkerne annähernd linear steigen.
+ * Ohne Zeitmessung läuft dieselbe Prüfung als JUnit-Test in {@link CryptoThreadTest}.
+ * <p>
+ * Aufruf: <code>CryptoBenchmark [Operationen pro Thread] [Threadzahl...]</code>
+ * 
+ * @author Smolli
+ */
+public class CryptoBenchmark {
+
+    /** Die Standard-Anzahl der Operationen pro Thread. */
+    private static final int DEFAULT_OPERATIONS = 2000;
+    /** Die Größe einer AES-Nachricht in Bytes. */
+    private static final int AES_MESSAGE_SIZE = 4096;
+    /** Die Anzahl der RSA-Operationen im Verhältnis zu den AES-Operationen. */
+    private static final int RSA_RATIO = 10;
+    /** Umrechnungsfaktor von Nanosekunden in Sekunden. */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /**
+     * Startet den Benchmark.
+     * 
+     * @param args
+     *            Optional die Anzahl der Operationen pro Thread, gefolgt von den Threadzahlen.
+     */
+    public static void main(final String[] args) {
+        int operations = CryptoBenchmark.DEFAULT_OPERATIONS;
+        List<Integer> threads = new ArrayList<Integer>();
+
+        if (args.length > 0) {
+            operations = Integer.parseInt(args[0]);
+        }
+
+        for (int i = 1; i < args.length; i++) {
+            threads.add(Integer.parseInt(args[i]));
+        }
+
+        if (threads.isEmpty()) {
+            int cores = Runtime.getRuntime().availableProcessors();
+
+            for (int i = 1; i < cores; i *= 2) {
+                threads.add(i);
+            }
+
+            threads.add(cores);
+        }
+
+        try {
+            SecretKey secret = AesCrypto.generateKey();
+            KeyPair pair = RsaCrypto.generateRSAKeyPair();
+
+            // Aufwärmen, damit der JIT die Messung nicht verfälscht
+            CryptoBenchmark.measure(1, operations, secret, pair);
+
+            System.out.println("Threads\tAES [ops/s]\tRSA [ops/s]");
+
+            for (int count : threads) {
+                System.out.println(CryptoBenchmark.measure(count, operations, secret, pair));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Misst den Durchsatz mit der angegebenen Threadzahl.
+     * 
+     * @param count
+     *            Die Anzahl der Threads.
+     * @param operations
+     *            Die Anzahl der AES-Operationen pro Thread.
+     * @param secret
+     *            Der AES-Schlüssel.
+     * @param pair
+     *            Das RSA-Schlüsselpaar.
+     * @return Das Ergebnis als Tabellenzeile.
+     * @throws Exception
+     *             Wird geworfen, wenn eine Operation fehlschlägt oder ein falsches Ergebnis liefert.
+     */
+    private static String measure(final int count, final int operations, final SecretKey secret, final KeyPair pair)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+
+        try {
+            long aesTime = CryptoBenchmark.run(executor, count, new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    byte[] message = new byte[CryptoBenchmark.AES_MESSAGE_SIZE];
+
+                    Utils.getRandom().nextBytes(message);
+
+                    for (int i = 0; i < operations; i++) {
+                        byte[] plain = AesCrypto.decrypt(AesCrypto.encrypt(message, secret), secret);
+
+                        if (!Arrays.equals(message, plain)) {
+                            throw new IllegalStateException("AES lieferte ein falsches Ergebnis!");
+                        }
+                    }
+
+                    return null;
+                }
+
+            });
+
+            final int rsaOperations = Math.max(1, operations / CryptoBenchmark.RSA_RATIO);
+
+            long rsaTime = CryptoBenchmark.run(executor, count, new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    String message = Utils.toHexLine(AesCrypto.generateKey().getEncoded());
+
+                    for (int i = 0; i < rsaOperations; i++) {
+                        byte[] plain = RsaCrypto.decode(RsaCrypto.encode(message, pair.getPublic()), pair
+                                .getPrivate());
+
+                        if (!message.equals(new String(plain).trim())) {
+                            throw new IllegalStateException("RSA lieferte ein falsches Ergebnis!");
+                        }
+                    }
+
+                    return null;
+                }
+
+            });
+
+            return count + "\t" + CryptoBenchmark.format(count * operations, aesTime) + "\t"
+                    + CryptoBenchmark.format(count * rsaOperations, rsaTime);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Führt die Aufgabe in allen Threads gleichzeitig aus und wartet auf ihr Ende.
+     * 
+     * @param executor
+     *            Der Thread-Pool.
+     * @param count
+     *            Die Anzahl der Threads.
+     * @param task
+     *            Die Aufgabe.
+     * @return Die Gesamtdauer in Nanosekunden.
+     * @throws Exception
+     *             Wird geworfen, wenn eine der Aufgaben fehlschlägt.
+     */
+    private static long run(final ExecutorService executor, final int count, final Callable<Void> task)
+            throws Exception {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < count; i++) {
+            futures.add(executor.submit(task));
+        }
+
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Formatiert den Durchsatz in Operationen pro Sekunde.
+     * 
+     * @param operations
+     *            Die Gesamtzahl der Operationen.
+     * @param time
+     *            Die Gesamtdauer in Nanosekunden.
+     * @return Der Durchsatz als Zeichenkette.
+     */
+    private static String format(final int operations, final long time) {
+        return String.format("%.0f", operations * CryptoBenchmark.NANOS_PER_SECOND / time);
+    }
+
+}
@@ -0,0 +1,126 @@
+package de.fhma.ss10.srn.tischbein.core.crypto.test;
+
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
+
+/**
+ * Tests für {@link AesCrypto} und {@link RsaCrypto} bei gleichzeitiger Verwendung aus mehreren Threads.
+ * 
+ * @author Smolli
+ */
+public final class CryptoThreadTest {
+
+    /** Die Anzahl der gleichzeitigen Threads. */
+    private static final int THREADS = 8;
+    /** Die Anzahl der AES-Operationen pro Thread. */
+    private static final int AES_OPERATIONS = 200;
+    /** Die Anzahl der RSA-Operationen pro Thread. */
+    private static final int RSA_OPERATIONS = 10;
+    /** Die Größe einer AES-Nachricht in Bytes. */
+    private static final int AES_MESSAGE_SIZE = 4096;
+
+    /**
+     * Führt die Aufgabe in allen Threads gleichzeitig aus und wartet auf ihr Ende.
+     * 
+     * @param task
+     *            Die Aufgabe.
+     * @throws Exception
+     *             Wird geworfen, wenn eine der Aufgaben fehlschlägt.
+     */
+    private static void runParallel(final Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CryptoThreadTest.THREADS);
+
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+            for (int i = 0; i < CryptoThreadTest.THREADS; i++) {
+                futures.add(executor.submit(task));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Testet, ob AES-Verschlüsselung und -Entschlüsselung aus mehreren Threads gleichzeitig korrekte Ergebnisse
+     * liefern.
+     */
+    @Test
+    public void parallelAes() {
+        try {
+            final SecretKey secret = AesCrypto.generateKey();
+
+            CryptoThreadTest.runParallel(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    byte[] message = new byte[CryptoThreadTest.AES_MESSAGE_SIZE];
+
+                    Utils.getRandom().nextBytes(message);
+
+                    for (int i = 0; i < CryptoThreadTest.AES_OPERATIONS; i++) {
+                        byte[] plain = AesCrypto.decrypt(AesCrypto.encrypt(message, secret), secret);
+
+                        Assert.assertTrue(Arrays.equals(message, plain));
+                    }
+
+                    return null;
+                }
+
+            });
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob RSA-Verschlüsselung und -Entschlüsselung aus mehreren Threads gleichzeitig korrekte Ergebnisse
+     * liefern.
+     */
+    @Test
+    public void parallelRsa() {
+        try {
+            final KeyPair pair = RsaCrypto.generateRSAKeyPair();
+
+            CryptoThreadTest.runParallel(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    String message = Utils.toHexLine(AesCrypto.generateKey().getEncoded());
+
+                    for (int i = 0; i < CryptoThreadTest.RSA_OPERATIONS; i++) {
+                        byte[] plain = RsaCrypto.decode(RsaCrypto.encode(message, pair.getPublic()), pair
+                                .getPrivate());
+
+                        Assert.assertEquals(message, new String(plain).trim());
+                    }
+
+                    return null;
+                }
+
+            });
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package de.fhma.ss10.srn.tischbein.core.crypto.test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaAppender;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaReader;
+
+/**
+ * Misst, wie viele Zeilen einer RSA-verschlüsselten Tabelle der {@link RsaReader} pro Sekunde bei 1, 4 und N Threads
+ * entschlüsselt. Die parallel entschlüsselten Zeilen werden mit dem sequentiellen Ergebnis verglichen, damit auch die
+ * Reihenfolge geprüft ist; {@link RsaReaderTest} prüft sie auch ohne Messung.
+ * <p>
+ * Aufruf: <code>RsaReaderBenchmark [Zeilen] [Threadzahl...]</code>
+ * 
+ * @author Smolli
+ */
+public class RsaReaderBenchmark {
+
+    /** Die Standard-Anzahl der Zeilen. */
+    private static final int DEFAULT_ROWS = 2000;
+    /** Die mittlere Threadzahl der Standardmessung. */
+    private static final int MEDIUM_THREADS = 4;
+    /** Umrechnungsfaktor von Nanosekunden in Sekunden. */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /**
+     * Startet den Benchmark.
+     * 
+     * @param args
+     *            Optional die Anzahl der Zeilen, gefolgt von den Threadzahlen.
+     */
+    public static void main(final String[] args) {
+        int rows = RsaReaderBenchmark.DEFAULT_ROWS;
+        List<Integer> threads = new ArrayList<Integer>();
+
+        if (args.length > 0) {
+            rows = Integer.parseInt(args[0]);
+        }
+
+        for (int i = 1; i < args.length; i++) {
+            threads.add(Integer.parseInt(args[i]));
+        }
+
+        if (threads.isEmpty()) {
+            threads.add(1);
+            threads.add(RsaReaderBenchmark.MEDIUM_THREADS);
+            threads.add(Runtime.getRuntime().availableProcessors());
+        }
+
+        try {
+            KeyPair pair = RsaCrypto.generateRSAKeyPair();
+            File table = RsaReaderBenchmark.createTable(rows, pair);
+
+            try {
+                // Aufwärmen und Referenzergebnis erzeugen
+                String expected = RsaReaderBenchmark.read(table, pair, 1);
+
+                System.out.println("Threads\tZeilen/s");
+
+                for (int count : threads) {
+                    long start = System.nanoTime();
+                    String result = RsaReaderBenchmark.read(table, pair, count);
+                    long time = System.nanoTime() - start;
+
+                    if (!expected.equals(result)) {
+                        throw new IllegalStateException("Das parallele Ergebnis weicht ab!");
+                    }
+
+                    System.out.println(count + "\t" + String.format("%.0f", rows * RsaReaderBenchmark.NANOS_PER_SECOND
+                            / time));
+                }
+            } finally {
+                if (!table.delete()) {
+                    table.deleteOnExit();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Erzeugt eine temporäre Tabelle mit verpackten Schlüsseln.
+     * 
+     * @param rows
+     *            Die Anzahl der Zeilen.
+     * @param pair
+     *            Das RSA-Schlüsselpaar.
+     * @return Die Tabellendatei.
+     * @throws Exception
+     *             Wird geworfen, wenn die Tabelle nicht geschrieben werden kann.
+     */
+    private static File createTable(final int rows, final KeyPair pair) throws Exception {
+        File table = File.createTempFile("access", ".tb");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(table));
+
+        try {
+            for (int i = 0; i < rows; i++) {
+                writer.write(RsaAppender.compileKey(pair.getPublic(), AesCrypto.generateKey(), Integer.toString(i)));
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        return table;
+    }
+
+    /**
+     * Liest die Tabelle vollständig mit der angegebenen Threadzahl.
+     * 
+     * @param table
+     *            Die Tabellendatei.
+     * @param pair
+     *            Das RSA-Schlüsselpaar.
+     * @param threads
+     *            Die Anzahl der Threads.
+     * @return Der entschlüsselte Tabelleninhalt.
+     * @throws Exception
+     *             Wird geworfen, wenn die Tabelle nicht gelesen werden kann.
+     */
+    private static String read(final File table, final KeyPair pair, final int threads) throws Exception {
+        RsaReader reader = RsaReader.createReader(table.getPath(), pair.getPrivate(), threads);
+        StringBuilder sb = new StringBuilder();
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            sb.append(line);
+            sb.append("\n");
+        }
+
+        reader.close();
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,111 @@
+package de.fhma.ss10.srn.tischbein.core.crypto.test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.security.KeyPair;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaAppender;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaReader;
+
+/**
+ * Tests für den {@link RsaReader}.
+ * 
+ * @author Smolli
+ */
+public final class RsaReaderTest {
+
+    /** Die Anzahl der Zeilen in der Testtabelle. */
+    private static final int ROWS = 100;
+    /** Die Threadzahl beim parallelen Lesen. */
+    private static final int THREADS = 4;
+
+    /**
+     * Erzeugt eine temporäre Tabelle mit verpackten Schlüsseln, deren Zeilen mit ihrer Nummer beginnen.
+     * 
+     * @param pair
+     *            Das RSA-Schlüsselpaar.
+     * @return Die Tabellendatei.
+     * @throws Exception
+     *             Wird geworfen, wenn die Tabelle nicht geschrieben werden kann.
+     */
+    private static File createTable(final KeyPair pair) throws Exception {
+        File table = File.createTempFile("access", ".tb");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(table));
+
+        try {
+            for (int i = 0; i < RsaReaderTest.ROWS; i++) {
+                writer.write(RsaAppender.compileKey(pair.getPublic(), AesCrypto.generateKey(), Integer.toString(i)));
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        return table;
+    }
+
+    /**
+     * Liest die Tabelle vollständig mit der angegebenen Threadzahl.
+     * 
+     * @param table
+     *            Die Tabellendatei.
+     * @param pair
+     *            Das RSA-Schlüsselpaar.
+     * @param threads
+     *            Die Anzahl der Threads.
+     * @return Der entschlüsselte Tabelleninhalt.
+     * @throws Exception
+     *             Wird geworfen, wenn die Tabelle nicht gelesen werden kann.
+     */
+    private static String read(final File table, final KeyPair pair, final int threads) throws Exception {
+        RsaReader reader = RsaReader.createReader(table.getPath(), pair.getPrivate(), threads);
+        StringBuilder sb = new StringBuilder();
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            sb.append(line);
+            sb.append("\n");
+        }
+
+        reader.close();
+
+        return sb.toString();
+    }
+
+    /**
+     * Testet, ob parallel entschlüsselte Zeilen in derselben Reihenfolge ankommen wie beim sequentiellen Lesen.
+     */
+    @Test
+    public void parallelOrder() {
+        try {
+            KeyPair pair = RsaCrypto.generateRSAKeyPair();
+            File table = RsaReaderTest.createTable(pair);
+
+            try {
+                String expected = RsaReaderTest.read(table, pair, 1);
+                String[] lines = expected.split("\n");
+
+                Assert.assertEquals(RsaReaderTest.ROWS, lines.length);
+
+                for (int i = 0; i < lines.length; i++) {
+                    Assert.assertTrue(lines[i].startsWith(i + ";"));
+                }
+
+                Assert.assertEquals(expected, RsaReaderTest.read(table, pair, RsaReaderTest.THREADS));
+            } finally {
+                if (!table.delete()) {
+                    table.deleteOnExit();
+                }
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+}
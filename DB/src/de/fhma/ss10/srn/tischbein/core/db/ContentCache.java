@@ -0,0 +1,265 @@
+package de.fhma.ss10.srn.tischbein.core.db;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Gemeinsamer Cache für entschlüsselte Dateiinhalte. Der Cache ist nach Bytes begrenzt: Wird die Grenze überschritten,
+ * werden die am längsten nicht mehr gelesenen Inhalte verdrängt (LRU). Inhalte, die allein größer als die Grenze sind,
+ * werden gar nicht aufgenommen. Treffer, Fehlgriffe und Verdrängungen werden gezählt.
+ * <p>
+ * Die Inhalte werden über die Datei-ID geführt, die in der ganzen Datenbank eindeutig ist. Sie liegen als
+ * {@link PlainContent} außerhalb des Heaps und gehören dem Cache: Wird ein Inhalt verdrängt, entfernt oder ersetzt,
+ * schließt der Cache ihn und überschreibt damit den Klartext. Nach außen gibt der Cache deshalb nur Kopien heraus.
+ * 
+ * @author Smolli
+ */
+public final class ContentCache {
+
+    /**
+     * Ein Inhalt im Cache mit seiner Länge.
+     */
+    private static final class Entry {
+
+        /** Hält den Inhalt. */
+        private final PlainContent content;
+        /** Hält die Länge des Inhalts in Bytes. */
+        private final int length;
+
+        /**
+         * Erstellt einen neuen Eintrag.
+         * 
+         * @param content
+         *            Der Inhalt.
+         * @param length
+         *            Die Länge des Inhalts in Bytes.
+         */
+        Entry(final PlainContent content, final int length) {
+            this.content = content;
+            this.length = length;
+        }
+
+    }
+
+    /** Hält die anfängliche Kapazität der Map. */
+    private static final int INITIAL_CAPACITY = 16;
+    /** Hält den Ladefaktor der Map. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Hält die Inhalte in der Reihenfolge des letzten Zugriffs, der älteste zuerst. */
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(
+            ContentCache.INITIAL_CAPACITY, ContentCache.LOAD_FACTOR, true);
+    /** Hält die Größe aller Inhalte in Bytes. */
+    private long size = 0;
+    /** Hält die maximale Größe aller Inhalte in Bytes. */
+    private long maxBytes;
+    /** Zählt die Zugriffe, die einen Inhalt gefunden haben. */
+    private long hits = 0;
+    /** Zählt die Zugriffe, die keinen Inhalt gefunden haben. */
+    private long misses = 0;
+    /** Zählt die verdrängten Inhalte. */
+    private long evictions = 0;
+
+    /**
+     * Erstellt einen neuen, leeren Cache.
+     * 
+     * @param limit
+     *            Die maximale Größe aller Inhalte in Bytes.
+     */
+    public ContentCache(final long limit) {
+        this.maxBytes = limit;
+    }
+
+    /**
+     * Leert den Cache und schließt alle Inhalte. Die Zähler bleiben erhalten.
+     */
+    public synchronized void clear() {
+        for (Entry entry : this.entries.values()) {
+            entry.content.close();
+        }
+
+        this.entries.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Gibt eine Kopie des Inhalts der Datei zurück und zählt den Zugriff als Treffer oder Fehlgriff.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @return Der Inhalt oder <code>null</code>, wenn er nicht im Cache liegt.
+     */
+    public synchronized byte[] get(final int fileId) {
+        return this.read(fileId, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gibt die Anzahl der verdrängten Inhalte zurück.
+     * 
+     * @return Die Anzahl der Verdrängungen.
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Gibt die Anzahl der Zugriffe zurück, die einen Inhalt gefunden haben.
+     * 
+     * @return Die Anzahl der Treffer.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Gibt die maximale Größe aller Inhalte zurück.
+     * 
+     * @return Die Größe in Bytes.
+     */
+    public synchronized long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Gibt die Anzahl der Zugriffe zurück, die keinen Inhalt gefunden haben.
+     * 
+     * @return Die Anzahl der Fehlgriffe.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Gibt die Größe aller Inhalte im Cache zurück.
+     * 
+     * @return Die Größe in Bytes.
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Legt den Inhalt der Datei in den Cache und verdrängt, falls nötig, die ältesten Inhalte. Der Cache übernimmt den
+     * Inhalt und schließt ihn, sobald er ihn nicht mehr hält; ist der Inhalt allein größer als die Grenze, wird er
+     * sofort geschlossen.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @param content
+     *            Der entschlüsselte Inhalt.
+     * @throws IOException
+     *             Wird geworfen, wenn der Inhalt schon geschlossen wurde.
+     */
+    public synchronized void put(final int fileId, final PlainContent content) throws IOException {
+        int length = content.length();
+
+        this.remove(fileId);
+
+        if (length > this.maxBytes) {
+            content.close();
+
+            return;
+        }
+
+        this.entries.put(fileId, new Entry(content, length));
+        this.size += length;
+
+        this.evict();
+    }
+
+    /**
+     * Gibt eine Kopie eines Bereichs aus dem Inhalt der Datei zurück und zählt den Zugriff als Treffer oder
+     * Fehlgriff.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @param offset
+     *            Die Startposition im Inhalt.
+     * @param length
+     *            Die maximale Anzahl der Bytes.
+     * @return Der Bereich oder <code>null</code>, wenn der Inhalt nicht im Cache liegt. Das Array ist kürzer als
+     *         <code>length</code>, wenn das Ende des Inhalts erreicht wurde.
+     */
+    public synchronized byte[] read(final int fileId, final long offset, final int length) {
+        Entry entry = this.entries.get(fileId);
+
+        if (entry != null) {
+            int start = (int) Math.min(offset, entry.length);
+            byte[] data = new byte[Math.min(length, entry.length - start)];
+
+            try {
+                if (data.length > 0) {
+                    entry.content.read(start, data, 0, data.length);
+                }
+
+                this.hits++;
+
+                return data;
+            } catch (IOException e) {
+                // der Inhalt wurde außerhalb des Caches geschlossen und ist damit verloren
+                this.remove(fileId);
+            }
+        }
+
+        this.misses++;
+
+        return null;
+    }
+
+    /**
+     * Entfernt den Inhalt der Datei aus dem Cache und schließt ihn, z.B. weil die Datei gelöscht wurde.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     */
+    public synchronized void remove(final int fileId) {
+        Entry entry = this.entries.remove(fileId);
+
+        if (entry != null) {
+            entry.content.close();
+
+            this.size -= entry.length;
+        }
+    }
+
+    /**
+     * Setzt die maximale Größe aller Inhalte. Ist der Cache danach zu groß, werden die ältesten Inhalte sofort
+     * verdrängt.
+     * 
+     * @param limit
+     *            Die Größe in Bytes.
+     */
+    public synchronized void setMaxBytes(final long limit) {
+        this.maxBytes = limit;
+
+        this.evict();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ContentCache[" + this.size + "/" + this.maxBytes + " Bytes, " + this.entries.size()
+                + " Dateien, Treffer=" + this.hits + ", Fehlgriffe=" + this.misses + ", Verdrängt=" + this.evictions
+                + "]";
+    }
+
+    /**
+     * Verdrängt und schließt die ältesten Inhalte, bis die Größe wieder eingehalten wird.
+     */
+    private void evict() {
+        Iterator<Entry> it = this.entries.values().iterator();
+
+        while ((this.size > this.maxBytes) && it.hasNext()) {
+            Entry entry = it.next();
+
+            entry.content.close();
+
+            this.size -= entry.length;
+
+            it.remove();
+
+            this.evictions++;
+        }
+    }
+
+}
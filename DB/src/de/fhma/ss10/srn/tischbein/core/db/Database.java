@@ -1,10 +1,27 @@
 package de.fhma.ss10.srn.tischbein.core.db;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.fhma.ss10.srn.tischbein.core.crypto.CryptoException;
+import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseDurability;
 import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseFiles;
 import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseModel;
+import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseTransaction;
 
 /**
  * Datanbankklasse. Kapselt die gesamte Datenbankstruktur.
@@ -13,16 +30,27 @@ import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseModel;
  */
 public final class Database extends DatabaseModel {
 
+    /** Nach wie vielen erzeugten Benutzern der Import einen Zwischenstand ausgibt. */
+    private static final int IMPORT_PROGRESS_STEP = 100;
+    /** Millisekunden pro Sekunde, für die Ausgabe des Durchsatzes. */
+    private static final double MILLIS_PER_SECOND = 1000.0;
     /** Singleton-Instanz der Datenbank. */
-    private static Database instance = null;
+    private static volatile Database instance = null;
 
     /**
      * Gibt die Instanz der Datenbank zurück. Wenn die Datenbank nicht gestartet werden kann, wird eine
-     * <code>RuntimeException</code> mit dem Grund geworfen.
+     * <code>RuntimeException</code> mit dem Grund geworfen. Ist die Datenbank schon geöffnet, wird keine Sperre
+     * benötigt.
      * 
      * @return Gibt die Instanz der Datenbank zurück.
      */
-    public static synchronized Database getInstance() {
+    public static Database getInstance() {
+        Database db = Database.instance;
+
+        if (db != null) {
+            return db;
+        }
+
         DatabaseFiles.LOCK.lock();
 
         try {
@@ -44,6 +72,21 @@ public final class Database extends DatabaseModel {
         }
     }
 
+    /**
+     * Gibt den Durchsatz als Text zurück.
+     * 
+     * @param count
+     *            Die Anzahl der Benutzer.
+     * @param start
+     *            Der Startzeitpunkt in Millisekunden.
+     * @return Der Text.
+     */
+    private static String formatThroughput(final int count, final long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        return String.format("%d ms, %.1f Benutzer/s", elapsed, count * Database.MILLIS_PER_SECOND / elapsed);
+    }
+
     /**
      * Setzt die Datenbankinstanz auf <code>null</code>.
      */
@@ -70,16 +113,117 @@ public final class Database extends DatabaseModel {
      *             Wird geworfen, wenn das {@link FileItem} nicht hinzugefügt werden konnte.
      */
     public void addFileItem(final FileItem item) throws DatabaseException {
+        User owner = item.getOwner();
+
+        this.lockUsers(owner);
+
         try {
+            DatabaseTransaction tx = this.beginTransaction();
+
             // in Dateitabelle des Benutzers Eintrag schreiben
-            this.addFileToUserTable(item);
+            this.addFileToUserTable(tx, item);
 
             // in globale Dateitablle Eintrag schreiben
-            this.addFileToGlobalTable(item);
+            this.addFileToGlobalTable(tx, item);
 
-            this.shutdown();
+            this.commit(tx);
         } catch (Exception e) {
             throw new DatabaseException("Die Datei kann nicht hinzugefügt werden!", e);
+        } finally {
+            this.unlockUsers(owner);
+        }
+    }
+
+    /**
+     * Nimmt einen Benutzer in die Gruppe auf. Aufnehmen kann nur ein angemeldetes Mitglied der Gruppe; ist die Gruppe
+     * noch gesperrt, wird sie mit dessen privatem Schlüssel freigeschaltet, da ihr CryptKey für das neue Mitglied
+     * verpackt wird. Das kostet genau eine RSA-Operation, unabhängig davon, wie viele Dateien der Gruppe freigegeben
+     * sind.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @param member
+     *            Das angemeldete Mitglied, das den Benutzer aufnimmt.
+     * @param user
+     *            Das neue Mitglied.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Benutzer nicht aufgenommen werden kann.
+     */
+    public void addGroupMember(final Group group, final User member, final User user) throws DatabaseException {
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            if (!this.isGroupMember(group, member)) {
+                throw new DatabaseException("Nur Mitglieder können Benutzer in die Gruppe aufnehmen!");
+            }
+
+            if (member.getPrivateKey() == null) {
+                throw new DatabaseException("Das Mitglied ist nicht angemeldet!");
+            }
+
+            if (group.getCryptKey() == null) {
+                this.unlockGroup(group, member);
+            }
+
+            if (this.isGroupMember(group, user)) {
+                throw new DatabaseException("Der Benutzer ist schon Mitglied der Gruppe!");
+            }
+
+            DatabaseTransaction tx = this.beginTransaction();
+
+            this.addMemberToGroup(tx, group, user);
+
+            this.commit(tx);
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseException("Kann den Benutzer nicht in die Gruppe aufnehmen!", e);
+        } finally {
+            DatabaseFiles.LOCK.unlock();
+        }
+    }
+
+    /**
+     * Legt eine neue Gruppe an. Die Gruppe bekommt ein eigenes Schlüsselpaar, der Gründer wird ihr erstes Mitglied.
+     * 
+     * @param name
+     *            Der Gruppenname.
+     * @param founder
+     *            Der Gründer.
+     * @return Die neue, freigeschaltete Gruppe.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Gruppe nicht angelegt werden konnte.
+     */
+    public Group createGroup(final String name, final User founder) throws DatabaseException {
+        if (this.getGroupMap().containsKey(name.toLowerCase())) {
+            throw new DatabaseException("Gruppe existiert schon!");
+        }
+
+        Group group;
+
+        try {
+            // die Schlüssel werden außerhalb der Sperre erzeugt
+            group = Group.create(name);
+        } catch (Exception e) {
+            throw new DatabaseException("Fehler beim Anlegen der neuen Gruppe!", e);
+        }
+
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            if (this.getGroupMap().containsKey(name.toLowerCase())) {
+                throw new DatabaseException("Gruppe existiert schon!");
+            }
+
+            this.addGroup(group, founder);
+
+            System.out.println("Gruppe " + name + " angelegt.");
+
+            return group;
+        } catch (Exception e) {
+            throw new DatabaseException("Fehler beim Anlegen der neuen Gruppe!", e);
+        } finally {
+            DatabaseFiles.LOCK.unlock();
         }
     }
 
@@ -95,6 +239,19 @@ public final class Database extends DatabaseModel {
      *             Wird geworfen, wenn der Benutzer nicht angelegt werden konnte.
      */
     public void createUser(final String name, final String pass) throws DatabaseException {
+        if (this.getUserMap().containsKey(name.toLowerCase())) {
+            throw new DatabaseException("Benutzer existiert schon!");
+        }
+
+        User user;
+
+        try {
+            // die Schlüssel werden außerhalb der Sperre erzeugt
+            user = User.create(name, pass);
+        } catch (Exception e) {
+            throw new DatabaseException("Fehler beim Anlegen des neuen Benutzers!", e);
+        }
+
         DatabaseFiles.LOCK.lock();
 
         try {
@@ -102,8 +259,6 @@ public final class Database extends DatabaseModel {
                 throw new DatabaseException("Benutzer existiert schon!");
             }
 
-            User user = User.create(name, pass);
-
             this.addUser(user, pass);
 
             System.out.println("Benutzer " + name + " angelegt.");
@@ -123,19 +278,80 @@ public final class Database extends DatabaseModel {
      *             Wird geworfen, wenn das FileItem nicht gelöscht werden kann.
      */
     public void deleteFileItem(final FileItem item) throws DatabaseException {
-        // aus globaler Files-Tabelle löschen
-        this.removeFileFromGlobalTable(item);
+        User[] users = this.lockInvolvedUsers(item);
+
+        try {
+            DatabaseTransaction tx = this.beginTransaction();
+
+            // aus globaler Files-Tabelle löschen
+            this.removeFileFromGlobalTable(tx, item);
+
+            // aus Files-Tabelle des Owner löschen
+            this.removeFileFromOwnerTable(tx, item);
+
+            // aus den Access-Tabllen aller anderen User löschen
+            // aus Lend-Tabelle des Owner löschen
+            this.removeFileFromAccessTables(tx, item);
+
+            DatabaseFiles.LOCK.lock();
+
+            try {
+                // aus den Access-Tabellen der Gruppen löschen
+                this.removeFileFromGroupTables(tx, item);
+
+                this.commit(tx);
+            } finally {
+                DatabaseFiles.LOCK.unlock();
+            }
+        } finally {
+            this.unlockUsers(users);
+        }
 
-        // aus Files-Tabelle des Owner löschen
-        this.removeFileFromOwnerTable(item);
+        FileItem.getContentCache().remove(item.getId());
 
-        // aus den Access-Tabllen aller anderen User löschen
-        // aus Lend-Tabelle des Owner löschen
-        this.removeFileFromAccessTables(item);
+        this.forgetFileKeys(this.getUsers(), Collections.singleton(item));
 
         // TODO: physiaklisches Löschen der Datei
     }
 
+    /**
+     * Entzieht der Gruppe das Zugriffsrecht für die angegebene Datei.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @param file
+     *            Die Datei.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Berechtigung nicht entzogen werden kann.
+     */
+    public void denyAccess(final Group group, final FileItem file) throws DatabaseException {
+        if ((file == null) || (group == null)) {
+            return;
+        }
+
+        User owner = file.getOwner();
+
+        this.lockUsers(owner);
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            if (!this.isSharedWithGroup(group, file)) {
+                throw new DatabaseException("Die Gruppe ist nicht im Besitz der Zugriffserlaubnis!");
+            }
+
+            DatabaseTransaction tx = this.beginTransaction();
+
+            this.denyAccessToGroup(tx, group, file);
+
+            this.commit(tx);
+
+            this.forgetFileKeys(this.findGroupMembers(group), Collections.singleton(file));
+        } finally {
+            DatabaseFiles.LOCK.unlock();
+            this.unlockUsers(owner);
+        }
+    }
+
     /**
      * Entzieht dem angegebenen Benutzer das Zugriffsrecht für die angegebene Datei.
      * 
@@ -151,18 +367,30 @@ public final class Database extends DatabaseModel {
             return;
         }
 
-        if (!file.getOwner().getDescriptor().getLendList().containsFile(file, user)) {
-            throw new DatabaseException("Der Benutzer ist nicht im Besitz der Zugriffserlaubnis!");
-        }
+        User owner = file.getOwner();
+
+        this.lockUsers(user, owner);
 
         try {
-            this.denyAccessToUser(user, file);
+            if (!this.isGranted(user, file)) {
+                throw new DatabaseException("Der Benutzer ist nicht im Besitz der Zugriffserlaubnis!");
+            }
 
-            this.removeRemarkFromOwner(user, file);
-        } catch (Exception e) {
-            throw new DatabaseException("Kann das Recht nicht speichern!", e);
+            try {
+                DatabaseTransaction tx = this.beginTransaction();
+
+                this.denyAccessToUser(tx, user, file);
+
+                this.removeRemarkFromOwner(tx, user, file);
+
+                this.commit(tx);
+
+                this.forgetFileKeys(Collections.singleton(user), Collections.singleton(file));
+            } catch (Exception e) {
+                throw new DatabaseException("Kann das Recht nicht speichern!", e);
+            }
         } finally {
-            this.shutdown();
+            this.unlockUsers(user, owner);
         }
     }
 
@@ -176,20 +404,97 @@ public final class Database extends DatabaseModel {
      *             Wird geworfen, wenn die Datei mit der ID nicht im System ist.
      */
     public FileItem getFile(final int id) throws DatabaseException {
-        if (!this.getFileMap().containsKey(id)) {
+        FileItem file = this.getFileMap().get(id);
+
+        if (file == null) {
             throw new DatabaseException("Datei ist nicht bekannt!");
         }
 
-        return this.getFileMap().get(id);
+        return file;
     }
 
     /**
-     * Gibt die nächte Datei ID zurück. Die IDs werden Datenbankweit vergeben und sind eindeutig.
+     * Gibt alle Dateien zurück, die dem Benutzer von anderen Benutzern freigegeben wurden. Dafür wird keine
+     * Benutzertabelle geöffnet, der Benutzer muss also nicht angemeldet sein.
      * 
-     * @return Die ID als {@link Integer}.
+     * @param user
+     *            Der Benutzer.
+     * @return Die Dateien als {@link Vector}, aufsteigend nach ID.
+     */
+    public Vector<FileItem> getGrantedFiles(final User user) {
+        return this.findGrantedFiles(user);
+    }
+
+    /**
+     * Gibt alle Benutzer zurück, denen die Datei freigegeben wurde. Dafür wird keine Benutzertabelle geöffnet.
+     * 
+     * @param file
+     *            Die Datei.
+     * @return Die Benutzer als {@link Vector}, nach Namen sortiert.
      */
-    public int getNextFileId() {
-        return this.getLastFileId() + 1;
+    public Vector<User> getGrantees(final FileItem file) {
+        return this.findGrantees(file);
+    }
+
+    /**
+     * Gibt die {@link Group} mit dem angegebenen Namen zurück.
+     * 
+     * @param name
+     *            Der Gruppenname.
+     * @return Die Gruppe.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Gruppe dem System nicht bekannt ist.
+     */
+    public Group getGroup(final String name) throws DatabaseException {
+        Group group = this.getGroupMap().get(name.toLowerCase());
+
+        if (group == null) {
+            throw new DatabaseException("Gruppe ist nicht bekannt!");
+        }
+
+        return group;
+    }
+
+    /**
+     * Gibt alle Dateien zurück, die der Gruppe freigegeben wurden.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @return Die Dateien als {@link Vector}, aufsteigend nach ID.
+     */
+    public Vector<FileItem> getGroupFiles(final Group group) {
+        return this.findGroupFiles(group);
+    }
+
+    /**
+     * Gibt alle Mitglieder der Gruppe zurück.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @return Die Mitglieder als {@link Vector}, nach Namen sortiert.
+     */
+    public Vector<User> getGroupMembers(final Group group) {
+        return this.findGroupMembers(group);
+    }
+
+    /**
+     * Gibt alle {@link Group} in der Datenbank zurück.
+     * 
+     * @return Alle Gruppen als {@link Vector}.
+     */
+    public Vector<Group> getGroups() {
+        return new Vector<Group>(this.getGroupMap().values());
+    }
+
+    /**
+     * Gibt alle Gruppen zurück, in denen der Benutzer Mitglied ist.
+     * 
+     * @param user
+     *            Der Benutzer.
+     * @return Die Gruppen als {@link Vector}.
+     */
+    public Vector<Group> getGroups(final User user) {
+        return this.findGroups(user);
     }
 
     /**
@@ -202,16 +507,19 @@ public final class Database extends DatabaseModel {
      *             Wird geworfen, wenn der Benutzer dem System nicht bekannt ist.
      */
     public User getUser(final String name) throws DatabaseException {
-        if (!this.getUserMap().containsKey(name.toLowerCase())) {
+        User user = this.getUserMap().get(name.toLowerCase());
+
+        if (user == null) {
             throw new DatabaseException("Benutzer ist nicht bekannt!");
         }
 
-        return this.getUserMap().get(name.toLowerCase());
+        return user;
     }
 
     /**
      * Gibt ein {@link UserDescriptor} zurück, das alle eigenen und fremden Dateien enthält, auf den der übergebene
-     * Benutzer Zugriff hat.
+     * Benutzer Zugriff hat. Zu den fremden Dateien gehören auch die Dateien, die den Gruppen des Benutzers
+     * freigegeben wurden.
      * 
      * @param user
      *            Der Benutzer.
@@ -222,18 +530,27 @@ public final class Database extends DatabaseModel {
      *             Wird geworfen, wenn eine der Tabellen nicht geladen werden konnte.
      */
     public UserDescriptor getUserDescriptor(final User user) throws CryptoException, DatabaseException {
-        DatabaseFiles.LOCK.lock();
+        this.lockUsers(user);
 
         try {
             UserDescriptor descriptor = new UserDescriptor();
 
             descriptor.setFilesTable(this.loadUserFilesTable(user));
-            descriptor.setAccessTable(this.loadUserAccessTable(user));
+
+            Vector<FileItem> access = this.loadUserAccessTable(user);
+
+            for (FileItem file : this.loadGroupFiles(user)) {
+                if (!access.contains(file) && !descriptor.getFileList().contains(file)) {
+                    access.add(file);
+                }
+            }
+
+            descriptor.setAccessTable(access);
             descriptor.setLendTable(this.loadUserLendTable(user));
 
             return descriptor;
         } finally {
-            DatabaseFiles.LOCK.unlock();
+            this.unlockUsers(user);
         }
     }
 
@@ -261,6 +578,47 @@ public final class Database extends DatabaseModel {
         return users;
     }
 
+    /**
+     * Gibt die Datei einer Gruppe frei. Der Dateischlüssel wird dafür genau einmal mit dem öffentlichen Schlüssel der
+     * Gruppe verpackt; alle Mitglieder, auch spätere, erhalten dadurch Zugriff.
+     * 
+     * @param group
+     *            Die {@link Group}, für die die Zugriffsrechte erteilt werden.
+     * @param file
+     *            Das {@link FileItem}, für das die Zugriffsrechte erteilt werden.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Zugriffsrecht nicht erteilt werden konnte.
+     */
+    public void grantAccess(final Group group, final FileItem file) throws DatabaseException {
+        if ((file == null) || (group == null)) {
+            return;
+        }
+
+        User owner = file.getOwner();
+
+        this.lockUsers(owner);
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            if (this.isSharedWithGroup(group, file)) {
+                throw new DatabaseException("Die Datei wurde schon der Gruppe zugewiesen!");
+            }
+
+            try {
+                DatabaseTransaction tx = this.beginTransaction();
+
+                this.grantAccessToGroup(tx, group, file);
+
+                this.commit(tx);
+            } catch (Exception e) {
+                throw new DatabaseException("Kann Recht nicht speichern!", e);
+            }
+        } finally {
+            DatabaseFiles.LOCK.unlock();
+            this.unlockUsers(owner);
+        }
+    }
+
     /**
      * Erteilt dem übergebenen Benutzer Zugriffsrechte auf die übergebene Datei.
      * 
@@ -276,21 +634,109 @@ public final class Database extends DatabaseModel {
             return;
         }
 
-        if (file.getOwner().getDescriptor().getLendList().containsFile(file, user)) {
-            throw new DatabaseException("Die Datei wurde schon dem Benutzer zugewiesen!");
+        User owner = file.getOwner();
+
+        this.lockUsers(user, owner);
+
+        try {
+            if (this.isGranted(user, file)) {
+                throw new DatabaseException("Die Datei wurde schon dem Benutzer zugewiesen!");
+            }
+
+            try {
+                DatabaseTransaction tx = this.beginTransaction();
+
+                this.grantAccessToUser(tx, user, file);
+
+                this.addRemarkToOwner(tx, user, file);
+
+                this.commit(tx);
+            } catch (Exception e) {
+                throw new DatabaseException("Kann Recht nicht speichern!", e);
+            }
+        } finally {
+            this.unlockUsers(user, owner);
+        }
+    }
+
+    /**
+     * Erteilt mehreren Benutzern auf einmal Zugriffsrechte auf die übergebene Datei. Der Dateischlüssel wird parallel
+     * für alle Benutzer verpackt, die Lend-Tabelle des Besitzers nur einmal geschrieben und alle Änderungen in einem
+     * einzigen Commit gespeichert. Benutzer, die schon Zugriff haben, werden übersprungen.
+     * 
+     * @param users
+     *            Die {@link User}, für die die Zugriffsrechte erteilt werden.
+     * @param file
+     *            Das {@link FileItem}, für das die Zugriffsrechte erteilt werden.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Zugriffsrechte nicht erteilt werden konnten.
+     */
+    public void grantAccess(final Collection<User> users, final FileItem file) throws DatabaseException {
+        if ((file == null) || (users == null)) {
+            return;
         }
 
+        LinkedHashSet<User> recipients = new LinkedHashSet<User>(users);
+
+        recipients.remove(null);
+
+        User[] involved = recipients.toArray(new User[recipients.size() + 1]);
+
+        involved[recipients.size()] = file.getOwner();
+
+        this.lockUsers(involved);
+
         try {
-            this.grantAccessToUser(user, file);
+            Vector<User> grantees = new Vector<User>();
 
-            this.addRemarkToOwner(user, file);
+            for (User user : recipients) {
+                if (!this.isGranted(user, file)) {
+                    grantees.add(user);
+                }
+            }
+
+            if (grantees.isEmpty()) {
+                return;
+            }
+
+            DatabaseTransaction tx = this.beginTransaction();
+
+            this.grantAccessToUsers(tx, grantees, file);
+
+            this.addRemarksToOwner(tx, grantees, file);
+
+            this.commit(tx);
         } catch (Exception e) {
-            throw new DatabaseException("Kann Recht nicht speichern!", e);
+            throw new DatabaseException("Kann Rechte nicht speichern!", e);
         } finally {
-            this.shutdown();
+            this.unlockUsers(involved);
         }
     }
 
+    /**
+     * Ermittelt, ob die Datei dem Benutzer freigegeben wurde. Dafür wird keine Benutzertabelle geöffnet.
+     * 
+     * @param user
+     *            Der Benutzer.
+     * @param file
+     *            Die Datei.
+     * @return Gibt <code>true</code> zurück, wenn der Benutzer Zugriff hat, andernfalls <code>false</code>.
+     */
+    public boolean hasAccess(final User user, final FileItem file) {
+        return this.isGranted(user, file);
+    }
+
+    /**
+     * Ermittelt ob eine Gruppe mit dem angegebenen Namen in der Datenbank existiert.
+     * 
+     * @param name
+     *            Der Name der Gruppe.
+     * @return Gibt <code>true</code> zurück, wenn die Gruppe existiert, andernfalls <code>false</code>.
+     */
+    public boolean hasGroup(final String name) {
+        return this.getGroupMap().containsKey(name.toLowerCase());
+    }
+
     /**
      * Ermittelt ob ein Benutzer mit dem angegebenen Namen in der Datenbank existiert.
      * 
@@ -303,16 +749,292 @@ public final class Database extends DatabaseModel {
     }
 
     /**
-     * Fährt die Datenbank runter und speichert noch ausstehende Daten ab.
+     * Legt viele Benutzer auf einmal an, z.B. beim Übernehmen einer ganzen Organisation. Die Schlüssel werden parallel
+     * und ohne Sperre erzeugt; danach werden alle Benutzer mit einem einzigen Schreibvorgang an die Users-Tabelle
+     * angehängt und in einem Commit gespeichert. Benutzer, die schon existieren oder doppelt aufgeführt sind, werden
+     * übersprungen. Fortschritt und Durchsatz werden auf der Konsole ausgegeben.
+     * 
+     * @param accounts
+     *            Die Benutzernamen mit ihren Passwörtern.
+     * @param threads
+     *            Die Anzahl der Threads für die Schlüsselerzeugung.
+     * @return Die Anzahl der angelegten Benutzer.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Benutzer nicht angelegt werden konnten. Es wird dann keiner angelegt.
+     */
+    public int importUsers(final Map<String, String> accounts, final int threads) throws DatabaseException {
+        Map<String, String> pending = new LinkedHashMap<String, String>();
+        Set<String> seen = new HashSet<String>();
+
+        for (Map.Entry<String, String> account : accounts.entrySet()) {
+            String key = account.getKey().toLowerCase();
+
+            if (!seen.add(key)) {
+                System.out.println("Benutzer " + account.getKey() + " ist doppelt aufgeführt und wird übersprungen.");
+            } else if (this.hasUser(key)) {
+                System.out.println("Benutzer " + account.getKey() + " existiert schon und wird übersprungen.");
+            } else {
+                pending.put(account.getKey(), account.getValue());
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, String> lines = this.compileUsers(pending, threads, start);
+
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            Vector<String> fresh = new Vector<String>();
+
+            for (Map.Entry<String, String> line : lines.entrySet()) {
+                if (this.hasUser(line.getKey())) {
+                    System.out.println("Benutzer " + line.getKey() + " wurde inzwischen angelegt.");
+                } else {
+                    fresh.add(line.getValue());
+                }
+            }
+
+            if (!fresh.isEmpty()) {
+                this.addUsers(fresh);
+            }
+
+            System.out.println(fresh.size() + " Benutzer importiert (" + Database.formatThroughput(fresh.size(), start)
+                    + ").");
+
+            return fresh.size();
+        } finally {
+            DatabaseFiles.LOCK.unlock();
+        }
+    }
+
+    /**
+     * Meldet einen Benutzer ab. Seine Gruppen werden mit gesperrt, damit deren Schlüssel nicht im Speicher bleiben,
+     * sofern kein anderes Mitglied mehr angemeldet ist. Solange noch ein Mitglied angemeldet ist, bleibt die Gruppe
+     * freigeschaltet, da die verpackten Schlüssel seiner Gruppendateien mit dem privaten Schlüssel der Gruppe entpackt
+     * werden.
+     * 
+     * @param user
+     *            Der Benutzer.
+     */
+    public void logout(final User user) {
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            for (Group group : this.findGroups(user)) {
+                if (!this.hasOtherMemberLoggedIn(group, user)) {
+                    group.lock();
+                }
+            }
+
+            user.lock();
+        } finally {
+            DatabaseFiles.LOCK.unlock();
+        }
+    }
+
+    /**
+     * Entfernt einen Benutzer aus der Gruppe. Der CryptKey der Gruppe wird dabei nicht gewechselt: Ein ehemaliges
+     * Mitglied, das den entpackten CryptKey aufbewahrt hat, kann die bis dahin freigegebenen Dateien weiterhin
+     * entschlüsseln.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @param user
+     *            Das Mitglied.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Benutzer nicht entfernt werden kann.
+     */
+    public void removeGroupMember(final Group group, final User user) throws DatabaseException {
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            if (!this.isGroupMember(group, user)) {
+                throw new DatabaseException("Der Benutzer ist kein Mitglied der Gruppe!");
+            }
+
+            DatabaseTransaction tx = this.beginTransaction();
+
+            this.removeMemberFromGroup(tx, group, user);
+
+            this.commit(tx);
+
+            this.forgetFileKeys(Collections.singleton(user), this.findGroupFiles(group));
+        } finally {
+            DatabaseFiles.LOCK.unlock();
+        }
+    }
+
+    /**
+     * Reserviert eine neue Datei-ID. Die IDs werden datenbankweit vergeben und sind eindeutig; jeder Aufruf verbraucht
+     * eine ID, auch wenn die Datei danach nicht hinzugefügt wird.
+     * 
+     * @return Die ID als {@link Integer}.
+     */
+    public int reserveFileId() {
+        return this.allocateFileId();
+    }
+
+    /**
+     * Stellt ein, wann Änderungen auf die Platte gebracht werden. Voreingestellt ist
+     * {@link DatabaseDurability#SYNC}; für Massenimporte kann z.B. {@link DatabaseDurability#NONE} gewählt und danach
+     * wieder zurückgestellt werden.
+     * 
+     * @param durability
+     *            Die Dauerhaftigkeit.
+     */
+    public void setDurability(final DatabaseDurability durability) {
+        this.setJournalDurability(durability);
+    }
+
+    /**
+     * Fährt die Datenbank runter und speichert noch ausstehende Daten ab. Die schreibenden Operationen rufen diese
+     * Methode nicht mehr auf, da das Modell im Speicher direkt aktualisiert wird. Sie wird nur noch beim Beenden der
+     * Anwendung benötigt; der nächste Aufruf von {@link #getInstance()} lädt die Tabellen dann neu.
      */
     public void shutdown() {
         DatabaseFiles.LOCK.lock();
 
         try {
+            this.closeTables();
+
             Database.killInstance();
         } finally {
             DatabaseFiles.LOCK.unlock();
         }
     }
 
+    /**
+     * Erzeugt die Schlüssel der Benutzer parallel und kompiliert sie als Zeilen der Users-Tabelle.
+     * 
+     * @param accounts
+     *            Die Benutzernamen mit ihren Passwörtern.
+     * @param threads
+     *            Die Anzahl der Threads.
+     * @param start
+     *            Der Startzeitpunkt des Imports in Millisekunden.
+     * @return Die Zeilen zu den klein geschriebenen Benutzernamen, in der Reihenfolge der Eingabe.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn ein Benutzer nicht erzeugt werden kann.
+     */
+    private Map<String, String> compileUsers(final Map<String, String> accounts, final int threads, final long start)
+            throws DatabaseException {
+        final int total = accounts.size();
+        final AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+
+            for (final Map.Entry<String, String> account : accounts.entrySet()) {
+                futures.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() throws Exception {
+                        String line = User.create(account.getKey(), account.getValue()).compile(account.getValue());
+                        int count = done.incrementAndGet();
+
+                        if ((count % Database.IMPORT_PROGRESS_STEP == 0) || (count == total)) {
+                            System.out.println(count + "/" + total + " Benutzer erzeugt ("
+                                    + Database.formatThroughput(count, start) + ")");
+                        }
+
+                        return line;
+                    }
+
+                }));
+            }
+
+            Map<String, String> lines = new LinkedHashMap<String, String>();
+            int pos = 0;
+
+            for (String name : accounts.keySet()) {
+                lines.put(name.toLowerCase(), futures.get(pos++).get());
+            }
+
+            return lines;
+        } catch (ExecutionException e) {
+            throw new DatabaseException("Fehler beim Anlegen der neuen Benutzer!", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new DatabaseException("Der Import wurde unterbrochen!", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Lässt die Benutzer die Schlüssel der Dateien vergessen, die sie sich in ihrer Sitzung gemerkt oder als verpackten
+     * Schlüssel an die Datei gehängt haben. Neben dem übergebenen Objekt wird auch das Objekt aus der Benutzer-Map
+     * bereinigt, falls das ein anderes ist.
+     * 
+     * @param users
+     *            Die Benutzer.
+     * @param files
+     *            Die Dateien.
+     */
+    private void forgetFileKeys(final Collection<User> users, final Collection<FileItem> files) {
+        for (User user : users) {
+            User mapped = this.getUserMap().get(user.getName().toLowerCase());
+
+            for (FileItem file : files) {
+                user.forgetFileKey(file.getId());
+                file.forgetWrappedKey(user);
+
+                if ((mapped != null) && (mapped != user)) {
+                    mapped.forgetFileKey(file.getId());
+                    file.forgetWrappedKey(mapped);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ermittelt, ob außer dem Benutzer noch ein anderes Mitglied der Gruppe angemeldet ist.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @param user
+     *            Der Benutzer, der nicht mitgezählt wird.
+     * @return Gibt <code>true</code> zurück, wenn ein anderes Mitglied angemeldet ist.
+     */
+    private boolean hasOtherMemberLoggedIn(final Group group, final User user) {
+        for (User member : this.findGroupMembers(group)) {
+            if (!member.getName().equalsIgnoreCase(user.getName()) && (member.getPrivateKey() != null)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sperrt den Besitzer der Datei und alle Benutzer, denen die Datei freigegeben ist, auf einmal. Ändern sich die
+     * Freigaben, bevor die Sperren gesetzt sind, wird es mit den neuen Freigaben noch einmal versucht. Die Freigaben
+     * kommen aus dem Index der Zugriffsrechte.
+     * 
+     * @param item
+     *            Die Datei.
+     * @return Die gesperrten Benutzer, die später an {@link #unlockUsers(User...)} übergeben werden müssen.
+     */
+    private User[] lockInvolvedUsers(final FileItem item) {
+        User owner = item.getOwner();
+
+        while (true) {
+            Vector<User> involved = this.findGrantees(item);
+
+            involved.add(owner);
+
+            User[] users = involved.toArray(new User[involved.size()]);
+
+            this.lockUsers(users);
+
+            if (involved.containsAll(this.findGrantees(item))) {
+                return users;
+            }
+
+            this.unlockUsers(users);
+        }
+    }
+
 }
@@ -1,16 +1,31 @@
 package de.fhma.ss10.srn.tischbein.core.db;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.PrivateKey;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Vector;
 
 import javax.crypto.SecretKey;
 
+import de.fhma.ss10.srn.tischbein.core.HexInputStream;
 import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.UtilsException;
 import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
-import de.fhma.ss10.srn.tischbein.core.crypto.AesWriter;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesSegmentInputStream;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesSegmentOutputStream;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesSegmentReader;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
 import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
 
 /**
@@ -20,15 +35,61 @@ import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
  */
 public final class FileItem implements Comparable<Integer> {
 
+    /**
+     * Ein verpackter Dateischlüssel, den ein angemeldeter Benutzer aus seiner Access-Tabelle oder über eine seiner
+     * Gruppen mitbringt.
+     */
+    private static final class WrappedKey {
+
+        /** Hält den verpackten Schlüssel. */
+        private final byte[] wrapped;
+        /** Hält den Benutzer oder die Gruppe, mit deren privatem Schlüssel der Schlüssel entpackt wird. */
+        private final KeyHolder holder;
+        /** Hält den Benutzer, der sich den entpackten Schlüssel für seine Sitzung merkt. */
+        private final User session;
+
+        /**
+         * Erstellt einen neuen verpackten Schlüssel.
+         * 
+         * @param wrapped
+         *            Der verpackte Schlüssel.
+         * @param holder
+         *            Der Benutzer oder die Gruppe, deren privater Schlüssel den Schlüssel entpackt.
+         * @param session
+         *            Der Benutzer, der sich den entpackten Schlüssel merkt.
+         */
+        WrappedKey(final byte[] wrapped, final KeyHolder holder, final User session) {
+            this.wrapped = wrapped;
+            this.holder = holder;
+            this.session = session;
+        }
+
+        /**
+         * Ermittelt, ob der Schlüssel gerade entpackt werden darf, also der Inhaber freigeschaltet und der Benutzer
+         * angemeldet ist.
+         * 
+         * @return Gibt <code>true</code> zurück, wenn beide private Schlüssel vorliegen.
+         */
+        boolean isUsable() {
+            return (this.holder.getPrivateKey() != null) && (this.session.getPrivateKey() != null);
+        }
+
+    }
+
     /** Datei-Tabelle Hash. */
-    private static final int COLUMN_HASH = 2;
+    public static final int COLUMN_HASH = 2;
     /** Datei-Tabelle Name. */
-    private static final int COLUMN_NAME = 1;
+    public static final int COLUMN_NAME = 1;
     /** Datei-Tabelle ID. */
-    private static final int COLUMN_ID = 0;
+    public static final int COLUMN_ID = 0;
+    /** Hält die voreingestellte Größe des Inhalts-Caches in Bytes. */
+    private static final long CONTENT_CACHE_BYTES = 16L * 1024 * 1024;
+    /** Hält die entschlüsselten Inhalte aller Dateien. */
+    private static final ContentCache CONTENT_CACHE = new ContentCache(FileItem.CONTENT_CACHE_BYTES);
 
     /**
-     * Erstellt ein neues {@link FileItem} anhand des übergebenen Dateinamens erstellt.
+     * Erstellt ein neues {@link FileItem} anhand des übergebenen Dateinamens erstellt. Die Datei wird dabei nur
+     * einmal gestreamt, um die Prüfsumme zu bilden; ihr Inhalt wird nicht im Speicher gehalten.
      * 
      * @param owner
      *            Der Besitzer der Datei.
@@ -43,22 +104,34 @@ public final class FileItem implements Comparable<Integer> {
     public static FileItem create(final User owner, final String filename, final SecretKey secret) throws IOException {
         FileItem fi = new FileItem(owner);
         File file = new File(filename);
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
 
-        fi.content = new byte[(int) file.length()];
-        BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file));
-
-        bis.read(fi.content);
-
-        bis.close();
+        try {
+            fi.setHash(Utils.toMD5(in));
+        } catch (UtilsException e) {
+            throw new IOException("Kann die Prüfsumme der Datei nicht bilden!", e);
+        } finally {
+            in.close();
+        }
 
-        fi.setHash(Utils.toMD5(fi.content));
+        fi.source = file;
         fi.setName(file.getName());
-        fi.setId(Database.getInstance().getNextFileId());
+        fi.setId(Database.getInstance().reserveFileId());
         fi.setKey(secret);
 
         return fi;
     }
 
+    /**
+     * Gibt den gemeinsamen Cache für die entschlüsselten Dateiinhalte zurück, z.B. um seine Größe einzustellen oder die
+     * Zähler auszuwerten.
+     * 
+     * @return Der {@link ContentCache}.
+     */
+    public static ContentCache getContentCache() {
+        return FileItem.CONTENT_CACHE;
+    }
+
     //    /**
     //     * Erstellt den verschlüsselten Dateiinhalt.
     //     * 
@@ -106,6 +179,68 @@ public final class FileItem implements Comparable<Integer> {
         return file;
     }
 
+    /**
+     * Erzeugt ein {@link FileItem}-Objekt aus den schon dekodierten Spalten einer Zeile der Dateien-Tabelle.
+     * 
+     * @param owner
+     *            Der Besitzer der Datei.
+     * @param id
+     *            Die Datei-ID.
+     * @param name
+     *            Der Dateiname.
+     * @param hash
+     *            Die MD5-Summe des Dateiinhalts.
+     * @return Das {@link FileItem}-Objekt.
+     */
+    public static FileItem parse(final User owner, final int id, final String name, final byte[] hash) {
+        FileItem file = new FileItem(owner);
+
+        file.setId(id);
+        file.setName(name);
+        file.setHash(hash);
+
+        return file;
+    }
+
+    /**
+     * Kopiert den gesamten Klartext einer Datei im Segmentformat in den Inhalt. Schlägt das fehl, wird der Inhalt
+     * geschlossen.
+     * 
+     * @param reader
+     *            Der Leser der Datei.
+     * @param content
+     *            Der leere Inhalt.
+     * @return Der gefüllte Inhalt.
+     * @throws IOException
+     *             Wird geworfen, wenn ein Segment nicht gelesen oder entschlüsselt werden kann.
+     */
+    private static PlainContent copySegments(final AesSegmentReader reader, final PlainContent content)
+            throws IOException {
+        byte[] chunk = new byte[AesCrypto.SEGMENT_SIZE];
+        boolean complete = false;
+
+        try {
+            long position = 0;
+            int read;
+
+            while ((read = reader.read(position, chunk, 0, chunk.length)) > 0) {
+                content.append(chunk, 0, read);
+
+                position += read;
+            }
+
+            complete = true;
+
+            return content;
+        } finally {
+            Arrays.fill(chunk, (byte) 0);
+
+            if (!complete) {
+                content.close();
+            }
+        }
+    }
+
     /**
      * Erzeugt den Namen für die Datenbankdatei.
      * 
@@ -117,6 +252,23 @@ public final class FileItem implements Comparable<Integer> {
         return "db/files/" + Utils.toMD5Hex(fi.getName());
     }
 
+    /**
+     * Schneidet einen Bereich aus einem Byte-Array aus.
+     * 
+     * @param data
+     *            Das Byte-Array.
+     * @param offset
+     *            Die Startposition.
+     * @param length
+     *            Die maximale Länge des Bereichs.
+     * @return Der Bereich, gegebenenfalls am Ende des Arrays abgeschnitten.
+     */
+    private static byte[] slice(final byte[] data, final long offset, final int length) {
+        int start = (int) Math.min(offset, data.length);
+
+        return Arrays.copyOfRange(data, start, (int) Math.min((long) start + length, data.length));
+    }
+
     /** Hält die ID der Datei. */
     private Integer id;
 
@@ -126,8 +278,10 @@ public final class FileItem implements Comparable<Integer> {
     private byte[] hash;
     /** Hält den Dateischlüssel. */
     private SecretKey fileKey;
-    /** Hält den unverschlüsselten Dateiinhalt. */
-    private byte[] content;
+    /** Hält die verpackten Dateischlüssel der angemeldeten Benutzer, solange der Schlüssel nicht entpackt wurde. */
+    private final Vector<WrappedKey> wrappedKeys = new Vector<WrappedKey>();
+    /** Hält die Quelldatei, solange die Datei noch nicht verschlüsselt in der Datenbank liegt. */
+    private File source;
     /** Hält den Benistzer der Datei oder <code>null</code> wenn der Besitzer nicht bekannt ist. */
     private User owner;
 
@@ -141,6 +295,38 @@ public final class FileItem implements Comparable<Integer> {
         this.owner = ownerObject;
     }
 
+    /**
+     * Hängt einen verpackten Schlüssel an die Datei, mit dem der Inhalt der Datei verschlüsselt ist. Der Schlüssel wird
+     * erst beim ersten Zugriff über {@link #getKey()} entpackt, so dass beim Anmelden keine RSA-Operationen anfallen.
+     * Ist der Schlüssel schon bekannt, bleibt er unverändert. Da das {@link FileItem} von allen Sitzungen geteilt wird,
+     * hält es für jeden Benutzer und Inhaber einen eigenen verpackten Schlüssel; ein früher angehängter Schlüssel
+     * desselben Paares wird ersetzt.
+     * 
+     * @param wrapped
+     *            Der mit dem öffentlichen Schlüssel des Inhabers verpackte Schlüssel.
+     * @param holder
+     *            Der Benutzer oder die Gruppe, deren privater Schlüssel den Schlüssel entpackt.
+     * @param user
+     *            Der angemeldete Benutzer, der sich den entpackten Schlüssel für seine Sitzung merkt.
+     */
+    public synchronized void addWrappedKey(final byte[] wrapped, final KeyHolder holder, final User user) {
+        if (this.fileKey != null) {
+            return;
+        }
+
+        Iterator<WrappedKey> it = this.wrappedKeys.iterator();
+
+        while (it.hasNext()) {
+            WrappedKey candidate = it.next();
+
+            if ((candidate.holder == holder) && (candidate.session == user)) {
+                it.remove();
+            }
+        }
+
+        this.wrappedKeys.add(new WrappedKey(wrapped, holder, user));
+    }
+
     @Override
     public int compareTo(final Integer other) {
         return this.id.compareTo(other);
@@ -158,18 +344,33 @@ public final class FileItem implements Comparable<Integer> {
 
     /**
      * Verschlüsselt eine Datei und speichert die Dateidaten in der Datenbank ab. Es wird nichts in die Tabellen
-     * geschrieben.
+     * geschrieben. Die Quelldatei wird segmentweise gestreamt, der Speicherbedarf ist unabhängig von der Dateigröße.
      * 
      * @throws FileItemException
      *             Wird geworfen, wenn der Dateiinhalt nicht ermittelt werden kann.
      */
     public void encrypt() throws FileItemException {
+        if (this.source == null) {
+            throw new FileItemException("Die Datei hat keine Quelldatei!");
+        }
+
         try {
-            AesWriter w = AesWriter.createWriter(FileItem.generateDatabaseName(this), this.fileKey);
+            InputStream in = new BufferedInputStream(new FileInputStream(this.source));
 
-            w.write(Utils.toHexLine(this.getContent()));
+            try {
+                OutputStream out = new AesSegmentOutputStream(new BufferedOutputStream(new FileOutputStream(
+                        FileItem.generateDatabaseName(this))), this.getKey());
 
-            w.close();
+                try {
+                    Utils.copyStream(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+
+            FileItem.CONTENT_CACHE.remove(this.id);
         } catch (Exception e) {
             throw new FileItemException("Kann die Datei nicht verschlüsseln!", e);
         }
@@ -191,7 +392,10 @@ public final class FileItem implements Comparable<Integer> {
     }
 
     /**
-     * Gibt den unverschlüsselten Dateiinhalt zurück.
+     * Gibt den unverschlüsselten Dateiinhalt zurück. Der gesamte Inhalt wird dazu in den Speicher geladen; für große
+     * Dateien sollte stattdessen {@link #openStream()} verwendet werden. Der Inhalt wird nicht im {@link FileItem}
+     * gehalten, sondern als {@link PlainContent} im gemeinsamen {@link ContentCache}, der ihn bei Platzmangel
+     * verdrängt und dabei überschreibt. Zurückgegeben wird eine Kopie.
      * 
      * @return Der Dateiinhalt.
      * @throws FileItemException
@@ -199,11 +403,30 @@ public final class FileItem implements Comparable<Integer> {
      */
     public byte[] getContent() throws FileItemException {
         try {
-            if (this.content == null) {
-                this.readContent();
+            // nur wer den Schlüssel hat, bekommt den Inhalt aus dem Cache
+            if (this.getKey() == null) {
+                throw new FileItemException("Die Datei hat keinen Schlüssel!");
             }
 
-            return this.content;
+            byte[] content = FileItem.CONTENT_CACHE.get(this.id);
+
+            if (content == null) {
+                PlainContent plain = this.openContent();
+
+                try {
+                    content = new byte[plain.length()];
+
+                    plain.read(0, content, 0, content.length);
+                } catch (IOException e) {
+                    plain.close();
+
+                    throw e;
+                }
+
+                FileItem.CONTENT_CACHE.put(this.id, plain);
+            }
+
+            return content;
         } catch (Exception e) {
             throw new FileItemException("Datei kann nicht gelesen werden!", e);
         }
@@ -228,11 +451,53 @@ public final class FileItem implements Comparable<Integer> {
     }
 
     /**
-     * Gibt den Schlüssel zurück, mit dem der Dateiinhalt verschlüsselt wurde.
+     * Vergisst den verpackten Schlüssel, den der Benutzer an die Datei gehängt hat, z.B. weil ihm die Freigabe entzogen
+     * wurde.
+     * 
+     * @param user
+     *            Der Benutzer.
+     */
+    public synchronized void forgetWrappedKey(final User user) {
+        Iterator<WrappedKey> it = this.wrappedKeys.iterator();
+
+        while (it.hasNext()) {
+            if (it.next().session == user) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Gibt den Schlüssel zurück, mit dem der Dateiinhalt verschlüsselt wurde. Wurden nur verpackte Schlüssel
+     * angehängt, wird beim ersten Aufruf einer davon entpackt, dessen Inhaber freigeschaltet und dessen Benutzer noch
+     * angemeldet ist. Abgemeldete Benutzer werden übersprungen, so dass die übrigen Sitzungen die Datei weiter öffnen
+     * können.
      * 
      * @return Der Schlüssel.
+     * @throws FileItemException
+     *             Wird geworfen, wenn kein verpackter Schlüssel entpackt werden kann.
      */
-    public SecretKey getKey() {
+    public synchronized SecretKey getKey() throws FileItemException {
+        if ((this.fileKey == null) && !this.wrappedKeys.isEmpty()) {
+            for (WrappedKey candidate : this.wrappedKeys) {
+                if (candidate.isUsable()) {
+                    try {
+                        this.fileKey = RsaCrypto.unwrap(candidate.wrapped, candidate.holder.getPrivateKey());
+                    } catch (UtilsException e) {
+                        throw new FileItemException("Kann den Dateischlüssel nicht entpacken!", e);
+                    }
+
+                    candidate.session.rememberFileKey(this.id, this.fileKey);
+
+                    this.wrappedKeys.clear();
+
+                    return this.fileKey;
+                }
+            }
+
+            throw new FileItemException("Der Schlüsselinhaber ist nicht angemeldet!");
+        }
+
         return this.fileKey;
     }
 
@@ -259,14 +524,91 @@ public final class FileItem implements Comparable<Integer> {
         return this.id;
     }
 
+    /**
+     * Ermittelt, ob der Schlüssel der Datei gesetzt wurde, entpackt oder noch verpackt.
+     * 
+     * @return Gibt <code>true</code> zurück, wenn ein Schlüssel gesetzt wurde.
+     */
+    public synchronized boolean hasKey() {
+        return (this.fileKey != null) || !this.wrappedKeys.isEmpty();
+    }
+
+    /**
+     * Entschlüsselt den gesamten Dateiinhalt in einen {@link PlainContent} außerhalb des Heaps. Der Klartext landet
+     * dabei nicht im Heap und wird beim Schließen des Inhalts sofort überschrieben. Der Aufrufer muss den Inhalt
+     * schließen oder an den {@link ContentCache} übergeben.
+     * 
+     * @return Der Inhalt.
+     * @throws FileItemException
+     *             Wird geworfen, wenn der Dateiinhalt nicht gelesen oder entschlüsselt werden konnte.
+     */
+    public PlainContent openContent() throws FileItemException {
+        try {
+            String filename = FileItem.generateDatabaseName(this);
+
+            if (!AesSegmentInputStream.isSegmentFile(filename)) {
+                byte[] plain = this.readLegacyContent(filename);
+
+                try {
+                    return PlainContent.copyOf(plain);
+                } finally {
+                    Arrays.fill(plain, (byte) 0);
+                }
+            }
+
+            AesSegmentReader reader = new AesSegmentReader(filename, this.getKey());
+
+            try {
+                long length = reader.length();
+
+                if (length > Integer.MAX_VALUE) {
+                    throw new FileItemException("Die Datei ist zu groß!");
+                }
+
+                return FileItem.copySegments(reader, new PlainContent((int) length));
+            } finally {
+                reader.close();
+            }
+        } catch (FileItemException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new FileItemException("Kann den Inhalt der Datei nicht laden oder entschlüsseln!", e);
+        }
+    }
+
+    /**
+     * Öffnet einen Stream auf den entschlüsselten Dateiinhalt. Dateien im Segmentformat werden beim Lesen
+     * segmentweise entschlüsselt, so dass der Speicherbedarf unabhängig von der Dateigröße ist. Dateien im alten
+     * Hex-Format werden noch vollständig entschlüsselt.
+     * 
+     * @return Der Stream. Er muss vom Aufrufer geschlossen werden.
+     * @throws FileItemException
+     *             Wird geworfen, wenn die Datei nicht geöffnet werden konnte.
+     */
+    public InputStream openStream() throws FileItemException {
+        try {
+            String filename = FileItem.generateDatabaseName(this);
+
+            if (AesSegmentInputStream.isSegmentFile(filename)) {
+                return new AesSegmentInputStream(new BufferedInputStream(new FileInputStream(filename)),
+                        this.getKey());
+            }
+
+            return new ByteArrayInputStream(this.readLegacyContent(filename));
+        } catch (Exception e) {
+            throw new FileItemException("Kann die Datei nicht öffnen!", e);
+        }
+    }
+
     /**
      * Setzt den Schlüssel, mit dem der Inhalt der Datei verschlüssel ist.
      * 
      * @param secret
      *            Der Schlüssel.
      */
-    public void setKey(final SecretKey secret) {
+    public synchronized void setKey(final SecretKey secret) {
         this.fileKey = secret;
+        this.wrappedKeys.clear();
     }
 
     /**
@@ -285,32 +627,88 @@ public final class FileItem implements Comparable<Integer> {
     }
 
     /**
-     * Liest den Dateiinhalt ein und entschlüsselt ihn.
+     * Liest eine Datei im alten Format, in dem der hexkodierte Inhalt als Ganzes verschlüsselt und nochmals hexkodiert
+     * abgelegt wurde.
      * 
+     * @param filename
+     *            Der Dateiname in der Datenbank.
+     * @return Der entschlüsselte Dateiinhalt.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht gelesen werden kann.
+     * @throws UtilsException
+     *             Wird geworfen, wenn die Datei nicht entschlüsselt werden kann.
      * @throws FileItemException
-     *             Wird geworfen, wenn der Dateiinhalt nicht geladen oder entschlüsselt werden kann.
+     *             Wird geworfen, wenn der Dateischlüssel nicht entpackt werden kann.
      */
-    private void readContent() throws FileItemException {
+    private byte[] readLegacyContent(final String filename) throws IOException, UtilsException, FileItemException {
+        File file = new File(filename);
+        InputStream in = new HexInputStream(new BufferedInputStream(new FileInputStream(file)));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) (file.length() / 2));
+
         try {
-            BufferedInputStream bis = null;
+            Utils.copyStream(in, buffer);
+        } finally {
+            in.close();
+        }
 
-            try {
-                String filename = FileItem.generateDatabaseName(this);
-                File file = new File(filename);
-                bis = new BufferedInputStream(new FileInputStream(file));
-                byte[] buffer = new byte[(int) file.length()];
+        byte[] decrypted = AesCrypto.decrypt(buffer.toByteArray(), this.getKey());
+
+        // der Klartext ist selbst noch einmal hexkodiert
+        buffer = new ByteArrayOutputStream(decrypted.length / 2);
+
+        try {
+            Utils.copyStream(new HexInputStream(new ByteArrayInputStream(decrypted)), buffer);
+        } finally {
+            // die hexkodierte Kopie des Klartexts wird nicht mehr gebraucht
+            Arrays.fill(decrypted, (byte) 0);
+        }
+
+        return buffer.toByteArray();
+    }
 
-                bis.read(buffer);
+    /**
+     * Liest einen Bereich des entschlüsselten Dateiinhalts. Bei Dateien im Segmentformat werden nur die Segmente
+     * gelesen und entschlüsselt, die den Bereich überdecken, so dass z.B. der Anfang einer sehr großen Datei schnell
+     * angezeigt werden kann.
+     * 
+     * @param offset
+     *            Die Startposition im Dateiinhalt.
+     * @param length
+     *            Die maximale Anzahl der zu lesenden Bytes.
+     * @return Die gelesenen Bytes. Das Array ist kürzer als <code>length</code>, wenn das Dateiende erreicht wurde.
+     * @throws FileItemException
+     *             Wird geworfen, wenn der Bereich nicht gelesen werden konnte.
+     */
+    public byte[] read(final long offset, final int length) throws FileItemException {
+        if ((offset < 0) || (length < 0)) {
+            throw new FileItemException("Ungültiger Bereich!");
+        }
+
+        try {
+            byte[] content = (this.getKey() != null) ? FileItem.CONTENT_CACHE.read(this.id, offset, length) : null;
 
-                this.content = Utils.fromHexLine(new String(AesCrypto.decrypt(Utils.fromHexText(new String(buffer)),
-                        this.fileKey)));
+            if (content != null) {
+                return content;
+            }
+
+            String filename = FileItem.generateDatabaseName(this);
+
+            if (!AesSegmentInputStream.isSegmentFile(filename)) {
+                return FileItem.slice(this.readLegacyContent(filename), offset, length);
+            }
+
+            AesSegmentReader reader = new AesSegmentReader(filename, this.getKey());
+
+            try {
+                byte[] buffer = new byte[length];
+                int read = Math.max(0, reader.read(offset, buffer, 0, length));
+
+                return (read == length) ? buffer : Arrays.copyOf(buffer, read);
             } finally {
-                if (bis != null) {
-                    bis.close();
-                }
+                reader.close();
             }
         } catch (Exception e) {
-            throw new FileItemException("Kann den Inhalt der Datei nicht laden oder entschlüsseln!", e);
+            throw new FileItemException("Kann den Bereich der Datei nicht lesen!", e);
         }
     }
 
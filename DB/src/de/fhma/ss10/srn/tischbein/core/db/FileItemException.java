@@ -10,6 +10,16 @@ public class FileItemException extends Exception {
     /** Serial UID. */
     private static final long serialVersionUID = 2748640808309721869L;
 
+    /**
+     * Ctor ohne verursachende Exception.
+     * 
+     * @param message
+     *            Die Nachricht.
+     */
+    public FileItemException(final String message) {
+        super(message);
+    }
+
     /**
      * Standrad-Ctor.
      * 
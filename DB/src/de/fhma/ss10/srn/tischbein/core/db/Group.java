@@ -0,0 +1,181 @@
+package de.fhma.ss10.srn.tischbein.core.db;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.text.MessageFormat;
+
+import javax.crypto.SecretKey;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.UtilsException;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.CryptoException;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
+import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
+
+/**
+ * Eine Gruppe von Benutzern, der Dateien gemeinsam freigegeben werden. Die Gruppe hat wie ein Benutzer ein eigenes
+ * Schlüsselpaar; der private Schlüssel ist mit dem CryptKey der Gruppe verschlüsselt. Jedes Mitglied hält den CryptKey
+ * der Gruppe mit seinem öffentlichen Schlüssel verpackt.
+ * <p>
+ * Eine Datei wird der Gruppe also mit einer einzigen RSA-Operation freigegeben, und ein neues Mitglied kostet ebenfalls
+ * nur eine RSA-Operation, unabhängig davon, wie viele Dateien die Gruppe sieht.
+ * 
+ * @author Smolli
+ */
+public final class Group implements KeyHolder {
+
+    /** Gruppen-Tabelle Gruppenname. */
+    private static final int COLUMN_NAME = 0;
+    /** Gruppen-Tabelle Öffentlicher Schlüssel. */
+    private static final int COLUMN_PUBLIC_KEY = 1;
+    /** Gruppen-Tabelle Privater Schlüssel. */
+    private static final int COLUMN_PRIVATE_KEY = 2;
+
+    /**
+     * Parst eine Zeile der Gruppentabelle und gibt den Inhalt als Gruppen-Objekt zurück. Die Gruppe ist danach
+     * gesperrt.
+     * 
+     * @param line
+     *            Die Zeile der Gruppentabelle.
+     * @return Die Gruppe.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der öffentliche Schlüssel nicht geladen werden konnte.
+     */
+    public static Group parse(final String line) throws UtilsException {
+        Group group = new Group();
+        String[] cols = line.split(DatabaseStructure.SEPARATOR);
+
+        group.name = cols[Group.COLUMN_NAME];
+        group.publicKey = (PublicKey) Utils.deserializeKeyHex(cols[Group.COLUMN_PUBLIC_KEY]);
+        group.privateKeyCipher = Utils.fromHexLine(cols[Group.COLUMN_PRIVATE_KEY]);
+
+        return group;
+    }
+
+    /**
+     * Erzeugt eine neue, freigeschaltete Gruppe mit einem neuen Schlüsselpaar und einem neuen CryptKey.
+     * 
+     * @param name
+     *            Der Gruppenname.
+     * @return Die Gruppe.
+     * @throws CryptoException
+     *             Wird geworfen, wenn die Schlüssel nicht erzeugt werden können.
+     */
+    static Group create(final String name) throws CryptoException {
+        try {
+            Group group = new Group();
+            KeyPair pair = RsaCrypto.takeRSAKeyPair();
+
+            group.name = name;
+            group.publicKey = pair.getPublic();
+            group.privateKey = pair.getPrivate();
+            group.cryptKey = AesCrypto.generateKey();
+            group.privateKeyCipher = AesCrypto.encrypt(Utils.serializeKey(group.privateKey), group.cryptKey);
+
+            return group;
+        } catch (Exception e) {
+            throw new CryptoException("Kann die Gruppe nicht erzeugen!", e);
+        }
+    }
+
+    /** Hält den Gruppennamen. */
+    private String name;
+    /** Hält den öffentlichen Schlüssel. */
+    private PublicKey publicKey;
+    /** Hält den verschlüsselten privaten Schlüssel. */
+    private byte[] privateKeyCipher;
+    /** Hält den privaten Schlüssel, solange die Gruppe freigeschaltet ist. */
+    private volatile PrivateKey privateKey;
+    /** Hält den CryptKey der Gruppe, solange die Gruppe freigeschaltet ist. */
+    private volatile SecretKey cryptKey;
+
+    /**
+     * Versteckter Ctor.
+     */
+    private Group() {
+        super();
+    }
+
+    /**
+     * Kompiliert die Gruppe als Zeile der Gruppentabelle.
+     * 
+     * @return Die Zeile.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der öffentliche Schlüssel nicht kodiert werden kann.
+     */
+    public String compile() throws UtilsException {
+        return MessageFormat.format("{1}{0}{2}{0}{3}", DatabaseStructure.SEPARATOR, this.name, Utils
+                .serializeKeyHex(this.publicKey), Utils.toHexLine(this.privateKeyCipher));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof Group)) {
+            return false;
+        }
+
+        return this.name.equalsIgnoreCase(((Group) obj).name);
+    }
+
+    /**
+     * Gibt den CryptKey der Gruppe zurück. Wenn die Gruppe nicht freigeschaltet ist, wird <code>null</code> zurück
+     * gegeben.
+     * 
+     * @return Der CryptKey.
+     */
+    public SecretKey getCryptKey() {
+        return this.cryptKey;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public PrivateKey getPrivateKey() {
+        return this.privateKey;
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return this.publicKey;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.name.toLowerCase().hashCode();
+    }
+
+    /**
+     * Sperrt die Gruppe wieder.
+     */
+    public void lock() {
+        this.privateKey = null;
+        this.cryptKey = null;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+    /**
+     * Schaltet die Gruppe mit ihrem CryptKey frei, den ein Mitglied mit seinem privaten Schlüssel entpackt hat.
+     * 
+     * @param key
+     *            Der CryptKey der Gruppe.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der private Schlüssel nicht entschlüsselt werden kann, z.B. weil der CryptKey
+     *             falsch ist.
+     */
+    public void unlock(final SecretKey key) throws UtilsException {
+        PrivateKey unlocked = (PrivateKey) Utils.deserializeKey(AesCrypto.decrypt(this.privateKeyCipher, key));
+
+        this.cryptKey = key;
+        this.privateKey = unlocked;
+    }
+
+}
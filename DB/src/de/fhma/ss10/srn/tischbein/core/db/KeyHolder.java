@@ -0,0 +1,35 @@
+package de.fhma.ss10.srn.tischbein.core.db;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * Inhaber eines RSA-Schlüsselpaars, für den Dateischlüssel verpackt werden können. Das sind die Benutzer und die
+ * Gruppen.
+ * 
+ * @author Smolli
+ */
+public interface KeyHolder {
+
+    /**
+     * Gibt den Namen des Inhabers zurück.
+     * 
+     * @return Der Name.
+     */
+    String getName();
+
+    /**
+     * Gibt den privaten Schlüssel zurück, solange der Inhaber freigeschaltet ist.
+     * 
+     * @return Der {@link PrivateKey} oder <code>null</code>, wenn der Inhaber gesperrt ist.
+     */
+    PrivateKey getPrivateKey();
+
+    /**
+     * Gibt den öffentlichen Schlüssel zurück.
+     * 
+     * @return Der {@link PublicKey}.
+     */
+    PublicKey getPublicKey();
+
+}
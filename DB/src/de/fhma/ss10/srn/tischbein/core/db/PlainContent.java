@@ -0,0 +1,196 @@
+package de.fhma.ss10.srn.tischbein.core.db;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Entschlüsselter Dateiinhalt außerhalb des Heaps. Der Klartext liegt in einem direkten {@link ByteBuffer}, so dass
+ * auch große Dateien den Garbage Collector nicht belasten. Beim Schließen wird der Puffer sofort mit Nullen
+ * überschrieben; der Klartext bleibt also nicht bis zur nächsten Garbage Collection im Speicher. Den Speicher selbst
+ * gibt die JVM frei, sobald das kleine Pufferobjekt eingesammelt wird.
+ * <p>
+ * Der Inhalt sollte immer in einem <code>finally</code>-Block geschlossen werden. Danach werfen alle Zugriffe eine
+ * Exception; Sichten, die vorher mit {@link #asReadOnlyBuffer()} geholt wurden, liefern nur noch Nullen.
+ * 
+ * @author Smolli
+ */
+public final class PlainContent implements Closeable {
+
+    /** Hält die Größe des Puffers, mit dem der Inhalt überschrieben und ausgegeben wird. */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Kopiert einen Klartext aus dem Heap in einen neuen Inhalt. Das Quell-Array wird nicht verändert.
+     * 
+     * @param data
+     *            Der Klartext.
+     * @return Der Inhalt.
+     */
+    public static PlainContent copyOf(final byte[] data) {
+        PlainContent content = new PlainContent(data.length);
+
+        content.append(data, 0, data.length);
+
+        return content;
+    }
+
+    /** Hält den Klartext, bis der Inhalt geschlossen wird. */
+    private ByteBuffer buffer;
+
+    /**
+     * Erstellt einen neuen, leeren Inhalt mit der angegebenen Größe.
+     * 
+     * @param capacity
+     *            Die Größe des Klartexts in Bytes.
+     */
+    PlainContent(final int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Gibt eine schreibgeschützte Sicht auf den Klartext zurück, die vom Anfang bis zum Ende des Inhalts reicht.
+     * 
+     * @return Die Sicht.
+     * @throws IOException
+     *             Wird geworfen, wenn der Inhalt schon geschlossen wurde.
+     */
+    public synchronized ByteBuffer asReadOnlyBuffer() throws IOException {
+        ByteBuffer view = this.getBuffer().asReadOnlyBuffer();
+
+        view.flip();
+
+        return view;
+    }
+
+    /**
+     * Überschreibt den Klartext mit Nullen und gibt den Puffer ab. Ein weiterer Aufruf hat keine Wirkung.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.buffer == null) {
+            return;
+        }
+
+        byte[] zeros = new byte[PlainContent.CHUNK_SIZE];
+
+        this.buffer.clear();
+
+        while (this.buffer.hasRemaining()) {
+            this.buffer.put(zeros, 0, Math.min(zeros.length, this.buffer.remaining()));
+        }
+
+        this.buffer = null;
+    }
+
+    /**
+     * Ermittelt, ob der Inhalt geschlossen wurde.
+     * 
+     * @return Gibt <code>true</code> zurück, wenn der Klartext schon überschrieben wurde.
+     */
+    public synchronized boolean isClosed() {
+        return this.buffer == null;
+    }
+
+    /**
+     * Gibt die Länge des Klartexts zurück.
+     * 
+     * @return Die Länge in Bytes.
+     * @throws IOException
+     *             Wird geworfen, wenn der Inhalt schon geschlossen wurde.
+     */
+    public synchronized int length() throws IOException {
+        return this.getBuffer().position();
+    }
+
+    /**
+     * Liest ab der angegebenen Position so viele Bytes wie möglich, höchstens aber <code>len</code>.
+     * 
+     * @param position
+     *            Die Position im Klartext.
+     * @param b
+     *            Der Zielpuffer.
+     * @param off
+     *            Die Startposition im Zielpuffer.
+     * @param len
+     *            Die maximale Anzahl der zu lesenden Bytes.
+     * @return Die Anzahl der gelesenen Bytes oder -1, wenn die Position hinter dem Ende des Klartexts liegt.
+     * @throws IOException
+     *             Wird geworfen, wenn der Inhalt schon geschlossen wurde.
+     */
+    public synchronized int read(final int position, final byte[] b, final int off, final int len) throws IOException {
+        ByteBuffer view = this.asReadOnlyBuffer();
+
+        if ((position < 0) || (position > view.limit())) {
+            throw new IOException("Ungültige Position!");
+        }
+
+        if ((position == view.limit()) && (len > 0)) {
+            return -1;
+        }
+
+        int count = Math.min(len, view.limit() - position);
+
+        view.position(position);
+        view.get(b, off, count);
+
+        return count;
+    }
+
+    /**
+     * Schreibt den Klartext in den angegebenen Stream, z.B. um die Datei auszuliefern. Der Klartext wird dabei nur
+     * stückweise in den Heap kopiert.
+     * 
+     * @param out
+     *            Der Stream. Er wird nicht geschlossen.
+     * @throws IOException
+     *             Wird geworfen, wenn der Inhalt schon geschlossen wurde oder nicht geschrieben werden kann.
+     */
+    public synchronized void writeTo(final OutputStream out) throws IOException {
+        ByteBuffer view = this.asReadOnlyBuffer();
+        byte[] chunk = new byte[PlainContent.CHUNK_SIZE];
+
+        try {
+            while (view.hasRemaining()) {
+                int count = Math.min(chunk.length, view.remaining());
+
+                view.get(chunk, 0, count);
+                out.write(chunk, 0, count);
+            }
+        } finally {
+            Arrays.fill(chunk, (byte) 0);
+        }
+    }
+
+    /**
+     * Hängt Klartext an den Inhalt an.
+     * 
+     * @param b
+     *            Der Klartext.
+     * @param off
+     *            Die Startposition im Klartext.
+     * @param len
+     *            Die Anzahl der Bytes.
+     */
+    synchronized void append(final byte[] b, final int off, final int len) {
+        this.buffer.put(b, off, len);
+    }
+
+    /**
+     * Gibt den Puffer zurück.
+     * 
+     * @return Der Puffer.
+     * @throws IOException
+     *             Wird geworfen, wenn der Inhalt schon geschlossen wurde.
+     */
+    private ByteBuffer getBuffer() throws IOException {
+        if (this.buffer == null) {
+            throw new IOException("Der Inhalt wurde schon geschlossen!");
+        }
+
+        return this.buffer;
+    }
+
+}
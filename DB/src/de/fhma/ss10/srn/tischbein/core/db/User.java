@@ -4,6 +4,8 @@ import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.text.MessageFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.crypto.SecretKey;
 
@@ -19,18 +21,18 @@ import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
  * 
  * @author Smolli
  */
-public final class User {
+public final class User implements KeyHolder {
 
     /** Benutzer-Tabelle Privater Schlüssel. */
-    private static final int COLUMN_PRIVATE_KEY = 4;
+    public static final int COLUMN_PRIVATE_KEY = 4;
     /** Benutzer-Tabelle Öffentlicher Schlüssel. */
-    private static final int COLUMN_PUBLIC_KEY = 3;
+    public static final int COLUMN_PUBLIC_KEY = 3;
     /** Benutzer-Tabelle CryptKey. */
-    private static final int COLUMN_CRYPT_KEY = 2;
+    public static final int COLUMN_CRYPT_KEY = 2;
     /** Benutzer-Tabelle Passwort. */
-    private static final int COLUMN_PW_HASH = 1;
+    public static final int COLUMN_PW_HASH = 1;
     /** Benutzer-Tabelle Benutzername. */
-    private static final int COLUMN_NAME = 0;
+    public static final int COLUMN_NAME = 0;
 
     /**
      * Parst eine Zeile der Benutzertabelle und gibt den Inhalt als Benutzer-Objekt zurück.
@@ -56,6 +58,36 @@ public final class User {
         return user;
     }
 
+    /**
+     * Erzeugt ein gesperrtes Benutzer-Objekt aus den schon dekodierten Spalten einer Zeile der Benutzertabelle.
+     * 
+     * @param name
+     *            Der Benutzername.
+     * @param passHash
+     *            Der Hash des Benutzerpassworts.
+     * @param cryptKeyCipher
+     *            Der verschlüsselte CryptKey.
+     * @param publicKey
+     *            Der serialisierte öffentliche Schlüssel.
+     * @param privateKeyCipher
+     *            Der verschlüsselte private Schlüssel.
+     * @return Das Benutzer-Objekt.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der öffentliche Schlüssel nicht geladen werden konnte.
+     */
+    public static User parse(final String name, final String passHash, final byte[] cryptKeyCipher,
+            final byte[] publicKey, final byte[] privateKeyCipher) throws UtilsException {
+        User user = new User();
+
+        user.setName(name);
+        user.setPassHash(passHash);
+        user.setCryptKeyCipher(cryptKeyCipher);
+        user.setPublicKey((PublicKey) Utils.deserializeKey(publicKey));
+        user.setPrivateKeyCipher(privateKeyCipher);
+
+        return user;
+    }
+
     /**
      * Erzeugt einen neuen User und ein neues Schlüsselpaar.
      * 
@@ -71,7 +103,7 @@ public final class User {
         try {
             User user = new User();
 
-            KeyPair generatedKeyPair = RsaCrypto.generateRSAKeyPair();
+            KeyPair generatedKeyPair = RsaCrypto.takeRSAKeyPair();
             SecretKey cryptoKey = AesCrypto.generateKey();
 
             user.setName(name);
@@ -101,6 +133,8 @@ public final class User {
     private byte[] cryptKeyCipher;
     /** Hält die Dateidaten für den Benutzer. */
     private transient UserDescriptor descriptor;
+    /** Hält die Dateischlüssel, die in dieser Sitzung schon entpackt wurden, zu ihren Datei-IDs. */
+    private final transient ConcurrentMap<Integer, SecretKey> fileKeys = new ConcurrentHashMap<Integer, SecretKey>();
 
     /**
      * Compiliert das User-Objekt und gibt es als Zeichenkette zurück. Die einzelnen Felder sind duch den
@@ -144,6 +178,16 @@ public final class User {
         return this.getName().equals(other.getName());
     }
 
+    /**
+     * Vergisst den Dateischlüssel, z.B. weil dem Benutzer das Recht entzogen oder die Datei gelöscht wurde.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     */
+    public void forgetFileKey(final int fileId) {
+        this.fileKeys.remove(fileId);
+    }
+
     /**
      * Gibt den CryptKey für die AES-Verschlüsselung zurück. Wenn der Benutzer nicht freigeschaltet, wird
      * <code>null</code> zurück gegeben.
@@ -163,6 +207,17 @@ public final class User {
         return this.descriptor;
     }
 
+    /**
+     * Gibt den Dateischlüssel zurück, der in dieser Sitzung schon entpackt wurde.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @return Der Schlüssel oder <code>null</code>, wenn er noch nicht entpackt wurde.
+     */
+    public SecretKey getFileKey(final int fileId) {
+        return this.fileKeys.get(fileId);
+    }
+
     /**
      * Gibt den Benutzernamen zurück.
      * 
@@ -205,12 +260,29 @@ public final class User {
     }
 
     /**
-     * Schließt den Benutzer ab und macht seinen privaten Schlüssel wieder unzugänglich.
+     * Schließt den Benutzer ab und macht seinen privaten Schlüssel wieder unzugänglich. Die in der Sitzung entpackten
+     * Dateischlüssel werden vergessen.
      */
     public void lock() {
         //        this.privateKeyEncrypted = null;
         this.privateKey = null;
         this.cryptKey = null;
+        this.fileKeys.clear();
+    }
+
+    /**
+     * Merkt sich einen entpackten Dateischlüssel für den Rest der Sitzung, damit er beim nächsten Laden der Tabellen
+     * nicht erneut entschlüsselt werden muss. Ist der Benutzer nicht freigeschaltet, wird nichts gemerkt.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @param key
+     *            Der Dateischlüssel.
+     */
+    public void rememberFileKey(final int fileId, final SecretKey key) {
+        if (this.privateKey != null) {
+            this.fileKeys.put(fileId, key);
+        }
     }
 
     @Override
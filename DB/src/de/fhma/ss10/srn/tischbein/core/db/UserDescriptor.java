@@ -1,5 +1,10 @@
 package de.fhma.ss10.srn.tischbein.core.db;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Vector;
 
 import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
@@ -18,6 +23,9 @@ public final class UserDescriptor {
      */
     public static final class UserFilePair {
 
+        /** Multiplikator für den Hashwert. */
+        private static final int HASH_PRIME = 31;
+
         /**
          * Parst du übergebene Zeile und gibt sie als {@link UserFilePair} zurück.
          * 
@@ -68,14 +76,14 @@ public final class UserDescriptor {
         }
 
         @Override
-        public synchronized boolean equals(final Object o) {
+        public boolean equals(final Object o) {
             if (!(o instanceof UserFilePair)) {
                 return false;
             }
 
             UserFilePair other = (UserFilePair) o;
 
-            return (other.file == this.file) && (other.user == this.user);
+            return other.file.equals(this.file) && other.user.equals(this.user);
         }
 
         /**
@@ -98,29 +106,65 @@ public final class UserDescriptor {
 
         @Override
         public int hashCode() {
-            return (this.user.getName() + "." + this.file.getName()).hashCode();
+            return UserFilePair.HASH_PRIME * this.user.hashCode() + this.file.hashCode();
         }
 
     }
 
     /**
-     * Spezialisierte {@link Vector}-Klasse zur Datenhaltung der {@link UserFilePair}s.
+     * Datenhaltung der {@link UserFilePair}s. Neben den Tupeln selbst wird ein Index von der Datei-ID auf die Benutzer
+     * gehalten, so dass die Abfrage eines Tupels und der Benutzer einer Datei unabhängig von der Größe der Liste ist.
+     * Die Oberfläche fragt die Rechte bei jedem Neuzeichnen für jede sichtbare Zeile ab.
+     * <p>
+     * Die Methoden sind synchronisiert; beim Iterieren wird über eine Kopie iteriert, so dass gleichzeitige Änderungen
+     * nicht stören.
      * 
      * @author Smolli
      */
-    public static final class UserFilePairVector extends Vector<UserFilePair> {
+    public static final class UserFilePairVector implements Iterable<UserFilePair> {
 
-        /** Serial UID. */
-        private static final long serialVersionUID = -7635068670563344170L;
+        /** Hält die Tupel in der Reihenfolge, in der sie hinzugefügt wurden. */
+        private final LinkedHashMap<UserFilePair, UserFilePair> pairs = new LinkedHashMap<UserFilePair, UserFilePair>();
+        /** Hält zu jeder Datei-ID die Benutzer, denen die Datei freigegeben wurde. */
+        private final HashMap<Integer, LinkedHashSet<User>> byFile = new HashMap<Integer, LinkedHashSet<User>>();
 
         /**
          * Copy-Ctor.
          * 
          * @param copy
-         *            Der zu kopierende {@link Vector}.
+         *            Die zu kopierenden Tupel.
+         */
+        public UserFilePairVector(final Collection<UserFilePair> copy) {
+            for (UserFilePair ufp : copy) {
+                this.add(ufp);
+            }
+        }
+
+        /**
+         * Fügt ein Tupel hinzu. Ein schon vorhandenes Tupel wird nicht doppelt aufgenommen.
+         * 
+         * @param ufp
+         *            Das Tupel.
+         * @return Gibt <code>true</code> zurück, wenn das Tupel neu ist.
          */
-        public UserFilePairVector(final Vector<UserFilePair> copy) {
-            super(copy);
+        public synchronized boolean add(final UserFilePair ufp) {
+            if (this.pairs.containsKey(ufp)) {
+                return false;
+            }
+
+            this.pairs.put(ufp, ufp);
+
+            LinkedHashSet<User> users = this.byFile.get(ufp.file.getId());
+
+            if (users == null) {
+                users = new LinkedHashSet<User>();
+
+                this.byFile.put(ufp.file.getId(), users);
+            }
+
+            users.add(ufp.user);
+
+            return true;
         }
 
         /**
@@ -150,14 +194,12 @@ public final class UserDescriptor {
          * @return Gibt ein {@link UserFilePair}-Tupel zurück, wenn die Verbindung existert, andernfalls
          *         <code>null</code>.
          */
-        public UserFilePair get(final User userContext, final FileItem file) {
-            for (UserFilePair ufp : this) {
-                if (ufp.file.equals(file) && ufp.user.equals(userContext)) {
-                    return ufp;
-                }
+        public synchronized UserFilePair get(final User userContext, final FileItem file) {
+            if ((userContext == null) || (file == null)) {
+                return null;
             }
 
-            return null;
+            return this.pairs.get(new UserFilePair(userContext, file));
         }
 
         /**
@@ -167,16 +209,77 @@ public final class UserDescriptor {
          *            Das {@link FileItem}.
          * @return Ein {@link Vector} mit allen {@link User}-Objekten, die Zugriff auf die Datei haben.
          */
-        public Vector<User> getDeptors(final FileItem item) {
-            Vector<User> users = new Vector<User>();
+        public synchronized Vector<User> getDeptors(final FileItem item) {
+            LinkedHashSet<User> users = this.byFile.get(item.getId());
+
+            if (users == null) {
+                return new Vector<User>();
+            }
+
+            return new Vector<User>(users);
+        }
+
+        /**
+         * Gibt einen {@link Iterator} über eine Kopie der Tupel zurück.
+         * 
+         * @return Der {@link Iterator}.
+         */
+        @Override
+        public synchronized Iterator<UserFilePair> iterator() {
+            return new Vector<UserFilePair>(this.pairs.keySet()).iterator();
+        }
+
+        /**
+         * Entfernt ein Tupel.
+         * 
+         * @param ufp
+         *            Das Tupel.
+         * @return Gibt <code>true</code> zurück, wenn das Tupel enthalten war.
+         */
+        public synchronized boolean remove(final UserFilePair ufp) {
+            if (this.pairs.remove(ufp) == null) {
+                return false;
+            }
+
+            LinkedHashSet<User> users = this.byFile.get(ufp.file.getId());
+
+            users.remove(ufp.user);
+
+            if (users.isEmpty()) {
+                this.byFile.remove(ufp.file.getId());
+            }
+
+            return true;
+        }
+
+        /**
+         * Entfernt alle Tupel der angegebenen Datei auf einmal.
+         * 
+         * @param item
+         *            Die Datei.
+         * @return Die Benutzer, deren Tupel entfernt wurden.
+         */
+        public synchronized Vector<User> removeFile(final FileItem item) {
+            LinkedHashSet<User> users = this.byFile.remove(item.getId());
+
+            if (users == null) {
+                return new Vector<User>();
+            }
 
-            for (UserFilePair ufp : this) {
-                if (ufp.file.equals(item)) {
-                    users.add(ufp.user);
-                }
+            for (User user : users) {
+                this.pairs.remove(new UserFilePair(user, item));
             }
 
-            return users;
+            return new Vector<User>(users);
+        }
+
+        /**
+         * Gibt die Anzahl der Tupel zurück.
+         * 
+         * @return Die Anzahl.
+         */
+        public synchronized int size() {
+            return this.pairs.size();
         }
 
     }
@@ -226,14 +329,7 @@ public final class UserDescriptor {
      *         <code>false</code>.
      */
     public boolean hasAccess(final User user, final FileItem file) {
-        for (UserFilePair ufp : this.getLendList()) {
-            if (ufp.getUser().equals(user) && ufp.getFile().equals(file)) {
-                return true;
-            }
-
-        }
-
-        return false;
+        return this.getLendList().containsFile(file, user);
     }
 
     /**
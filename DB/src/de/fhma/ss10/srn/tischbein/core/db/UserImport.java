@@ -0,0 +1,112 @@
+package de.fhma.ss10.srn.tischbein.core.db;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.fhma.ss10.srn.tischbein.core.db.dbms.DatabaseStructure;
+
+/**
+ * Importiert eine Benutzerliste über {@link Database#importUsers(Map, int)}. Die Liste ist eine UTF-8-Textdatei mit
+ * einem Benutzer pro Zeile im Format <code>Name;Passwort</code>. Leere Zeilen und Zeilen, die mit <code>#</code>
+ * beginnen, werden ignoriert.
+ * <p>
+ * Aufruf: <code>UserImport Datei [Threads]</code>, ohne Angabe wird ein Thread pro Prozessorkern verwendet.
+ * 
+ * @author Smolli
+ */
+public final class UserImport {
+
+    /** Leitet eine Kommentarzeile ein. */
+    private static final String COMMENT = "#";
+
+    /**
+     * Startet den Import.
+     * 
+     * @param args
+     *            Die Datei mit der Benutzerliste, optional gefolgt von der Anzahl der Threads.
+     */
+    public static void main(final String[] args) {
+        if (args.length < 1) {
+            System.err.println("Aufruf: UserImport Datei [Threads]");
+
+            return;
+        }
+
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        try {
+            Map<String, String> accounts = UserImport.readAccounts(args[0]);
+
+            System.out.println(accounts.size() + " Benutzer gelesen, erzeuge Schlüssel mit " + threads + " Threads.");
+
+            Database.getInstance().importUsers(accounts, threads);
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            Database.getInstance().shutdown();
+        }
+    }
+
+    /**
+     * Liest die Benutzerliste ein. Ist ein Benutzername mehrfach aufgeführt, gilt wie beim Anlegen die Groß- und
+     * Kleinschreibung nicht; nur die erste Zeile wird übernommen, die weiteren werden gemeldet und übersprungen.
+     * 
+     * @param filename
+     *            Die Datei.
+     * @return Die Benutzernamen mit ihren Passwörtern, in der Reihenfolge der Datei.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht gelesen werden kann oder eine Zeile kein Passwort enthält.
+     */
+    private static Map<String, String> readAccounts(final String filename) throws IOException {
+        Map<String, String> accounts = new LinkedHashMap<String, String>();
+        Set<String> seen = new HashSet<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), "UTF-8"));
+
+        try {
+            String line;
+            int number = 0;
+
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+
+                if ((line.length() == 0) || line.startsWith(UserImport.COMMENT)) {
+                    continue;
+                }
+
+                int pos = line.indexOf(DatabaseStructure.SEPARATOR);
+
+                if (pos <= 0) {
+                    throw new IOException("Zeile " + number + " enthält kein Passwort!");
+                }
+
+                String name = line.substring(0, pos).trim();
+
+                if (seen.add(name.toLowerCase())) {
+                    accounts.put(name, line.substring(pos + 1));
+                } else {
+                    System.out.println("Benutzer " + name + " ist in Zeile " + number
+                            + " doppelt aufgeführt und wird übersprungen.");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return accounts;
+    }
+
+    /**
+     * Versteckter Ctor.
+     */
+    private UserImport() {
+        super();
+    }
+
+}
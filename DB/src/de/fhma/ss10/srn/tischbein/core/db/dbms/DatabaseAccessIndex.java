@@ -0,0 +1,146 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Umgekehrter Index der Zugriffsrechte über die ganze Datenbank: zu jeder Datei die Benutzer, denen sie freigegeben
+ * wurde, und zu jedem Benutzer die freigegebenen Dateien. Damit lassen sich Freigaben prüfen und auflisten, ohne eine
+ * einzige Benutzertabelle zu öffnen.
+ * <p>
+ * Benutzer werden wie in der Benutzer-Map über ihren klein geschriebenen Namen geführt. Geschrieben wird nur unter den
+ * Sperren der beteiligten Benutzer, gelesen wird ohne Sperre.
+ * 
+ * @author Smolli
+ */
+final class DatabaseAccessIndex {
+
+    /** Trennt die Datei-ID vom Benutzernamen im Schlüssel eines Datensatzes. */
+    static final String KEY_SEPARATOR = ":";
+
+    /**
+     * Erzeugt den Datensatz einer Freigabe, wie er im Log der Zugriffsrechte steht.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @param userName
+     *            Der Benutzername.
+     * @return Der Datensatz.
+     */
+    static String compile(final int fileId, final String userName) {
+        return Integer.toString(fileId) + DatabaseAccessIndex.KEY_SEPARATOR + userName.toLowerCase();
+    }
+
+    /**
+     * Erzeugt einen nebenläufigen Set.
+     * 
+     * @param <T>
+     *            Der Elementtyp.
+     * @return Der Set.
+     */
+    private static <T> Set<T> newSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+    }
+
+    /** Hält zu jeder Datei-ID die Namen der Benutzer mit Zugriff. */
+    private final ConcurrentMap<Integer, Set<String>> grantees = new ConcurrentHashMap<Integer, Set<String>>();
+    /** Hält zu jedem Benutzernamen die IDs der freigegebenen Dateien. */
+    private final ConcurrentMap<String, Set<Integer>> grants = new ConcurrentHashMap<String, Set<Integer>>();
+
+    /**
+     * Nimmt eine Freigabe in den Index auf.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @param userName
+     *            Der Benutzername.
+     */
+    void add(final int fileId, final String userName) {
+        String name = userName.toLowerCase();
+
+        this.grantees.putIfAbsent(fileId, DatabaseAccessIndex.<String> newSet());
+        this.grantees.get(fileId).add(name);
+
+        this.grants.putIfAbsent(name, DatabaseAccessIndex.<Integer> newSet());
+        this.grants.get(name).add(fileId);
+    }
+
+    /**
+     * Nimmt eine Freigabe aus einem Datensatz des Logs in den Index auf.
+     * 
+     * @param record
+     *            Der Datensatz, wie er von {@link #compile(int, String)} erzeugt wurde.
+     */
+    void add(final String record) {
+        int pos = record.indexOf(DatabaseAccessIndex.KEY_SEPARATOR);
+
+        this.add(Integer.parseInt(record.substring(0, pos)), record.substring(pos + 1));
+    }
+
+    /**
+     * Ermittelt, ob die Datei dem Benutzer freigegeben wurde.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @param userName
+     *            Der Benutzername.
+     * @return <code>true</code>, wenn die Freigabe existiert.
+     */
+    boolean contains(final int fileId, final String userName) {
+        Set<String> names = this.grantees.get(fileId);
+
+        return (names != null) && names.contains(userName.toLowerCase());
+    }
+
+    /**
+     * Gibt die IDs der Dateien zurück, die dem Benutzer freigegeben wurden.
+     * 
+     * @param userName
+     *            Der Benutzername.
+     * @return Eine sortierte Kopie der IDs.
+     */
+    Set<Integer> getFiles(final String userName) {
+        Set<Integer> ids = this.grants.get(userName.toLowerCase());
+
+        return (ids == null) ? new TreeSet<Integer>() : new TreeSet<Integer>(ids);
+    }
+
+    /**
+     * Gibt die Namen der Benutzer zurück, denen die Datei freigegeben wurde.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @return Eine sortierte Kopie der klein geschriebenen Namen.
+     */
+    Set<String> getUsers(final int fileId) {
+        Set<String> names = this.grantees.get(fileId);
+
+        return (names == null) ? new TreeSet<String>() : new TreeSet<String>(names);
+    }
+
+    /**
+     * Entfernt eine Freigabe aus dem Index.
+     * 
+     * @param fileId
+     *            Die Datei-ID.
+     * @param userName
+     *            Der Benutzername.
+     */
+    void remove(final int fileId, final String userName) {
+        String name = userName.toLowerCase();
+        Set<String> names = this.grantees.get(fileId);
+        Set<Integer> ids = this.grants.get(name);
+
+        if (names != null) {
+            names.remove(name);
+        }
+
+        if (ids != null) {
+            ids.remove(fileId);
+        }
+    }
+
+}
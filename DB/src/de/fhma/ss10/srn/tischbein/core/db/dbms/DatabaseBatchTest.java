@@ -0,0 +1,231 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaAppender;
+import de.fhma.ss10.srn.tischbein.core.db.Database;
+import de.fhma.ss10.srn.tischbein.core.db.FileItem;
+import de.fhma.ss10.srn.tischbein.core.db.User;
+
+/**
+ * Tests für die Massenoperationen der {@link Database}, die mehrere Benutzer in einem einzigen Commit bearbeiten.
+ * 
+ * @author Smolli
+ */
+public final class DatabaseBatchTest {
+
+    /** Das Passwort der Testbenutzer. */
+    private static final String SECRET = "secret!";
+
+    /**
+     * Sucht die Änderungen an einer Tabelle aus dem Journal heraus.
+     * 
+     * @param journal
+     *            Die Transaktionen aus dem Journal.
+     * @param filename
+     *            Der Dateiname der Tabelle.
+     * @return Die Änderungen in der Reihenfolge des Journals.
+     */
+    private static Vector<DatabaseTransaction.Entry> findEntries(final Vector<DatabaseTransaction> journal,
+            final String filename) {
+        Vector<DatabaseTransaction.Entry> result = new Vector<DatabaseTransaction.Entry>();
+
+        for (DatabaseTransaction tx : journal) {
+            for (DatabaseTransaction.Entry entry : tx.getEntries()) {
+                if (filename.equals(entry.getFilename())) {
+                    result.add(entry);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Meldet einen Benutzer mit dem Testpasswort an.
+     * 
+     * @param name
+     *            Der Benutzername.
+     * @return Der angemeldete Benutzer.
+     * @throws Exception
+     *             Wird geworfen, wenn der Benutzer nicht angemeldet werden kann.
+     */
+    private static User login(final String name) throws Exception {
+        User user = Database.getInstance().getUser(name);
+
+        user.unlock(DatabaseBatchTest.SECRET);
+
+        return user;
+    }
+
+    /**
+     * Liest die Transaktionen, die seit dem letzten Checkpoint in das Journal der Datenbank geschrieben wurden. Das
+     * Journal wird dazu kopiert, damit die laufende Datenbank es weiter benutzen kann.
+     * 
+     * @return Die Transaktionen.
+     * @throws Exception
+     *             Wird geworfen, wenn das Journal nicht gelesen werden kann.
+     */
+    private static Vector<DatabaseTransaction> readJournal() throws Exception {
+        File copy = File.createTempFile("journal", ".log");
+
+        try {
+            InputStream in = new FileInputStream(DatabaseFiles.DB_JOURNAL);
+            OutputStream out = new FileOutputStream(copy);
+
+            try {
+                Utils.copyStream(in, out);
+            } finally {
+                in.close();
+                out.close();
+            }
+
+            return new DatabaseJournal(copy.getPath()).open();
+        } finally {
+            copy.delete();
+        }
+    }
+
+    /**
+     * Testet, ob beim Freigeben einer Datei für mehrere Benutzer jeder neue Benutzer genau eine Zeile in seiner
+     * Access-Tabelle bekommt, ein Benutzer mit Freigabe und ein doppelt aufgeführter übersprungen werden und die
+     * Lend-Tabelle des Besitzers nur einmal geschrieben wird.
+     */
+    @Test
+    public void grantAccessToUsers() {
+        try {
+            String prefix = "grant" + System.currentTimeMillis();
+            File source = File.createTempFile("grant", ".txt");
+
+            for (String name : new String[] { "owner", "a", "b", "c" }) {
+                Database.getInstance().createUser(prefix + name, DatabaseBatchTest.SECRET);
+            }
+
+            User owner = DatabaseBatchTest.login(prefix + "owner");
+            FileItem file;
+
+            try {
+                OutputStream out = new FileOutputStream(source);
+
+                try {
+                    out.write("Freigabe".getBytes());
+                } finally {
+                    out.close();
+                }
+
+                file = FileItem.create(owner, source.getPath(), AesCrypto.generateKey());
+                file.encrypt();
+
+                Database.getInstance().addFileItem(file);
+            } finally {
+                source.delete();
+            }
+
+            Database.getInstance().grantAccess(Database.getInstance().getUser(prefix + "a"), file);
+
+            // leert das Journal, damit darin nur noch die Freigabe steht
+            Database.getInstance().shutdown();
+
+            owner = DatabaseBatchTest.login(prefix + "owner");
+            file = Database.getInstance().getFile(file.getId());
+
+            User a = Database.getInstance().getUser(prefix + "a");
+            User b = Database.getInstance().getUser(prefix + "b");
+            User c = Database.getInstance().getUser(prefix + "c");
+
+            Database.getInstance().grantAccess(Arrays.asList(a, b, b, c), file);
+
+            Vector<DatabaseTransaction> journal = DatabaseBatchTest.readJournal();
+
+            Assert.assertEquals(1, journal.size());
+            Assert.assertEquals(1, DatabaseBatchTest.findEntries(journal,
+                    DatabaseTables.LendTable.getFilename(owner)).size());
+            Assert.assertEquals(0, DatabaseBatchTest.findEntries(journal,
+                    DatabaseTables.AccessTable.getFilename(a)).size());
+
+            for (User user : new User[] { a, b, c }) {
+                Vector<String> rows = Database.getInstance().rawReadAccessTable(user);
+
+                Assert.assertEquals(1, rows.size());
+
+                String[] cols = rows.get(0).split(DatabaseStructure.SEPARATOR);
+
+                Assert.assertEquals(file.getId(), Integer.parseInt(cols[0]));
+                Assert.assertEquals(RsaAppender.WRAPPED_KEY, cols[1]);
+                Assert.assertTrue(Database.getInstance().hasAccess(user, file));
+            }
+
+            Vector<User> grantees = Database.getInstance().getGrantees(file);
+
+            Assert.assertEquals(3, grantees.size());
+            Assert.assertTrue(grantees.containsAll(Arrays.asList(a, b, c)));
+            Assert.assertEquals(3, owner.getDescriptor().getLendList().getDeptors(file).size());
+
+            c = DatabaseBatchTest.login(prefix + "c");
+
+            Assert.assertTrue(c.getDescriptor().getAccessList().contains(file));
+            Assert.assertEquals("Freigabe", new String(file.getContent()));
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob nur neue Benutzer angelegt werden, schon vorhandene und doppelt aufgeführte übersprungen werden und
+     * die Users-Tabelle für alle neuen Benutzer mit einem einzigen Anhängen erweitert wird.
+     */
+    @Test
+    public void importUsers() {
+        try {
+            String prefix = "import" + System.currentTimeMillis();
+
+            Database.getInstance().createUser(prefix + "a", DatabaseBatchTest.SECRET);
+
+            // leert das Journal, damit darin nur noch der Import steht
+            Database.getInstance().shutdown();
+
+            Map<String, String> accounts = new LinkedHashMap<String, String>();
+
+            accounts.put(prefix + "a", DatabaseBatchTest.SECRET);
+            accounts.put(prefix + "b", DatabaseBatchTest.SECRET);
+            accounts.put(prefix + "B", DatabaseBatchTest.SECRET);
+            accounts.put(prefix + "c", DatabaseBatchTest.SECRET);
+
+            Assert.assertEquals(2, Database.getInstance().importUsers(accounts, 2));
+            Assert.assertTrue(Database.getInstance().hasUser(prefix + "b"));
+            Assert.assertTrue(Database.getInstance().hasUser(prefix + "c"));
+
+            Vector<DatabaseTransaction.Entry> appends = DatabaseBatchTest.findEntries(DatabaseBatchTest.readJournal(),
+                    DatabaseFiles.DB_USERS_TB);
+
+            Assert.assertEquals(1, appends.size());
+            Assert.assertEquals(DatabaseTransaction.APPEND, appends.get(0).getOperation());
+
+            String[] lines = new String(appends.get(0).getData(), DatabaseStructure.CHARSET).split("\n");
+
+            Assert.assertEquals(2, lines.length);
+            Assert.assertTrue(lines[0].startsWith(prefix + "b" + DatabaseStructure.SEPARATOR));
+            Assert.assertTrue(lines[1].startsWith(prefix + "c" + DatabaseStructure.SEPARATOR));
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            Assert.fail();
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+/**
+ * Legt fest, wann das Journal und die Tabellen auf die Platte gebracht werden. Damit lässt sich je nach Einsatz
+ * Latenz gegen Sicherheit tauschen.
+ * 
+ * @author Smolli
+ */
+public enum DatabaseDurability {
+
+    /** Jeder Commit wartet, bis das Journal auf der Platte ist. Das ist die Voreinstellung. */
+    SYNC,
+    /**
+     * Das Journal wird regelmäßig im Hintergrund auf die Platte gebracht. Bei einem Systemabsturz gehen höchstens die
+     * Commits der letzten Sekunde verloren. Commits, die eine Tabelle ersetzen, warten wie bei {@link #SYNC}.
+     */
+    PERIODIC,
+    /**
+     * Es wird nie explizit synchronisiert, das übernimmt das Betriebssystem. Nur für Massenimporte gedacht, die bei
+     * einem Systemabsturz wiederholt werden können.
+     */
+    NONE;
+
+}
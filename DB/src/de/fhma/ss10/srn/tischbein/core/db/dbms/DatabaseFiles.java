@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.locks.ReentrantLock;
 
+import de.fhma.ss10.srn.tischbein.core.db.Group;
 import de.fhma.ss10.srn.tischbein.core.db.User;
 
 /**
@@ -17,8 +18,38 @@ public abstract class DatabaseFiles {
     protected static final String DB_USERS_TB = "db/users.tb";
     /** Standard-Datei für die Datei-Tabelle. */
     protected static final String DB_FILES_TB = "db/files.tb";
-    /** Das Reentrantlock. */
+    /** Standard-Datei für die Gruppen-Tabelle. */
+    protected static final String DB_GROUPS_TB = "db/groups.tb";
+    /** Standard-Datei für den Index der Zugriffsrechte. */
+    protected static final String DB_ACL_TB = "db/acl.tb";
+    /** Standard-Datei für das Journal. */
+    protected static final String DB_JOURNAL = "db/journal.log";
+    /**
+     * Das Reentrantlock für die globalen Tabellen, also die Benutzer- und die Dateien-Tabelle. Die Tabellen der
+     * einzelnen Benutzer werden über {@link #lockUsers(User...)} gesperrt. Wer beides braucht, sperrt zuerst die
+     * Benutzer und dann dieses Lock.
+     */
     protected static final ReentrantLock LOCK = new ReentrantLock();
+    /** Hält die Sperren der Benutzertabellen. */
+    private static final DatabaseLockManager USER_LOCKS = new DatabaseLockManager();
+
+    /**
+     * Erstellt die Tabellen-Dateien einer Gruppe.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @throws IOException
+     *             Wird geworfen, wenn eine der Dateien nicht erstellt werden konnte.
+     */
+    protected void createGroupFiles(final Group group) throws IOException {
+        if (!new File(DatabaseGroupTables.MemberTable.getFilename(group)).createNewFile()) {
+            System.out.println("Mitglieder-Tabelle der Gruppe existiert schon!");
+        }
+
+        if (!new File(DatabaseGroupTables.AccessTable.getFilename(group)).createNewFile()) {
+            System.out.println("Zugriffs-Tabelle der Gruppe existiert schon!");
+        }
+    }
 
     /**
      * Erstellt die Tabellen-Dateien für die Datenbank.
@@ -42,6 +73,17 @@ public abstract class DatabaseFiles {
         }
     }
 
+    /**
+     * Sperrt die Tabellen der angegebenen Benutzer. Mehrere Benutzer müssen in einem Aufruf gesperrt werden, damit die
+     * Reihenfolge der Sperren immer dieselbe ist.
+     * 
+     * @param users
+     *            Die Benutzer, <code>null</code>-Einträge werden ignoriert.
+     */
+    protected void lockUsers(final User... users) {
+        DatabaseFiles.USER_LOCKS.lock(users);
+    }
+
     /**
      * Prüft die Basisstruktur der Datenbank und erstellt sie bei Bedarf.
      * 
@@ -54,6 +96,16 @@ public abstract class DatabaseFiles {
         this.testBaseFiles();
     }
 
+    /**
+     * Gibt die Tabellen der angegebenen Benutzer wieder frei.
+     * 
+     * @param users
+     *            Dieselben Benutzer wie beim Aufruf von {@link #lockUsers(User...)}.
+     */
+    protected void unlockUsers(final User... users) {
+        DatabaseFiles.USER_LOCKS.unlock(users);
+    }
+
     /**
      * Testet, ob die Basistabellen vorhanden sind und erstellt sie bei Bedarf.
      * 
@@ -68,6 +120,10 @@ public abstract class DatabaseFiles {
         if (new File(DatabaseFiles.DB_FILES_TB).createNewFile()) {
             System.out.println("Dateien-Tabelle anegelegt.");
         }
+
+        if (new File(DatabaseFiles.DB_GROUPS_TB).createNewFile()) {
+            System.out.println("Gruppen-Tabelle angelegt.");
+        }
     }
 
     /**
@@ -79,6 +135,8 @@ public abstract class DatabaseFiles {
         this.testDir("db/users");
 
         this.testDir("db/files");
+
+        this.testDir("db/groups");
     }
 
     /**
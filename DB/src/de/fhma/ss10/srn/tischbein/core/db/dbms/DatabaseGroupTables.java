@@ -0,0 +1,43 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.db.Group;
+
+/**
+ * Alle Tabellen einer Gruppe (Helferklasse).
+ * 
+ * @author Smolli
+ */
+public enum DatabaseGroupTables {
+
+    /** Die Tabelle mit den Mitgliedern und dem für jedes Mitglied verpackten CryptKey der Gruppe. */
+    MemberTable,
+    /** Die Tabelle mit den Dateien, die der Gruppe freigegeben wurden, und den verpackten Dateischlüsseln. */
+    AccessTable;
+
+    /**
+     * Gibt den Dateinamen der Tabelle im Gruppenkontext zurück.
+     * 
+     * @param group
+     *            Die {@link Group}.
+     * @return Der eindeutige Dateiname.
+     */
+    public String getFilename(final Group group) {
+        StringBuilder sb = new StringBuilder("db/groups/");
+
+        sb.append(Utils.toMD5Hex(group.getName().toLowerCase()));
+
+        if (this == DatabaseGroupTables.MemberTable) {
+            sb.append(".members");
+        }
+
+        if (this == DatabaseGroupTables.AccessTable) {
+            sb.append(".access");
+        }
+
+        sb.append(".tb");
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,552 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import de.fhma.ss10.srn.tischbein.core.db.DatabaseException;
+
+/**
+ * Write-Ahead-Journal der Datenbank. Jede {@link DatabaseTransaction} wird als ein Datensatz der Form
+ * <code>Länge | CRC32 | Transaktion</code> an das Journal angehängt und auf die Platte gebracht, bevor ihre Änderungen
+ * in die Tabellen geschrieben werden.
+ * <p>
+ * Commits mehrerer Threads werden gebündelt: Der erste Thread, der schreiben will, schreibt alle bis dahin
+ * eingereihten Datensätze auf einmal und synchronisiert das Journal nur einmal für alle. Die anderen Threads warten,
+ * bis ihr Datensatz dabei war. Unter Last steigt so der Durchsatz, anstatt dass jeder Commit eine eigene
+ * Synchronisation bezahlt.
+ * <p>
+ * Ist das Journal groß genug und gerade keine Transaktion offen, werden alle seit dem letzten Mal geänderten Tabellen
+ * synchronisiert und das Journal geleert (Checkpoint). Beim Öffnen werden alle vollständigen Datensätze noch einmal
+ * abgespielt; ein abgerissener Datensatz am Ende wird verworfen.
+ * <p>
+ * Schlägt das Schreiben eines Bündels fehl, wird das Journal auf seine vorherige Länge zurückgeschnitten, damit spätere
+ * Datensätze nicht hinter einem kaputten liegen und beim Abspielen verloren gehen. Gelingt auch das nicht, nimmt das
+ * Journal bis zum nächsten Öffnen keine Commits mehr an. Konnte eine Transaktion nicht in die Tabellen geschrieben
+ * werden, wird kein Checkpoint mehr gemacht, damit sie beim nächsten Öffnen wiederholt wird.
+ * <p>
+ * Wann synchronisiert wird, legt die {@link DatabaseDurability} fest. Bei {@link DatabaseDurability#PERIODIC} übernimmt
+ * ein Hintergrund-Thread das Synchronisieren des Journals; nur Bündel, die eine Tabelle ersetzen, werden sofort
+ * synchronisiert, da die ersetzte Tabelle sonst vor ihrem Datensatz auf der Platte stehen könnte. Bei
+ * {@link DatabaseDurability#NONE} werden weder das Journal noch die Tabellen beim Checkpoint synchronisiert; die
+ * Tabellen bleiben dann als geändert vorgemerkt, bis ein späterer Checkpoint sie synchronisiert.
+ * 
+ * @author Smolli
+ */
+final class DatabaseJournal {
+
+    /**
+     * Ein eingereihter Commit.
+     */
+    private static final class Commit {
+
+        /** Hält den Journal-Datensatz. */
+        private final byte[] record;
+        /** Gibt an, ob die Transaktion eine Tabelle ersetzt. */
+        private final boolean replace;
+        /** Gibt an, ob der Datensatz geschrieben wurde. */
+        private boolean done;
+        /** Hält den Fehler, falls der Datensatz nicht geschrieben werden konnte. */
+        private IOException error;
+
+        /**
+         * Erstellt einen neuen Commit.
+         * 
+         * @param record
+         *            Der Journal-Datensatz.
+         * @param replace
+         *            Gibt an, ob die Transaktion eine Tabelle ersetzt.
+         */
+        Commit(final byte[] record, final boolean replace) {
+            this.record = record;
+            this.replace = replace;
+        }
+
+    }
+
+    /** Die Größe des Datensatz-Kopfes, also Länge und Prüfsumme. */
+    private static final int HEADER_SIZE = 12;
+    /** Die Journalgröße in Bytes, ab der ein Checkpoint gemacht wird. */
+    private static final long CHECKPOINT_SIZE = 1024 * 1024;
+    /** Der Abstand der Synchronisation bei {@link DatabaseDurability#PERIODIC} in Millisekunden. */
+    private static final long PERIODIC_INTERVAL = 1000;
+
+    /**
+     * Berechnet die Prüfsumme eines Datensatzes.
+     * 
+     * @param record
+     *            Der Datensatz.
+     * @return Die Prüfsumme.
+     */
+    private static long checksum(final byte[] record) {
+        CRC32 crc = new CRC32();
+
+        crc.update(record);
+
+        return crc.getValue();
+    }
+
+    /** Hält den Dateinamen des Journals. */
+    private final String filename;
+    /** Hält die geöffnete Journal-Datei. */
+    private RandomAccessFile file;
+    /** Hält den Kanal der Journal-Datei. */
+    private FileChannel channel;
+    /** Hält die eingereihten, noch nicht geschriebenen Commits. */
+    private Vector<Commit> pending = new Vector<Commit>();
+    /** Gibt an, ob gerade ein Thread das Journal schreibt oder einen Checkpoint macht. */
+    private boolean busy;
+    /** Hält die Anzahl der Transaktionen, deren Änderungen noch nicht in den Tabellen stehen. */
+    private int unapplied;
+    /** Gibt an, ob eine Transaktion nicht in die Tabellen geschrieben wurde und beim Öffnen wiederholt werden muss. */
+    private boolean replay;
+    /** Gibt an, ob das Journal nach einem Schreibfehler nicht zurückgeschnitten werden konnte. */
+    private boolean broken;
+    /** Hält die Tabellen, die seit dem letzten Checkpoint geändert wurden. */
+    private final HashSet<String> dirty = new HashSet<String>();
+    /** Hält die eingestellte Dauerhaftigkeit. */
+    private volatile DatabaseDurability durability = DatabaseDurability.SYNC;
+    /** Hält den Hintergrund-Thread für {@link DatabaseDurability#PERIODIC}. */
+    private ScheduledExecutorService syncer;
+
+    /**
+     * Erstellt ein neues Journal für die angegebene Datei.
+     * 
+     * @param file
+     *            Der Dateiname des Journals.
+     */
+    DatabaseJournal(final String file) {
+        this.filename = file;
+    }
+
+    /**
+     * Meldet, dass die Änderungen einer mit {@link #write(DatabaseTransaction)} geschriebenen Transaktion in den
+     * Tabellen stehen. Ist das Journal groß genug und keine andere Transaktion offen, wird ein Checkpoint gemacht.
+     */
+    void applied() {
+        synchronized (this) {
+            this.unapplied--;
+            this.notifyAll();
+
+            if (this.replay || (this.unapplied > 0) || this.busy || !this.pending.isEmpty()
+                    || (this.journalSize() < DatabaseJournal.CHECKPOINT_SIZE)) {
+                return;
+            }
+
+            this.busy = true;
+        }
+
+        try {
+            this.checkpoint();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.release();
+        }
+    }
+
+    /**
+     * Schließt das Journal. Es wird gewartet, bis alle offenen Transaktionen in den Tabellen stehen, dann wird ein
+     * letzter Checkpoint gemacht. Muss eine Transaktion wiederholt werden, wird das Journal nur synchronisiert.
+     */
+    void close() {
+        this.setDurability(DatabaseDurability.SYNC);
+
+        synchronized (this) {
+            while (this.busy || (this.unapplied > 0)) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    return;
+                }
+            }
+
+            this.busy = true;
+        }
+
+        try {
+            if (this.replay || this.broken) {
+                this.channel.force(false);
+            } else {
+                this.checkpoint();
+            }
+
+            this.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.release();
+        }
+    }
+
+    /**
+     * Meldet, dass die Änderungen einer mit {@link #write(DatabaseTransaction)} geschriebenen Transaktion nicht in die
+     * Tabellen geschrieben werden konnten. Das Journal wird ab jetzt nicht mehr geleert, damit die Transaktion beim
+     * nächsten Öffnen wiederholt wird.
+     */
+    synchronized void failed() {
+        this.unapplied--;
+        this.replay = true;
+        this.notifyAll();
+    }
+
+    /**
+     * Öffnet das Journal und liest die Transaktionen, die noch abgespielt werden müssen. Ein unvollständiger oder
+     * beschädigter Datensatz beendet das Lesen, er und alles dahinter wird abgeschnitten.
+     * 
+     * @return Die Transaktionen in der Reihenfolge ihres Commits.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Journal nicht geöffnet werden kann.
+     */
+    synchronized Vector<DatabaseTransaction> open() throws DatabaseException {
+        Vector<DatabaseTransaction> result = new Vector<DatabaseTransaction>();
+
+        try {
+            this.file = new RandomAccessFile(this.filename, "rw");
+            this.channel = this.file.getChannel();
+
+            long valid = 0;
+            long length = this.file.length();
+
+            while (valid + DatabaseJournal.HEADER_SIZE <= length) {
+                this.file.seek(valid);
+
+                int size = this.file.readInt();
+                long crc = this.file.readLong();
+
+                if ((size < 0) || (valid + DatabaseJournal.HEADER_SIZE + size > length)) {
+                    break;
+                }
+
+                byte[] record = new byte[size];
+
+                this.file.readFully(record);
+
+                if (DatabaseJournal.checksum(record) != crc) {
+                    break;
+                }
+
+                result.add(DatabaseTransaction.decode(record));
+                this.dirty.addAll(result.lastElement().getFilenames());
+
+                valid += DatabaseJournal.HEADER_SIZE + size;
+            }
+
+            if (valid < length) {
+                System.out.println("Journal " + this.filename + " ab Position " + valid + " abgeschnitten.");
+
+                this.channel.truncate(valid);
+            }
+
+            return result;
+        } catch (IOException e) {
+            throw new DatabaseException("Kann das Journal nicht öffnen!", e);
+        }
+    }
+
+    /**
+     * Synchronisiert alle geänderten Tabellen und leert das Journal. Wird nach dem Abspielen beim Öffnen aufgerufen.
+     * 
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Checkpoint nicht gemacht werden kann.
+     */
+    void recovered() throws DatabaseException {
+        synchronized (this) {
+            this.busy = true;
+        }
+
+        try {
+            this.checkpoint();
+        } catch (IOException e) {
+            throw new DatabaseException("Kann das Journal nicht leeren!", e);
+        } finally {
+            this.release();
+        }
+    }
+
+    /**
+     * Stellt die Dauerhaftigkeit um. Beim Wechsel auf {@link DatabaseDurability#PERIODIC} wird der Hintergrund-Thread
+     * gestartet, beim Wechsel weg davon wird er beendet und das Journal noch einmal synchronisiert.
+     * 
+     * @param mode
+     *            Die neue Dauerhaftigkeit.
+     */
+    synchronized void setDurability(final DatabaseDurability mode) {
+        if (mode == this.durability) {
+            return;
+        }
+
+        if (this.syncer != null) {
+            this.syncer.shutdown();
+            this.syncer = null;
+
+            this.forceQuietly();
+        }
+
+        this.durability = mode;
+
+        if (mode == DatabaseDurability.PERIODIC) {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(r, "DatabaseJournal-Sync");
+
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+
+            });
+
+            this.syncer.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    DatabaseJournal.this.forceQuietly();
+                }
+
+            }, DatabaseJournal.PERIODIC_INTERVAL, DatabaseJournal.PERIODIC_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Schreibt eine Transaktion in das Journal und wartet, bis sie auf der Platte ist. Danach müssen die Änderungen in
+     * die Tabellen geschrieben und {@link #applied()} aufgerufen werden, oder {@link #failed()}, wenn das fehlschlägt.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Transaktion nicht in das Journal geschrieben werden kann. Weder
+     *             {@link #applied()} noch {@link #failed()} dürfen dann aufgerufen werden.
+     */
+    void write(final DatabaseTransaction tx) throws DatabaseException {
+        Commit commit;
+
+        try {
+            commit = new Commit(tx.encode(), tx.containsReplace());
+        } catch (IOException e) {
+            throw new DatabaseException("Kann die Transaktion nicht kodieren!", e);
+        }
+
+        synchronized (this) {
+            this.pending.add(commit);
+            this.unapplied++;
+            this.dirty.addAll(tx.getFilenames());
+        }
+
+        try {
+            this.awaitCommit(commit);
+        } catch (IOException e) {
+            synchronized (this) {
+                this.unapplied--;
+                this.notifyAll();
+            }
+
+            throw new DatabaseException("Kann die Transaktion nicht in das Journal schreiben!", e);
+        }
+    }
+
+    /**
+     * Wartet, bis der Commit geschrieben ist. Schreibt gerade niemand, übernimmt der aufrufende Thread das Schreiben
+     * aller eingereihten Commits.
+     * 
+     * @param commit
+     *            Der Commit.
+     * @throws IOException
+     *             Wird geworfen, wenn der Commit nicht geschrieben werden konnte.
+     */
+    private void awaitCommit(final Commit commit) throws IOException {
+        Vector<Commit> batch;
+
+        synchronized (this) {
+            while (!commit.done && this.busy) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw new IOException("Beim Warten auf das Journal unterbrochen!", e);
+                }
+            }
+
+            if (commit.done) {
+                if (commit.error != null) {
+                    throw commit.error;
+                }
+
+                return;
+            }
+
+            this.busy = true;
+            batch = this.pending;
+            this.pending = new Vector<Commit>();
+        }
+
+        IOException error = null;
+
+        try {
+            this.writeBatch(batch);
+        } catch (IOException e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            for (Commit c : batch) {
+                c.done = true;
+                c.error = error;
+            }
+
+            this.busy = false;
+            this.notifyAll();
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Synchronisiert die geänderten Tabellen und leert danach das Journal. Der Aufrufer muss vorher
+     * <code>busy</code> gesetzt haben. Bei {@link DatabaseDurability#NONE} bleiben die Tabellen als geändert
+     * vorgemerkt, da sie nicht synchronisiert wurden.
+     * 
+     * @throws IOException
+     *             Wird geworfen, wenn eine Tabelle nicht synchronisiert oder das Journal nicht geleert werden kann.
+     */
+    private void checkpoint() throws IOException {
+        Vector<String> tables;
+        boolean sync = this.durability != DatabaseDurability.NONE;
+
+        synchronized (this) {
+            tables = new Vector<String>(this.dirty);
+        }
+
+        for (String table : tables) {
+            if (sync && new File(table).exists()) {
+                RandomAccessFile raf = new RandomAccessFile(table, "rw");
+
+                try {
+                    raf.getChannel().force(true);
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+
+        this.channel.truncate(0);
+
+        if (sync) {
+            this.channel.force(true);
+        }
+
+        if (sync) {
+            synchronized (this) {
+                this.dirty.removeAll(tables);
+            }
+        }
+    }
+
+    /**
+     * Bringt das Journal auf die Platte. Fehler werden nur ausgegeben, da der nächste Versuch sie ohnehin wiederholt.
+     */
+    private void forceQuietly() {
+        try {
+            if ((this.channel != null) && this.channel.isOpen()) {
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Ermittelt die aktuelle Größe des Journals.
+     * 
+     * @return Die Größe in Bytes.
+     */
+    private long journalSize() {
+        try {
+            return this.channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Gibt das Journal nach einem Checkpoint wieder frei.
+     */
+    private synchronized void release() {
+        this.busy = false;
+        this.notifyAll();
+    }
+
+    /**
+     * Hängt die Commits als Datensätze an das Journal an und synchronisiert es bei {@link DatabaseDurability#SYNC}
+     * einmal, bei {@link DatabaseDurability#PERIODIC} nur, wenn einer der Commits eine Tabelle ersetzt. Schlägt das
+     * fehl, wird das Journal auf seine vorherige Länge zurückgeschnitten.
+     * 
+     * @param batch
+     *            Die Commits.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datensätze nicht geschrieben werden können.
+     */
+    private void writeBatch(final Vector<Commit> batch) throws IOException {
+        if (this.broken) {
+            throw new IOException("Das Journal ist nach einem Schreibfehler gesperrt!");
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        boolean force = this.durability == DatabaseDurability.SYNC;
+
+        for (Commit commit : batch) {
+            // eine ersetzte Tabelle darf nicht vor ihrem Datensatz auf der Platte stehen
+            force |= commit.replace && (this.durability == DatabaseDurability.PERIODIC);
+
+            out.writeInt(commit.record.length);
+            out.writeLong(DatabaseJournal.checksum(commit.record));
+            out.write(commit.record);
+        }
+
+        out.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bos.toByteArray());
+        long start = this.channel.size();
+        long position = start;
+
+        try {
+            while (buffer.hasRemaining()) {
+                position += this.channel.write(buffer, position);
+            }
+
+            if (force) {
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            try {
+                this.channel.truncate(start);
+            } catch (IOException te) {
+                te.printStackTrace();
+
+                this.broken = true;
+            }
+
+            throw e;
+        }
+    }
+
+}
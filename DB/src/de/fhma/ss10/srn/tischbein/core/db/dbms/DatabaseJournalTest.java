@@ -0,0 +1,190 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Vector;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests für das {@link DatabaseJournal}.
+ * 
+ * @author Smolli
+ */
+public final class DatabaseJournalTest {
+
+    /** Die Größe des Datensatz-Kopfes, also Länge und Prüfsumme. */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Erzeugt eine Transaktion, die einen Datensatz an ein Log anhängt.
+     * 
+     * @param record
+     *            Der Datensatz.
+     * @return Die Transaktion.
+     */
+    private static DatabaseTransaction logTransaction(final String record) {
+        DatabaseTransaction tx = new DatabaseTransaction();
+
+        tx.log("test.tb", record);
+
+        return tx;
+    }
+
+    /**
+     * Liest das Journal mit einem zweiten Objekt, so wie es nach einem Absturz geöffnet würde. Das zweite Objekt wird
+     * nicht geschlossen, da {@link DatabaseJournal#close()} das Journal leeren würde.
+     * 
+     * @param file
+     *            Die Journal-Datei.
+     * @return Die abzuspielenden Datensätze der Transaktionen.
+     * @throws Exception
+     *             Wird geworfen, wenn das Journal nicht gelesen werden kann.
+     */
+    private static Vector<String> reopen(final File file) throws Exception {
+        Vector<String> records = new Vector<String>();
+
+        for (DatabaseTransaction tx : new DatabaseJournal(file.getPath()).open()) {
+            records.add(new String(tx.getEntries().firstElement().getData()));
+        }
+
+        return records;
+    }
+
+    /**
+     * Testet, ob eine Transaktion, die nicht in die Tabellen geschrieben werden konnte, auch nach dem Schließen im
+     * Journal bleibt.
+     */
+    @Test
+    public void failedApplyIsReplayed() {
+        try {
+            File file = File.createTempFile("journal", ".log");
+
+            try {
+                DatabaseJournal journal = new DatabaseJournal(file.getPath());
+
+                journal.open();
+                journal.write(DatabaseJournalTest.logTransaction("1;a"));
+                journal.failed();
+                journal.write(DatabaseJournalTest.logTransaction("2;b"));
+                journal.applied();
+                journal.close();
+
+                Vector<String> records = DatabaseJournalTest.reopen(file);
+
+                Assert.assertEquals(2, records.size());
+                Assert.assertEquals("1;a", records.get(0));
+                Assert.assertEquals("2;b", records.get(1));
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob geschriebene Transaktionen nach einem Absturz in der Reihenfolge ihres Commits abgespielt werden und
+     * ob das Journal nach dem Schließen leer ist.
+     */
+    @Test
+    public void replay() {
+        try {
+            File file = File.createTempFile("journal", ".log");
+
+            try {
+                DatabaseJournal journal = new DatabaseJournal(file.getPath());
+
+                Assert.assertTrue(journal.open().isEmpty());
+
+                journal.write(DatabaseJournalTest.logTransaction("1;a"));
+                journal.write(DatabaseJournalTest.logTransaction("2;b"));
+
+                // Absturz vor applied(): beide Transaktionen müssen abgespielt werden
+                DatabaseJournal crashed = new DatabaseJournal(file.getPath());
+                Vector<DatabaseTransaction> transactions = crashed.open();
+
+                Assert.assertEquals(2, transactions.size());
+                Assert.assertArrayEquals("1;a".getBytes(), transactions.get(0).getEntries().get(0).getData());
+                Assert.assertArrayEquals("2;b".getBytes(), transactions.get(1).getEntries().get(0).getData());
+
+                crashed.recovered();
+                crashed.close();
+
+                journal.applied();
+                journal.applied();
+                journal.close();
+
+                Assert.assertEquals(0, file.length());
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob ein abgerissener und ein beschädigter Datensatz am Ende abgeschnitten werden und die Datensätze
+     * davor erhalten bleiben.
+     */
+    @Test
+    public void tornTail() {
+        try {
+            File file = File.createTempFile("journal", ".log");
+
+            try {
+                DatabaseJournal journal = new DatabaseJournal(file.getPath());
+                byte[] record = DatabaseJournalTest.logTransaction("1;a").encode();
+                long first = DatabaseJournalTest.HEADER_SIZE + record.length;
+
+                journal.open();
+                journal.write(DatabaseJournalTest.logTransaction("1;a"));
+                journal.write(DatabaseJournalTest.logTransaction("2;b"));
+
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+                try {
+                    // der zweite Datensatz reißt mitten in den Daten ab
+                    raf.setLength(raf.length() - 2);
+                } finally {
+                    raf.close();
+                }
+
+                Vector<String> records = DatabaseJournalTest.reopen(file);
+
+                Assert.assertEquals(1, records.size());
+                Assert.assertEquals("1;a", records.get(0));
+                Assert.assertEquals(first, file.length());
+
+                journal.write(DatabaseJournalTest.logTransaction("3;c"));
+
+                raf = new RandomAccessFile(file, "rw");
+
+                try {
+                    // das letzte Byte des dritten Datensatzes wird verfälscht
+                    raf.seek(raf.length() - 1);
+                    raf.write('x');
+                } finally {
+                    raf.close();
+                }
+
+                records = DatabaseJournalTest.reopen(file);
+
+                Assert.assertEquals(1, records.size());
+                Assert.assertEquals(first, file.length());
+
+                journal.applied();
+                journal.applied();
+                journal.applied();
+                journal.close();
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+}
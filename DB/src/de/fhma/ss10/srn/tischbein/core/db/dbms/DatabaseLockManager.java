@@ -0,0 +1,103 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.fhma.ss10.srn.tischbein.core.db.User;
+
+/**
+ * Verwaltet die Sperren auf die Tabellen der einzelnen Benutzer. Statt einer Sperre pro Benutzer gibt es eine feste
+ * Anzahl von Sperren (Stripes), auf die die Benutzer über ihren Namen verteilt werden. Operationen auf verschiedenen
+ * Benutzern blockieren sich dadurch nur, wenn die Benutzer zufällig auf denselben Stripe fallen.
+ * <p>
+ * Werden mehrere Benutzer gesperrt, z.B. der Besitzer und der Empfänger einer Freigabe, so werden die Stripes immer in
+ * aufsteigender Reihenfolge gesperrt, damit sich zwei Threads nicht gegenseitig blockieren können. Die Sperren sind
+ * reentrant, ein Thread kann also Benutzer sperren, die er schon gesperrt hat.
+ * 
+ * @author Smolli
+ */
+final class DatabaseLockManager {
+
+    /** Die Anzahl der Stripes. */
+    private static final int STRIPES = 32;
+
+    /** Hält die Sperren. */
+    private final ReentrantLock[] locks = new ReentrantLock[DatabaseLockManager.STRIPES];
+
+    /**
+     * Erstellt einen neuen {@link DatabaseLockManager}.
+     */
+    DatabaseLockManager() {
+        for (int i = 0; i < this.locks.length; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Sperrt die Tabellen der angegebenen Benutzer. <code>null</code>-Einträge werden ignoriert.
+     * 
+     * @param users
+     *            Die Benutzer.
+     */
+    void lock(final User... users) {
+        for (int stripe : this.stripesOf(users)) {
+            this.locks[stripe].lock();
+        }
+    }
+
+    /**
+     * Gibt die Tabellen der angegebenen Benutzer wieder frei.
+     * 
+     * @param users
+     *            Die Benutzer, die vorher mit {@link #lock(User...)} gesperrt wurden.
+     */
+    void unlock(final User... users) {
+        int[] stripes = this.stripesOf(users);
+
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            this.locks[stripes[i]].unlock();
+        }
+    }
+
+    /**
+     * Ermittelt den Stripe eines Benutzers.
+     * 
+     * @param user
+     *            Der Benutzer.
+     * @return Der Index des Stripes.
+     */
+    private int stripeOf(final User user) {
+        return (user.getName().toLowerCase().hashCode() & Integer.MAX_VALUE) % DatabaseLockManager.STRIPES;
+    }
+
+    /**
+     * Ermittelt die Stripes der angegebenen Benutzer aufsteigend sortiert und ohne Duplikate.
+     * 
+     * @param users
+     *            Die Benutzer.
+     * @return Die Indizes der Stripes.
+     */
+    private int[] stripesOf(final User... users) {
+        int[] stripes = new int[users.length];
+        int count = 0;
+
+        for (User user : users) {
+            if (user != null) {
+                stripes[count++] = this.stripeOf(user);
+            }
+        }
+
+        Arrays.sort(stripes, 0, count);
+
+        int unique = 0;
+
+        for (int i = 0; i < count; i++) {
+            if ((unique == 0) || (stripes[unique - 1] != stripes[i])) {
+                stripes[unique++] = stripes[i];
+            }
+        }
+
+        return Arrays.copyOf(stripes, unique);
+    }
+
+}
@@ -0,0 +1,393 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+import de.fhma.ss10.srn.tischbein.core.UtilsException;
+import de.fhma.ss10.srn.tischbein.core.db.DatabaseException;
+
+/**
+ * Append-only-Tabelle. Jede Änderung wird als eigener Datensatz an das Ende der Datei angehängt, anstatt die ganze
+ * Tabelle neu zu schreiben. Ein Datensatz ist eine normale Tabellenzeile, deren erste Spalte den Schlüssel enthält.
+ * Gelöschte Schlüssel werden durch einen Löschsatz (Tombstone) der Form <code>!;schlüssel</code> markiert.
+ * <p>
+ * Beim Öffnen wird das Log von vorne nach hinten abgespielt, der letzte Datensatz eines Schlüssels gewinnt. Sobald zu
+ * viele Datensätze überholt sind, wird das Log im Hintergrund kompaktiert, d.h. nur noch mit den lebenden Datensätzen
+ * neu geschrieben.
+ * 
+ * @author Smolli
+ */
+final class DatabaseLog {
+
+    /** Kennzeichnet einen Löschsatz. */
+    static final String TOMBSTONE = "!";
+    /** Minimale Anzahl toter Datensätze, ab der kompaktiert wird. */
+    private static final int MIN_DEAD_RECORDS = 64;
+    /** Maximale Wartezeit auf eine laufende Kompaktierung beim Schließen in Sekunden. */
+    private static final int CLOSE_TIMEOUT = 10;
+
+    /**
+     * Ermittelt den Schlüssel eines Datensatzes.
+     * 
+     * @param record
+     *            Der Datensatz.
+     * @return Der Schlüssel, also die erste Spalte.
+     */
+    private static String keyOf(final String record) {
+        int pos = record.indexOf(DatabaseStructure.SEPARATOR);
+
+        if (pos < 0) {
+            return record;
+        }
+
+        return record.substring(0, pos);
+    }
+
+    /** Hält den Dateinamen des Logs. */
+    private final String filename;
+    /** Hält die Schlüssel aller lebenden Datensätze. */
+    private final HashSet<String> liveKeys = new HashSet<String>();
+    /** Hält die Anzahl der überholten Datensätze im Log. */
+    private int deadRecords;
+    /** Gibt an, ob schon eine Kompaktierung eingeplant ist. */
+    private boolean compactionPending;
+    /** Gibt an, ob das Ende des Logs schon auf einen abgerissenen Datensatz geprüft wurde. */
+    private boolean tailChecked;
+    /** Hält den Hintergrund-Thread für die Kompaktierung. */
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, "DatabaseLog-Compactor");
+
+            thread.setDaemon(true);
+
+            return thread;
+        }
+
+    });
+
+    /**
+     * Erstellt ein neues Log für die angegebene Datei.
+     * 
+     * @param file
+     *            Der Dateiname des Logs.
+     */
+    DatabaseLog(final String file) {
+        this.filename = file;
+    }
+
+    /**
+     * Hängt einen Datensatz an das Log an. Ein schon vorhandener Datensatz mit demselben Schlüssel wird dadurch
+     * überholt.
+     * 
+     * @param record
+     *            Der Datensatz.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Datensatz nicht geschrieben werden konnte.
+     */
+    synchronized void append(final String record) throws DatabaseException {
+        this.write(record);
+
+        if (!this.liveKeys.add(DatabaseLog.keyOf(record))) {
+            this.deadRecords++;
+        }
+
+        this.scheduleCompaction();
+    }
+
+    /**
+     * Markiert den Datensatz mit dem angegebenen Schlüssel als gelöscht.
+     * 
+     * @param key
+     *            Der Schlüssel.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Löschsatz nicht geschrieben werden konnte.
+     */
+    synchronized void appendTombstone(final String key) throws DatabaseException {
+        this.write(DatabaseLog.TOMBSTONE + DatabaseStructure.SEPARATOR + key);
+
+        if (this.liveKeys.remove(key)) {
+            // der überholte Datensatz und der Löschsatz selbst
+            this.deadRecords += 2;
+        } else {
+            this.deadRecords++;
+        }
+
+        this.scheduleCompaction();
+    }
+
+    /**
+     * Beendet den Hintergrund-Thread. Eine laufende Kompaktierung wird noch abgeschlossen.
+     */
+    void close() {
+        this.compactor.shutdown();
+
+        try {
+            this.compactor.awaitTermination(DatabaseLog.CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schreibt das Log mit den lebenden Datensätzen neu. Die neue Datei wird mit
+     * {@link Utils#writeFileAtomic(String, byte[], boolean)} über das alte Log geschrieben.
+     * 
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Log nicht kompaktiert werden konnte.
+     */
+    synchronized void compact() throws DatabaseException {
+        try {
+            Vector<String> records = this.replay();
+            StringBuilder sb = new StringBuilder();
+
+            for (String record : records) {
+                sb.append(record);
+                sb.append("\n");
+            }
+
+            try {
+                // das Journal enthält die kompaktierten Datensätze nicht mehr, deshalb immer synchronisieren
+                Utils.writeFileAtomic(this.filename, sb.toString().getBytes(DatabaseStructure.CHARSET), true);
+            } catch (UtilsException e) {
+                throw new DatabaseException("Kann das Log nicht kompaktieren!", e);
+            }
+
+            this.deadRecords = 0;
+
+            System.out.println("Log " + this.filename + " kompaktiert, " + records.size() + " Datensätze.");
+        } finally {
+            this.compactionPending = false;
+        }
+    }
+
+    /**
+     * Spielt das gelesene Log ab, ohne die Datensätze als Strings zu erzeugen. Nur die Schlüssel werden als
+     * Strings geführt.
+     * 
+     * @param table
+     *            Das mit {@link #scan()} geöffnete Log.
+     * @return Die Startpositionen der lebenden Datensätze in der Reihenfolge ihres letzten Schreibens, für
+     *         {@link DatabaseTableScanner#seek(long)}.
+     * @throws IOException
+     *             Wird geworfen, wenn das Log nicht gelesen werden konnte.
+     */
+    synchronized Vector<Long> replay(final DatabaseTableScanner table) throws IOException {
+        LinkedHashMap<String, Long> live = new LinkedHashMap<String, Long>();
+        int records = 0;
+
+        while (table.next()) {
+            records++;
+
+            if (table.columnEquals(0, DatabaseLog.TOMBSTONE)) {
+                if (table.getColumnCount() > 1) {
+                    live.remove(table.getString(1));
+                }
+            } else {
+                String key = table.getString(0);
+
+                // entfernen, damit der Datensatz an die Position seines letzten Schreibens wandert
+                live.remove(key);
+                live.put(key, table.getRecordStart());
+            }
+        }
+
+        this.finishReplay(live.keySet(), records);
+
+        return new Vector<Long>(live.values());
+    }
+
+    /**
+     * Spielt das Log ab und gibt die lebenden Datensätze in der Reihenfolge ihres letzten Schreibens zurück.
+     * 
+     * @return Die lebenden Datensätze.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Log nicht gelesen werden konnte.
+     */
+    synchronized Vector<String> replay() throws DatabaseException {
+        LinkedHashMap<String, String> live = new LinkedHashMap<String, String>();
+        Vector<String> lines;
+
+        this.repairTail();
+
+        try {
+            lines = new DatabaseTableReader<String>(Utils.createBufferedReader(this.filename,
+                    DatabaseStructure.CHARSET)) {
+
+                @Override
+                protected String process(final String line) throws Exception {
+                    return line;
+                }
+
+            }.getResult();
+        } catch (Exception e) {
+            throw new DatabaseException("Kann das Log nicht lesen!", e);
+        }
+
+        for (String line : lines) {
+            if (line.length() == 0) {
+                continue;
+            }
+
+            String key = DatabaseLog.keyOf(line);
+
+            if (DatabaseLog.TOMBSTONE.equals(key)) {
+                live.remove(line.substring(key.length() + DatabaseStructure.SEPARATOR.length()));
+            } else {
+                // entfernen, damit der Datensatz an die Position seines letzten Schreibens wandert
+                live.remove(key);
+                live.put(key, line);
+            }
+        }
+
+        this.finishReplay(live.keySet(), lines.size());
+
+        return new Vector<String>(live.values());
+    }
+
+    /**
+     * Öffnet das Log für {@link #replay(DatabaseTableScanner)}. Ein abgerissener Datensatz am Ende wird vorher
+     * entfernt.
+     * 
+     * @return Die geöffnete Tabelle. Sie muss vom Aufrufer geschlossen werden.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Log nicht geöffnet werden konnte.
+     */
+    synchronized DatabaseTableScanner scan() throws DatabaseException {
+        this.repairTail();
+
+        try {
+            return new DatabaseTableScanner(this.filename);
+        } catch (IOException e) {
+            throw new DatabaseException("Kann das Log nicht lesen!", e);
+        }
+    }
+
+    /**
+     * Übernimmt das Ergebnis eines Abspielens und plant bei Bedarf eine Kompaktierung ein.
+     * 
+     * @param keys
+     *            Die Schlüssel der lebenden Datensätze.
+     * @param records
+     *            Die Anzahl aller Datensätze im Log.
+     */
+    private void finishReplay(final Set<String> keys, final int records) {
+        this.liveKeys.clear();
+        this.liveKeys.addAll(keys);
+        this.deadRecords = records - keys.size();
+
+        this.scheduleCompaction();
+    }
+
+    /**
+     * Schneidet einen abgerissenen Datensatz am Ende des Logs ab, also alles nach dem letzten Zeilenumbruch. Ein
+     * solcher Datensatz entsteht, wenn beim Anhängen abgestürzt wird; sein Commit wird dann aus dem Journal wiederholt.
+     * Ohne das Abschneiden würde der wiederholte Datensatz an den abgerissenen angehängt. Die Prüfung wird nur einmal
+     * gemacht, danach hängt nur noch dieses Objekt an.
+     * 
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Log nicht geprüft werden kann.
+     */
+    private void repairTail() throws DatabaseException {
+        if (this.tailChecked) {
+            return;
+        }
+
+        try {
+            File file = new File(this.filename);
+
+            if (file.exists()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+                try {
+                    long end = raf.length();
+
+                    while (end > 0) {
+                        raf.seek(end - 1);
+
+                        if (raf.read() == '\n') {
+                            break;
+                        }
+
+                        end--;
+                    }
+
+                    if (end < raf.length()) {
+                        System.out.println("Abgerissener Datensatz am Ende von " + this.filename + " entfernt.");
+
+                        raf.setLength(end);
+                    }
+                } finally {
+                    raf.close();
+                }
+            }
+
+            this.tailChecked = true;
+        } catch (IOException e) {
+            throw new DatabaseException("Kann das Ende des Logs nicht prüfen!", e);
+        }
+    }
+
+    /**
+     * Plant eine Kompaktierung im Hintergrund ein, wenn mehr tote als lebende Datensätze im Log stehen.
+     */
+    private void scheduleCompaction() {
+        if (this.compactionPending || (this.deadRecords < DatabaseLog.MIN_DEAD_RECORDS)
+                || (this.deadRecords <= this.liveKeys.size()) || this.compactor.isShutdown()) {
+            return;
+        }
+
+        this.compactionPending = true;
+
+        this.compactor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    DatabaseLog.this.compact();
+                } catch (DatabaseException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        });
+    }
+
+    /**
+     * Hängt eine einzelne Zeile an die Log-Datei an.
+     * 
+     * @param record
+     *            Die Zeile.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Zeile nicht geschrieben werden konnte.
+     */
+    private void write(final String record) throws DatabaseException {
+        this.repairTail();
+
+        try {
+            BufferedWriter writer = Utils.createBufferedWriter(this.filename, true, DatabaseStructure.CHARSET);
+
+            try {
+                writer.write(record);
+                writer.write("\n");
+            } finally {
+                writer.close();
+            }
+        } catch (Exception e) {
+            throw new DatabaseException("Kann den Datensatz nicht an das Log anhängen!", e);
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Vector;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests für das {@link DatabaseLog}.
+ * 
+ * @author Smolli
+ */
+public final class DatabaseLogTest {
+
+    /** Die Anzahl der Überschreibungen, nach der sicher eine Kompaktierung eingeplant wird. */
+    private static final int OVERWRITES = 100;
+
+    /**
+     * Zählt die Zeilen einer Datei.
+     * 
+     * @param file
+     *            Die Datei.
+     * @return Die Anzahl der Zeilenumbrüche.
+     * @throws Exception
+     *             Wird geworfen, wenn die Datei nicht gelesen werden kann.
+     */
+    private static int countLines(final File file) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        int lines = 0;
+
+        try {
+            int c;
+
+            while ((c = raf.read()) != -1) {
+                if (c == '\n') {
+                    lines++;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+
+        return lines;
+    }
+
+    /**
+     * Testet, ob das Log im Hintergrund kompaktiert wird, sobald die meisten Datensätze überholt sind, und danach
+     * dieselben Datensätze liefert.
+     */
+    @Test
+    public void compaction() {
+        try {
+            File file = File.createTempFile("log", ".tb");
+
+            try {
+                DatabaseLog log = new DatabaseLog(file.getPath());
+
+                log.replay();
+                log.append("2;bleibt");
+
+                for (int i = 0; i < DatabaseLogTest.OVERWRITES; i++) {
+                    log.append("1;" + i);
+                }
+
+                // wartet auf die eingeplante Kompaktierung
+                log.close();
+
+                // nach der Kompaktierung wurde nur noch weiter angehängt
+                Assert.assertTrue(DatabaseLogTest.countLines(file) < DatabaseLogTest.OVERWRITES);
+
+                DatabaseLog reopened = new DatabaseLog(file.getPath());
+
+                try {
+                    Assert.assertEquals(Arrays.asList("2;bleibt", "1;" + (DatabaseLogTest.OVERWRITES - 1)), reopened
+                            .replay());
+                } finally {
+                    reopened.close();
+                }
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob der letzte Datensatz eines Schlüssels gewinnt, Löschsätze den Schlüssel entfernen und die Datensätze
+     * in der Reihenfolge ihres letzten Schreibens geliefert werden.
+     */
+    @Test
+    public void lastRecordWins() {
+        try {
+            File file = File.createTempFile("log", ".tb");
+
+            try {
+                DatabaseLog log = new DatabaseLog(file.getPath());
+
+                try {
+                    log.append("1;a");
+                    log.append("2;b");
+                    log.append("3;c");
+                    log.append("1;d");
+                    log.appendTombstone("2");
+                    log.appendTombstone("4");
+                } finally {
+                    log.close();
+                }
+
+                DatabaseLog reopened = new DatabaseLog(file.getPath());
+
+                try {
+                    Assert.assertEquals(Arrays.asList("3;c", "1;d"), reopened.replay());
+
+                    // eine Kompaktierung ändert nur die Datei, nicht den Inhalt
+                    reopened.compact();
+
+                    Assert.assertEquals(2, DatabaseLogTest.countLines(file));
+                    Assert.assertEquals(Arrays.asList("3;c", "1;d"), reopened.replay());
+                } finally {
+                    reopened.close();
+                }
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob ein abgerissener Datensatz am Ende beim Abspielen verworfen und abgeschnitten wird, damit der nächste
+     * Datensatz nicht an ihn angehängt wird.
+     */
+    @Test
+    public void tornTail() {
+        try {
+            File file = File.createTempFile("log", ".tb");
+
+            try {
+                FileOutputStream fos = new FileOutputStream(file);
+
+                fos.write("1;a\n2;halb".getBytes());
+                fos.close();
+
+                DatabaseLog log = new DatabaseLog(file.getPath());
+
+                try {
+                    Vector<String> records = log.replay();
+
+                    Assert.assertEquals(Arrays.asList("1;a"), records);
+                    Assert.assertEquals("1;a\n".length(), file.length());
+
+                    log.append("2;b");
+
+                    Assert.assertEquals(Arrays.asList("1;a", "2;b"), log.replay());
+                } finally {
+                    log.close();
+                }
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+}
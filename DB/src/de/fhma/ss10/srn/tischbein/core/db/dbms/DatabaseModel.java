@@ -1,16 +1,28 @@
 package de.fhma.ss10.srn.tischbein.core.db.dbms;
 
 import java.io.IOException;
-import java.util.TreeMap;
+import java.security.PublicKey;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
 
 import de.fhma.ss10.srn.tischbein.core.Utils;
 import de.fhma.ss10.srn.tischbein.core.UtilsException;
-import de.fhma.ss10.srn.tischbein.core.crypto.AesWriter;
 import de.fhma.ss10.srn.tischbein.core.crypto.RsaAppender;
-import de.fhma.ss10.srn.tischbein.core.db.Database;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
 import de.fhma.ss10.srn.tischbein.core.db.DatabaseException;
 import de.fhma.ss10.srn.tischbein.core.db.FileItem;
+import de.fhma.ss10.srn.tischbein.core.db.FileItemException;
+import de.fhma.ss10.srn.tischbein.core.db.Group;
 import de.fhma.ss10.srn.tischbein.core.db.User;
 import de.fhma.ss10.srn.tischbein.core.db.UserDescriptor;
 import de.fhma.ss10.srn.tischbein.core.db.UserDescriptor.UserFilePair;
@@ -18,19 +30,68 @@ import de.fhma.ss10.srn.tischbein.core.db.UserDescriptor.UserFilePairVector;
 
 /**
  * Stellt das Datenbank-Modell dar und spezialisiert somit die Datenbankstruktur.
+ * <p>
+ * Die Benutzer- und die Datei-Map werden von der Oberfläche gelesen, während andere Threads sie ändern. Sie sind
+ * deshalb nebenläufige Maps, aus denen ohne Sperre gelesen wird; Leser warten nie auf einen Schreiber. Iterationen
+ * sehen einen schwach konsistenten Stand, d.h. gleichzeitige Änderungen sind eventuell schon enthalten, aber es wird
+ * keine {@link java.util.ConcurrentModificationException} geworfen.
+ * <p>
+ * Die Maps, die Gruppen-Sets, der Index der Zugriffsrechte und die Listen der {@link UserDescriptor} werden erst nach
+ * einem erfolgreichen Commit geändert (siehe {@link DatabaseTransaction#afterCommit(Runnable)}). Die Tabellen einer
+ * Transaktion werden deshalb aus Kopien der Listen geschrieben, in denen die Änderung schon enthalten ist.
  * 
  * @author Smolli
  */
 public abstract class DatabaseModel extends DatabaseStructure {
 
+    /**
+     * Kopiert die Tupel einer Lend-Liste, damit die Kopie vor dem Commit geändert werden kann.
+     * 
+     * @param list
+     *            Die Lend-Liste.
+     * @return Die Kopie.
+     */
+    private static UserFilePairVector copyOf(final UserFilePairVector list) {
+        Vector<UserFilePair> pairs = new Vector<UserFilePair>();
+
+        for (UserFilePair ufp : list) {
+            pairs.add(ufp);
+        }
+
+        return new UserFilePairVector(pairs);
+    }
+
+    /**
+     * Erzeugt einen nebenläufigen Set.
+     * 
+     * @param <T>
+     *            Der Elementtyp.
+     * @return Der Set.
+     */
+    private static <T> Set<T> newSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+    }
+
     /** Enthält alle bekannten Benutzer in einer Map. Die Information ist öffentlich zugänglich. */
-    private final TreeMap<String, User> users = new TreeMap<String, User>();
+    private final ConcurrentNavigableMap<String, User> users = new ConcurrentSkipListMap<String, User>();
 
     /** Hält alle bekannten Dateien in einer Map. Die Information ist öffentlich zugänglich. */
-    private final TreeMap<Integer, FileItem> files = new TreeMap<Integer, FileItem>();
+    private final ConcurrentNavigableMap<Integer, FileItem> files = new ConcurrentSkipListMap<Integer, FileItem>();
+
+    /** Hält alle Gruppen in einer Map, Schlüssel ist der klein geschriebene Gruppenname. */
+    private final ConcurrentNavigableMap<String, Group> groups = new ConcurrentSkipListMap<String, Group>();
+
+    /** Hält zu jeder Gruppe die klein geschriebenen Namen der Mitglieder. */
+    private final ConcurrentMap<String, Set<String>> groupMembers = new ConcurrentHashMap<String, Set<String>>();
+
+    /** Hält zu jeder Gruppe die IDs der Dateien, die ihr freigegeben wurden. */
+    private final ConcurrentMap<String, Set<Integer>> groupFiles = new ConcurrentHashMap<String, Set<Integer>>();
+
+    /** Hält den Index der Zugriffsrechte. */
+    private final DatabaseAccessIndex access = new DatabaseAccessIndex();
 
     /** Hält die höchste vergebene Datei ID. */
-    private int lastFileId;
+    private final AtomicInteger lastFileId = new AtomicInteger();
 
     /**
      * Geschützter Ctor.
@@ -42,69 +103,206 @@ public abstract class DatabaseModel extends DatabaseStructure {
     /**
      * Aktualisiert die globale Dateien-Tabelle.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param fi
      *            Das {@link FileItem}, mit dem die Tabelle ergänzt werden soll.
-     * @throws DatabaseException
-     *             Wird geworfen, wenn die Tabelle nicht erweitert werden kann.
      */
-    protected void addFileToGlobalTable(final FileItem fi) throws DatabaseException {
-        try {
-            this.files.put(fi.getId(), fi);
+    protected void addFileToGlobalTable(final DatabaseTransaction tx, final FileItem fi) {
+        this.appendToFilesTable(tx, fi);
 
-            this.writeFilesTable(new Vector<FileItem>(this.files.values()));
-        } catch (Exception e) {
-            throw new DatabaseException("Kann die Tabelle nicht ändern!", e);
-        }
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                DatabaseModel.this.files.put(fi.getId(), fi);
+
+                DatabaseModel.this.raiseLastFileId(fi.getId());
+            }
+
+        });
     }
 
     /**
      * Aktualisiert die Benutzertabellen.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param fi
      *            Das {@link FileItem}, das hinzugefügt werden soll.
      * @throws DatabaseException
      *             Wird geworfen, wenn die Tabellen nicht erweitert werden konnten.
      */
-    protected void addFileToUserTable(final FileItem fi) throws DatabaseException {
+    protected void addFileToUserTable(final DatabaseTransaction tx, final FileItem fi) throws DatabaseException {
         try {
             User owner = fi.getOwner();
-            UserDescriptor flo = owner.getDescriptor();
+            final Vector<FileItem> list = owner.getDescriptor().getFileList();
+            Vector<FileItem> items = new Vector<FileItem>(list);
+
+            items.add(fi);
+
+            this.writeUserFilesTable(tx, owner, items);
+
+            tx.afterCommit(new Runnable() {
 
-            flo.getFileList().add(fi);
+                @Override
+                public void run() {
+                    list.add(fi);
+                }
 
-            this.writeUserFilesTable(owner);
+            });
         } catch (Exception e) {
             throw new DatabaseException("Kann die Tabelle nicht updaten!", e);
         }
     }
 
+    /**
+     * Legt eine neue Gruppe mit ihren Tabellen an und nimmt den Gründer als erstes Mitglied auf. Die Gruppentabelle
+     * muss über {@link DatabaseFiles#LOCK} gesperrt sein.
+     * 
+     * @param group
+     *            Die neue, freigeschaltete Gruppe.
+     * @param founder
+     *            Der Gründer der Gruppe.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Gruppe nicht angelegt werden konnte.
+     */
+    protected void addGroup(final Group group, final User founder) throws DatabaseException {
+        try {
+            this.createGroupFiles(group);
+
+            DatabaseTransaction tx = this.beginTransaction();
+
+            this.appendGroupToGroupsTable(tx, group);
+
+            final String key = group.getName().toLowerCase();
+
+            // die Sets müssen vor der Aufnahme des Gründers angelegt werden
+            tx.afterCommit(new Runnable() {
+
+                @Override
+                public void run() {
+                    DatabaseModel.this.groupMembers.put(key, DatabaseModel.<String> newSet());
+                    DatabaseModel.this.groupFiles.put(key, DatabaseModel.<Integer> newSet());
+                }
+
+            });
+
+            this.addMemberToGroup(tx, group, founder);
+
+            this.commit(tx);
+
+            this.groups.put(key, group);
+        } catch (Exception e) {
+            throw new DatabaseException("Kann die Gruppe nicht anlegen!", e);
+        }
+    }
+
+    /**
+     * Nimmt einen Benutzer in eine Gruppe auf. Dafür wird nur der CryptKey der Gruppe mit dem öffentlichen Schlüssel
+     * des Benutzers verpackt; die Gruppe muss deshalb freigeschaltet sein.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param group
+     *            Die Gruppe.
+     * @param user
+     *            Der Benutzer.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der CryptKey nicht verpackt werden kann.
+     */
+    protected void addMemberToGroup(final DatabaseTransaction tx, final Group group, final User user)
+            throws UtilsException {
+        this.appendToGroupMemberTable(tx, group, RsaAppender.compileKey(user.getPublicKey(), group.getCryptKey(),
+                user.getName()));
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                DatabaseModel.this.groupMembers.get(group.getName().toLowerCase()).add(user.getName().toLowerCase());
+            }
+
+        });
+    }
+
     /**
      * Merkt sich beim Besitzer der Datei, wohin er die Datei ausgeliehen hat.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param user
      *            Der Besitzer der Datei.
      * @param file
      *            Die Datei.
-     * @throws IOException
+     * @throws DatabaseException
      *             Wird geworfen, wenn die Tabelle nicht gespeichert werden konnte.
      */
-    protected void addRemarkToOwner(final User user, final FileItem file) throws IOException {
+    protected void addRemarkToOwner(final DatabaseTransaction tx, final User user, final FileItem file)
+            throws DatabaseException {
         User owner = file.getOwner();
-        AesWriter w = AesWriter.createWriter(DatabaseTables.LendTable.getFilename(owner), owner.getCryptKey());
+        final UserFilePairVector list = owner.getDescriptor().getLendList();
+        final UserFilePair ufp = new UserFilePair(user, file);
+        UserFilePairVector pairs = DatabaseModel.copyOf(list);
 
-        Vector<UserFilePair> list = owner.getDescriptor().getLendList();
+        pairs.add(ufp);
 
-        list.add(new UserFilePair(user, file));
+        this.writeLendTable(tx, owner, pairs);
 
-        for (UserFilePair ufp : list) {
-            w.writeLine(ufp.compile());
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                list.add(ufp);
+            }
+
+        });
+    }
+
+    /**
+     * Merkt sich beim Besitzer der Datei, an welche Benutzer er die Datei ausgeliehen hat. Die Lend-Tabelle wird dabei
+     * nur einmal geschrieben.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param users
+     *            Die Benutzer.
+     * @param file
+     *            Die Datei.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Tabelle nicht gespeichert werden konnte.
+     */
+    protected void addRemarksToOwner(final DatabaseTransaction tx, final Collection<User> users, final FileItem file)
+            throws DatabaseException {
+        User owner = file.getOwner();
+        final UserFilePairVector list = owner.getDescriptor().getLendList();
+        final Vector<UserFilePair> added = new Vector<UserFilePair>();
+        UserFilePairVector pairs = DatabaseModel.copyOf(list);
+
+        for (User user : users) {
+            UserFilePair ufp = new UserFilePair(user, file);
+
+            added.add(ufp);
+            pairs.add(ufp);
         }
 
-        w.close();
+        this.writeLendTable(tx, owner, pairs);
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                for (UserFilePair ufp : added) {
+                    list.add(ufp);
+                }
+            }
+
+        });
     }
 
     /**
-     * Fügt einen neuen Benutzer zum Modell hinzu.
+     * Fügt einen neuen Benutzer zum Modell hinzu. Der Benutzer wird so in die Map übernommen, wie er beim nächsten
+     * Laden aus der Benutzertabelle gelesen würde, d.h. mit gesperrtem privaten Schlüssel.
      * 
      * @param user
      *            Der Benutzer.
@@ -117,17 +315,96 @@ public abstract class DatabaseModel extends DatabaseStructure {
         try {
             this.createUserFiles(user);
 
-            this.appendUserToUsersTable(user, pass);
+            DatabaseTransaction tx = this.beginTransaction();
+            String line = this.appendUserToUsersTable(tx, user, pass);
+
+            this.commit(tx);
+
+            this.users.put(user.getName().toLowerCase(), User.parse(line));
         } catch (Exception e) {
             throw new DatabaseException("Kann den Benutzer nicht hinzufügen!", e);
-        } finally {
-            Database.getInstance().shutdown();
         }
     }
 
+    /**
+     * Fügt mehrere fertig kompilierte Benutzer auf einmal hinzu. Die Users-Tabelle wird dabei nur einmal erweitert und
+     * alles in einem einzigen Commit gespeichert. Die Datenbank muss über {@link DatabaseFiles#LOCK} gesperrt sein.
+     * 
+     * @param lines
+     *            Die Zeilen der Benutzer, wie sie von {@link User#compile(String)} erzeugt wurden.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Benutzer nicht hinzugefügt werden konnten.
+     */
+    protected void addUsers(final Collection<String> lines) throws DatabaseException {
+        try {
+            Vector<User> added = new Vector<User>();
+
+            for (String line : lines) {
+                User user = User.parse(line);
+
+                this.createUserFiles(user);
+
+                added.add(user);
+            }
+
+            DatabaseTransaction tx = this.beginTransaction();
+
+            this.appendUsersToUsersTable(tx, lines);
+
+            this.commit(tx);
+
+            for (User user : added) {
+                this.users.put(user.getName().toLowerCase(), user);
+            }
+        } catch (Exception e) {
+            throw new DatabaseException("Kann die Benutzer nicht hinzufügen!", e);
+        }
+    }
+
+    /**
+     * Vergibt die nächste Datei-ID. Jeder Aufruf liefert eine neue ID, auch wenn mehrere Threads gleichzeitig Dateien
+     * anlegen.
+     * 
+     * @return Die neue Datei-ID.
+     */
+    protected int allocateFileId() {
+        return this.lastFileId.incrementAndGet();
+    }
+
+    /**
+     * Entzieht der Gruppe das Recht für die angegebene Datei. Die Gruppentabellen müssen über
+     * {@link DatabaseFiles#LOCK} gesperrt sein.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param group
+     *            Die Gruppe.
+     * @param file
+     *            Die Datei.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Recht nicht entzogen werden konnte.
+     */
+    protected void denyAccessToGroup(final DatabaseTransaction tx, final Group group, final FileItem file)
+            throws DatabaseException {
+        Vector<String> lines = this.rawReadGroupTable(DatabaseGroupTables.AccessTable, group);
+
+        this.writeGroupTable(tx, DatabaseGroupTables.AccessTable, group, this.removeAccess(file, lines));
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                DatabaseModel.this.groupFiles.get(group.getName().toLowerCase()).remove(file.getId());
+            }
+
+        });
+    }
+
     /**
      * Entzieht dem angegebenen Benutzer das Recht für die angegebene Datei.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param user
      *            Der Benutzer.
      * @param file
@@ -135,36 +412,165 @@ public abstract class DatabaseModel extends DatabaseStructure {
      * @throws DatabaseException
      *             Wird geworfen, wenn das Recht nicht entzogen werden konnte.
      */
-    protected void denyAccessToUser(final User user, final FileItem file) throws DatabaseException {
+    protected void denyAccessToUser(final DatabaseTransaction tx, final User user, final FileItem file)
+            throws DatabaseException {
         try {
-            //            String filename = DatabaseTables.AccessTable.getFilename(user);
             Vector<String> lines = this.rawReadAccessTable(user);
 
             lines = this.removeAccess(file, lines);
 
-            this.writeAccessTable(user, lines);
+            this.writeAccessTable(tx, user, lines);
+
+            this.removeFromAclTable(tx, user, file);
+
+            tx.afterCommit(new Runnable() {
+
+                @Override
+                public void run() {
+                    DatabaseModel.this.access.remove(file.getId(), user.getName());
+                }
 
+            });
         } catch (Exception e) {
             throw new DatabaseException("Kann die Access-Tabelle nicht bearbeiten!", e);
         }
     }
 
+    /**
+     * Gibt die Dateien zurück, die dem Benutzer freigegeben wurden. Es wird nur der Index der Zugriffsrechte gelesen.
+     * 
+     * @param user
+     *            Der Benutzer.
+     * @return Die Dateien, aufsteigend nach ID.
+     */
+    protected Vector<FileItem> findGrantedFiles(final User user) {
+        Vector<FileItem> result = new Vector<FileItem>();
+
+        for (int id : this.access.getFiles(user.getName())) {
+            FileItem file = this.files.get(id);
+
+            if (file != null) {
+                result.add(file);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gibt die Benutzer zurück, denen die Datei freigegeben wurde. Es wird nur der Index der Zugriffsrechte gelesen.
+     * 
+     * @param file
+     *            Die Datei.
+     * @return Die Benutzer, nach Namen sortiert.
+     */
+    protected Vector<User> findGrantees(final FileItem file) {
+        Vector<User> result = new Vector<User>();
+
+        for (String name : this.access.getUsers(file.getId())) {
+            User user = this.users.get(name);
+
+            if (user != null) {
+                result.add(user);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gibt die Dateien zurück, die der Gruppe freigegeben wurden.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @return Die Dateien, aufsteigend nach ID.
+     */
+    protected Vector<FileItem> findGroupFiles(final Group group) {
+        Vector<FileItem> result = new Vector<FileItem>();
+        Set<Integer> ids = this.groupFiles.get(group.getName().toLowerCase());
+
+        if (ids != null) {
+            for (int id : new TreeSet<Integer>(ids)) {
+                FileItem file = this.files.get(id);
+
+                if (file != null) {
+                    result.add(file);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gibt die Mitglieder der Gruppe zurück.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @return Die Mitglieder, nach Namen sortiert.
+     */
+    protected Vector<User> findGroupMembers(final Group group) {
+        Vector<User> result = new Vector<User>();
+        Set<String> names = this.groupMembers.get(group.getName().toLowerCase());
+
+        if (names != null) {
+            for (String name : new TreeSet<String>(names)) {
+                User user = this.users.get(name);
+
+                if (user != null) {
+                    result.add(user);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Gibt die Gruppen zurück, in denen der Benutzer Mitglied ist.
+     * 
+     * @param user
+     *            Der Benutzer.
+     * @return Die Gruppen, nach Namen sortiert.
+     */
+    protected Vector<Group> findGroups(final User user) {
+        Vector<Group> result = new Vector<Group>();
+        String name = user.getName().toLowerCase();
+
+        for (Group group : this.groups.values()) {
+            if (this.groupMembers.get(group.getName().toLowerCase()).contains(name)) {
+                result.add(group);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Gibt die Datei-Map zurück.
      * 
      * @return Die Datei-Map.
      */
-    protected TreeMap<Integer, FileItem> getFileMap() {
+    protected ConcurrentNavigableMap<Integer, FileItem> getFileMap() {
         return this.files;
     }
 
+    /**
+     * Gibt die Gruppen-Map zurück.
+     * 
+     * @return Die Gruppen-Map.
+     */
+    protected ConcurrentNavigableMap<String, Group> getGroupMap() {
+        return this.groups;
+    }
+
     /**
      * Gibt die höchste Datei-ID zurück.
      * 
      * @return Die höchste Datei-ID.
      */
     protected int getLastFileId() {
-        return this.lastFileId;
+        return this.lastFileId.get();
     }
 
     /**
@@ -172,25 +578,211 @@ public abstract class DatabaseModel extends DatabaseStructure {
      * 
      * @return Die Benutzer-Map.
      */
-    protected TreeMap<String, User> getUserMap() {
+    protected ConcurrentNavigableMap<String, User> getUserMap() {
         return this.users;
     }
 
+    /**
+     * Gibt die Datei der Gruppe frei. Der Dateischlüssel wird dafür nur einmal mit dem öffentlichen Schlüssel der
+     * Gruppe verpackt, unabhängig von der Anzahl der Mitglieder.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param group
+     *            Die Gruppe.
+     * @param file
+     *            Die Datei.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der Dateischlüssel nicht verpackt werden konnte.
+     * @throws FileItemException
+     *             Wird geworfen, wenn der Dateischlüssel nicht verfügbar ist.
+     */
+    protected void grantAccessToGroup(final DatabaseTransaction tx, final Group group, final FileItem file)
+            throws UtilsException, FileItemException {
+        this.appendToGroupAccessTable(tx, group, RsaAppender.compileKey(group.getPublicKey(), file.getKey(), Integer
+                .toString(file.getId())));
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                DatabaseModel.this.groupFiles.get(group.getName().toLowerCase()).add(file.getId());
+            }
+
+        });
+    }
+
     /**
      * Fügt das Nutzungsrecht in der Access-Tabelle des {@link User} hinzu.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param user
      *            Der Benutzer.
      * @param file
      *            Die Datei.
      * @throws UtilsException
-     *             Wird geworfen, wenn die Tabelle nicht geschrieben werden konnte.
+     *             Wird geworfen, wenn der Dateischlüssel nicht verpackt werden konnte.
+     * @throws FileItemException
+     *             Wird geworfen, wenn der Dateischlüssel nicht verfügbar ist.
+     */
+    protected void grantAccessToUser(final DatabaseTransaction tx, final User user, final FileItem file)
+            throws UtilsException, FileItemException {
+        this.appendToAccessTable(tx, user, RsaAppender.compileKey(user.getPublicKey(), file.getKey(),
+                Integer.toString(file.getId())));
+
+        this.appendToAclTable(tx, user, file);
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                DatabaseModel.this.access.add(file.getId(), user.getName());
+            }
+
+        });
+    }
+
+    /**
+     * Fügt das Nutzungsrecht in den Access-Tabellen mehrerer {@link User} hinzu. Der Dateischlüssel wird dabei parallel
+     * für alle Benutzer verpackt.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param users
+     *            Die Benutzer.
+     * @param file
+     *            Die Datei.
+     * @throws UtilsException
+     *             Wird geworfen, wenn der Dateischlüssel nicht verpackt werden konnte.
+     * @throws FileItemException
+     *             Wird geworfen, wenn der Dateischlüssel nicht verfügbar ist.
+     */
+    protected void grantAccessToUsers(final DatabaseTransaction tx, final Vector<User> users, final FileItem file)
+            throws UtilsException, FileItemException {
+        PublicKey[] publicKeys = new PublicKey[users.size()];
+
+        for (int i = 0; i < publicKeys.length; i++) {
+            publicKeys[i] = users.get(i).getPublicKey();
+        }
+
+        String[] lines = RsaAppender.compileKeys(publicKeys, file.getKey(), Integer.toString(file.getId()), Runtime
+                .getRuntime().availableProcessors());
+
+        for (int i = 0; i < lines.length; i++) {
+            User user = users.get(i);
+
+            this.appendToAccessTable(tx, user, lines[i]);
+
+            this.appendToAclTable(tx, user, file);
+        }
+
+        final Vector<User> granted = new Vector<User>(users);
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                for (User user : granted) {
+                    DatabaseModel.this.access.add(file.getId(), user.getName());
+                }
+            }
+
+        });
+    }
+
+    /**
+     * Ermittelt über den Index der Zugriffsrechte, ob die Datei dem Benutzer freigegeben wurde.
+     * 
+     * @param user
+     *            Der Benutzer.
+     * @param file
+     *            Die Datei.
+     * @return <code>true</code>, wenn die Freigabe existiert.
+     */
+    protected boolean isGranted(final User user, final FileItem file) {
+        return this.access.contains(file.getId(), user.getName());
+    }
+
+    /**
+     * Ermittelt, ob der Benutzer Mitglied der Gruppe ist.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @param user
+     *            Der Benutzer.
+     * @return <code>true</code>, wenn der Benutzer Mitglied ist.
+     */
+    protected boolean isGroupMember(final Group group, final User user) {
+        Set<String> names = this.groupMembers.get(group.getName().toLowerCase());
+
+        return (names != null) && names.contains(user.getName().toLowerCase());
+    }
+
+    /**
+     * Ermittelt, ob die Datei der Gruppe freigegeben wurde.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @param file
+     *            Die Datei.
+     * @return <code>true</code>, wenn die Freigabe existiert.
+     */
+    protected boolean isSharedWithGroup(final Group group, final FileItem file) {
+        Set<Integer> ids = this.groupFiles.get(group.getName().toLowerCase());
+
+        return (ids != null) && ids.contains(file.getId());
+    }
+
+    /**
+     * Lädt die Dateien, die den Gruppen des Benutzers freigegeben wurden. Pro Gruppe wird dabei nur der CryptKey der
+     * Gruppe mit dem privaten Schlüssel des Benutzers entpackt; die Dateischlüssel werden wie bei
+     * {@link #loadUserAccessTable(User)} erst beim ersten Öffnen mit dem privaten Schlüssel der Gruppe entpackt.
+     * 
+     * @param user
+     *            Der freigeschaltete Benutzer.
+     * @return Die Dateien aller Gruppen des Benutzers.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn eine der Gruppentabellen nicht gelesen oder eine Gruppe nicht freigeschaltet
+     *             werden kann.
      */
-    protected void grantAccessToUser(final User user, final FileItem file) throws UtilsException {
-        String filename = DatabaseTables.AccessTable.getFilename(user);
-        String messge = Utils.serializeKeyHex(file.getKey());
+    protected Vector<FileItem> loadGroupFiles(final User user) throws DatabaseException {
+        Vector<FileItem> result = new Vector<FileItem>();
+
+        DatabaseFiles.LOCK.lock();
+
+        try {
+            for (Group group : this.findGroups(user)) {
+                if (group.getPrivateKey() == null) {
+                    this.unlockGroup(group, user);
+                }
+
+                for (String line : this.rawReadGroupTable(DatabaseGroupTables.AccessTable, group)) {
+                    String[] cols = line.split(DatabaseStructure.SEPARATOR);
+                    FileItem file = this.files.get(Integer.parseInt(cols[0]));
+
+                    if ((file != null) && !result.contains(file)) {
+                        SecretKey known = user.getFileKey(file.getId());
+
+                        if (known != null) {
+                            file.setKey(known);
+                        } else {
+                            file.addWrappedKey(Utils.fromHexLine(cols[2]), group, user);
+                        }
+
+                        result.add(file);
+                    }
+                }
+            }
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseException("Kann die Dateien der Gruppen nicht laden!", e);
+        } finally {
+            DatabaseFiles.LOCK.unlock();
+        }
 
-        RsaAppender.appendLine(filename, user.getPublicKey(), messge, Integer.toString(file.getId()));
+        return result;
     }
 
     /**
@@ -207,9 +799,15 @@ public abstract class DatabaseModel extends DatabaseStructure {
         try {
             this.testBaseStructure();
 
+            this.recoverTables();
+
             this.fetchUsers();
 
             this.fetchFiles();
+
+            this.fetchAccessIndex();
+
+            this.fetchGroups();
         } catch (Exception e) {
             throw new DatabaseException("Kann die Datenbankstruktur nicht laden!", e);
         } finally {
@@ -218,55 +816,152 @@ public abstract class DatabaseModel extends DatabaseStructure {
     }
 
     /**
-     * Entfernt das Zugriffsrecht für alle Benutzer, denen das Recht zugewiesen wurde, aus der Datenbank.
+     * Entfernt das Zugriffsrecht für alle Benutzer, denen das Recht zugewiesen wurde, aus der Datenbank. Die Benutzer
+     * werden dem Index der Zugriffsrechte entnommen, nicht der Lend-Tabelle des Besitzers. Jede Access-Tabelle wird
+     * dabei einmal gelesen und die Lend-Tabelle des Besitzers nur einmal am Ende verschlüsselt, unabhängig davon, wie
+     * vielen Benutzern die Datei freigegeben war.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param item
      *            Die Datei.
      * @throws DatabaseException
      *             Wird geworfen, wenn das Recht nicht allen beteiligten Benutzern entzogen werden konnte.
      */
-    protected void removeFileFromAccessTables(final FileItem item) throws DatabaseException {
+    protected void removeFileFromAccessTables(final DatabaseTransaction tx, final FileItem item)
+            throws DatabaseException {
+        for (User user : this.findGrantees(item)) {
+            this.denyAccessToUser(tx, user, item);
+        }
+
         User owner = item.getOwner();
-        Vector<User> deptors = owner.getDescriptor().getLendList().getDeptors(item);
+        final UserFilePairVector list = owner.getDescriptor().getLendList();
+        UserFilePairVector pairs = DatabaseModel.copyOf(list);
 
-        for (User user : deptors) {
-            Database.getInstance().denyAccess(user, item);
+        if (!pairs.removeFile(item).isEmpty()) {
+            this.writeLendTable(tx, owner, pairs);
+
+            tx.afterCommit(new Runnable() {
+
+                @Override
+                public void run() {
+                    list.removeFile(item);
+                }
+
+            });
         }
     }
 
     /**
      * Entfernt den Dateieintrag aus der globalen Dateientabelle.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param item
      *            Die Datei.
-     * @throws DatabaseException
-     *             Wird geworfen, wenn die Datei nicht entfernt werden konnte.
      */
-    protected void removeFileFromGlobalTable(final FileItem item) throws DatabaseException {
-        this.files.remove(item.getId());
+    protected void removeFileFromGlobalTable(final DatabaseTransaction tx, final FileItem item) {
+        this.removeFromFilesTable(tx, item);
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                DatabaseModel.this.files.remove(item.getId());
+            }
+
+        });
+    }
 
-        this.writeFilesTable(new Vector<FileItem>(this.files.values()));
+    /**
+     * Entzieht allen Gruppen, denen die Datei freigegeben wurde, das Zugriffsrecht. Die Gruppentabellen müssen über
+     * {@link DatabaseFiles#LOCK} gesperrt sein.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param item
+     *            Die Datei.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Recht nicht allen Gruppen entzogen werden konnte.
+     */
+    protected void removeFileFromGroupTables(final DatabaseTransaction tx, final FileItem item)
+            throws DatabaseException {
+        for (Group group : this.groups.values()) {
+            if (this.isSharedWithGroup(group, item)) {
+                this.denyAccessToGroup(tx, group, item);
+            }
+        }
     }
 
     /**
      * Entfernt die Datei aus der Datei-Tabelle des Besitzers.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param item
      *            Die Datei
      * @throws DatabaseException
      *             Wird geworfen, wenn die Datei nicht entfernt werden konnte.
      */
-    protected void removeFileFromOwnerTable(final FileItem item) throws DatabaseException {
+    protected void removeFileFromOwnerTable(final DatabaseTransaction tx, final FileItem item)
+            throws DatabaseException {
         User owner = item.getOwner();
+        final Vector<FileItem> list = owner.getDescriptor().getFileList();
+        Vector<FileItem> items = new Vector<FileItem>(list);
+
+        items.remove(item);
+
+        this.writeUserFilesTable(tx, owner, items);
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                list.remove(item);
+            }
+
+        });
+    }
 
-        owner.getDescriptor().getFileList().remove(item);
+    /**
+     * Entfernt einen Benutzer aus der Gruppe. Die Gruppentabellen müssen über {@link DatabaseFiles#LOCK} gesperrt sein.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param group
+     *            Die Gruppe.
+     * @param user
+     *            Der Benutzer.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Mitglieder-Tabelle nicht bearbeitet werden konnte.
+     */
+    protected void removeMemberFromGroup(final DatabaseTransaction tx, final Group group, final User user)
+            throws DatabaseException {
+        Vector<String> lines = new Vector<String>();
+
+        for (String line : this.rawReadGroupTable(DatabaseGroupTables.MemberTable, group)) {
+            if (!line.split(DatabaseStructure.SEPARATOR)[0].equalsIgnoreCase(user.getName())) {
+                lines.add(line);
+            }
+        }
+
+        this.writeGroupTable(tx, DatabaseGroupTables.MemberTable, group, lines);
+
+        tx.afterCommit(new Runnable() {
+
+            @Override
+            public void run() {
+                DatabaseModel.this.groupMembers.get(group.getName().toLowerCase()).remove(user.getName().toLowerCase());
+            }
 
-        this.writeUserFilesTable(owner);
+        });
     }
 
     /**
      * Entfernt den Leihverweis aus der Lend-Tabelle des Benutzers.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param user
      *            Der Benutzer.
      * @param file
@@ -274,25 +969,101 @@ public abstract class DatabaseModel extends DatabaseStructure {
      * @throws DatabaseException
      *             Wird geworfen, wenn die Datei nicht entfernt werden konnte.
      */
-    protected void removeRemarkFromOwner(final User user, final FileItem file) throws DatabaseException {
+    protected void removeRemarkFromOwner(final DatabaseTransaction tx, final User user, final FileItem file)
+            throws DatabaseException {
         try {
             User owner = file.getOwner();
-            AesWriter w = AesWriter.createWriter(DatabaseTables.LendTable.getFilename(owner), owner.getCryptKey());
+            final UserFilePairVector list = owner.getDescriptor().getLendList();
+            final UserFilePair ufp = new UserFilePair(user, file);
+            UserFilePairVector pairs = DatabaseModel.copyOf(list);
 
-            UserFilePairVector list = owner.getDescriptor().getLendList();
+            pairs.remove(ufp);
 
-            list.remove(new UserFilePair(user, file));
+            this.writeLendTable(tx, owner, pairs);
 
-            for (UserFilePair ufp : list) {
-                w.writeLine(ufp.compile());
-            }
+            tx.afterCommit(new Runnable() {
+
+                @Override
+                public void run() {
+                    list.remove(ufp);
+                }
 
-            w.close();
+            });
         } catch (Exception e) {
             throw new DatabaseException("Kann Datei nicht entfernen!", e);
         }
     }
 
+    /**
+     * Schaltet die Gruppe für ein Mitglied frei. Der CryptKey der Gruppe wird dafür aus der Mitglieder-Tabelle gelesen
+     * und mit dem privaten Schlüssel des Mitglieds entpackt.
+     * 
+     * @param group
+     *            Die Gruppe.
+     * @param user
+     *            Das freigeschaltete Mitglied.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Benutzer kein Mitglied ist oder die Gruppe nicht freigeschaltet werden kann.
+     */
+    protected void unlockGroup(final Group group, final User user) throws DatabaseException {
+        try {
+            for (String line : this.rawReadGroupTable(DatabaseGroupTables.MemberTable, group)) {
+                String[] cols = line.split(DatabaseStructure.SEPARATOR);
+
+                if (cols[0].equalsIgnoreCase(user.getName())) {
+                    group.unlock(RsaCrypto.unwrap(Utils.fromHexLine(cols[2]), user.getPrivateKey()));
+
+                    return;
+                }
+            }
+        } catch (UtilsException e) {
+            throw new DatabaseException("Kann die Gruppe nicht freischalten!", e);
+        }
+
+        throw new DatabaseException("Der Benutzer ist kein Mitglied der Gruppe!");
+    }
+
+    /**
+     * Lädt den Index der Zugriffsrechte. Gibt es noch keinen Index, wird er einmalig aus den Access-Tabellen aller
+     * Benutzer aufgebaut; deren erste Spalte ist unverschlüsselt.
+     * 
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Index nicht geladen oder aufgebaut werden kann.
+     */
+    private void fetchAccessIndex() throws DatabaseException {
+        if (this.hasAclTable()) {
+            for (String record : this.loadAclTable()) {
+                this.access.add(record);
+            }
+
+            return;
+        }
+
+        try {
+            DatabaseTransaction tx = this.beginTransaction();
+
+            for (User user : this.users.values()) {
+                for (String line : this.rawReadAccessTable(user)) {
+                    FileItem file = this.files.get(Integer.parseInt(line.split(DatabaseStructure.SEPARATOR)[0]));
+
+                    if (file != null) {
+                        this.appendToAclTable(tx, user, file);
+
+                        this.access.add(file.getId(), user.getName());
+                    }
+                }
+            }
+
+            this.commit(tx);
+
+            this.createAclTable();
+
+            System.out.println("Index der Zugriffsrechte aus den Access-Tabellen aufgebaut.");
+        } catch (IOException e) {
+            throw new DatabaseException("Kann den Index der Zugriffsrechte nicht aufbauen!", e);
+        }
+    }
+
     /**
      * Ermittelt die Dateien.
      * 
@@ -301,13 +1072,36 @@ public abstract class DatabaseModel extends DatabaseStructure {
      */
     private void fetchFiles() throws DatabaseException {
         for (FileItem file : this.loadFilesTable()) {
-            int id = file.getId();
+            this.raiseLastFileId(file.getId());
+
+            this.files.put(file.getId(), file);
+        }
+    }
+
+    /**
+     * Lädt die Gruppen mit ihren Mitgliedern und Dateien. Aus den Gruppentabellen wird dafür nur die erste,
+     * unverschlüsselte Spalte gelesen.
+     * 
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Gruppen nicht ermittelt werden können.
+     */
+    private void fetchGroups() throws DatabaseException {
+        for (Group group : this.loadGroupsTable()) {
+            String key = group.getName().toLowerCase();
+            Set<String> members = DatabaseModel.newSet();
+            Set<Integer> ids = DatabaseModel.newSet();
 
-            if (id > this.lastFileId) {
-                this.lastFileId = id;
+            for (String line : this.rawReadGroupTable(DatabaseGroupTables.MemberTable, group)) {
+                members.add(line.split(DatabaseStructure.SEPARATOR)[0].toLowerCase());
             }
 
-            this.files.put(file.getId(), file);
+            for (String line : this.rawReadGroupTable(DatabaseGroupTables.AccessTable, group)) {
+                ids.add(Integer.parseInt(line.split(DatabaseStructure.SEPARATOR)[0]));
+            }
+
+            this.groupMembers.put(key, members);
+            this.groupFiles.put(key, ids);
+            this.groups.put(key, group);
         }
     }
 
@@ -324,27 +1118,16 @@ public abstract class DatabaseModel extends DatabaseStructure {
     }
 
     /**
-     * Ließt die Access-Tabelle im Rohformat aus.
+     * Setzt die höchste vergebene Datei-ID auf die angegebene ID, falls diese größer ist.
      * 
-     * @param user
-     *            Der Dateiname der Access-Tabelle.
-     * @return Gibt die Tabelle im Rohformat zurück.
-     * @throws DatabaseException
-     *             Wird geworfen, wenn die Tabellen nicht gelesen werden konnte.
+     * @param id
+     *            Die Datei-ID.
      */
-    private Vector<String> rawReadAccessTable(final User user) throws DatabaseException {
-        try {
-            return (new DatabaseTableReader<String>(Utils.createBufferedReader(DatabaseTables.AccessTable
-                    .getFilename(user))) {
+    private void raiseLastFileId(final int id) {
+        int last = this.lastFileId.get();
 
-                @Override
-                protected String process(final String line) throws Exception {
-                    return line;
-                }
-
-            }).getResult();
-        } catch (Exception e) {
-            throw new DatabaseException("Kann Access-Tabelle nicht lesen!", e);
+        while ((id > last) && !this.lastFileId.compareAndSet(last, id)) {
+            last = this.lastFileId.get();
         }
     }
 
@@ -371,4 +1154,5 @@ public abstract class DatabaseModel extends DatabaseStructure {
         return temp;
     }
 
+
 }
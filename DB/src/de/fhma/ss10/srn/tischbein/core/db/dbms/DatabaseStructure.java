@@ -1,8 +1,12 @@
 package de.fhma.ss10.srn.tischbein.core.db.dbms;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 import java.security.PrivateKey;
+import java.util.Collection;
 import java.util.Vector;
 
 import javax.crypto.SecretKey;
@@ -10,10 +14,12 @@ import javax.crypto.SecretKey;
 import de.fhma.ss10.srn.tischbein.core.Utils;
 import de.fhma.ss10.srn.tischbein.core.crypto.AesReader;
 import de.fhma.ss10.srn.tischbein.core.crypto.AesWriter;
-import de.fhma.ss10.srn.tischbein.core.crypto.RsaReader;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaAppender;
+import de.fhma.ss10.srn.tischbein.core.crypto.RsaCrypto;
 import de.fhma.ss10.srn.tischbein.core.db.Database;
 import de.fhma.ss10.srn.tischbein.core.db.DatabaseException;
 import de.fhma.ss10.srn.tischbein.core.db.FileItem;
+import de.fhma.ss10.srn.tischbein.core.db.Group;
 import de.fhma.ss10.srn.tischbein.core.db.User;
 import de.fhma.ss10.srn.tischbein.core.db.UserDescriptor.UserFilePair;
 import de.fhma.ss10.srn.tischbein.core.db.UserDescriptor.UserFilePairVector;
@@ -27,6 +33,15 @@ public abstract class DatabaseStructure extends DatabaseFiles {
 
     /** CSV-Separator. */
     public static final String SEPARATOR = ";";
+    /** Zeichensatz der unverschlüsselten Tabellen, unabhängig von der Plattform. */
+    public static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** Hält das Log des Index der Zugriffsrechte. */
+    private final DatabaseLog aclLog = new DatabaseLog(DatabaseFiles.DB_ACL_TB);
+    /** Hält das Log der globalen Dateien-Tabelle. */
+    private final DatabaseLog filesLog = new DatabaseLog(DatabaseFiles.DB_FILES_TB);
+    /** Hält das Journal, über das alle Tabellen geschrieben werden. */
+    private final DatabaseJournal journal = new DatabaseJournal(DatabaseFiles.DB_JOURNAL);
 
     /**
      * Geschützter Ctor.
@@ -35,38 +50,227 @@ public abstract class DatabaseStructure extends DatabaseFiles {
         super();
     }
 
+    /**
+     * Speichert eine Gruppe an das Ende der Gruppentabelle.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param group
+     *            Die Gruppe.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Gruppe nicht kompiliert werden kann.
+     */
+    protected void appendGroupToGroupsTable(final DatabaseTransaction tx, final Group group)
+            throws DatabaseException {
+        try {
+            tx.append(DatabaseFiles.DB_GROUPS_TB, (group.compile() + "\n").getBytes(DatabaseStructure.CHARSET));
+        } catch (Exception e) {
+            throw new DatabaseException("Fehler beim Schreiben in die Gruppen-Tabelle!", e);
+        }
+    }
+
+    /**
+     * Hängt eine Zeile an die Access-Tabelle des Benutzers an.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param user
+     *            Der Benutzer.
+     * @param line
+     *            Die Zeile.
+     */
+    protected void appendToAccessTable(final DatabaseTransaction tx, final User user, final String line) {
+        tx.append(DatabaseTables.AccessTable.getFilename(user), (line + "\n").getBytes(DatabaseStructure.CHARSET));
+    }
+
+    /**
+     * Hängt eine Freigabe an das Log des Index der Zugriffsrechte an.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param user
+     *            Der Benutzer, dem die Datei freigegeben wird.
+     * @param item
+     *            Die Datei.
+     */
+    protected void appendToAclTable(final DatabaseTransaction tx, final User user, final FileItem item) {
+        tx.log(DatabaseFiles.DB_ACL_TB, DatabaseAccessIndex.compile(item.getId(), user.getName()));
+    }
+
+    /**
+     * Hängt eine Datei an das Log der globalen Dateien-Tabelle an.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param item
+     *            Die Datei.
+     */
+    protected void appendToFilesTable(final DatabaseTransaction tx, final FileItem item) {
+        tx.log(DatabaseFiles.DB_FILES_TB, item.compile());
+    }
+
+    /**
+     * Hängt eine Zeile an die Access-Tabelle der Gruppe an.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param group
+     *            Die Gruppe.
+     * @param line
+     *            Die Zeile.
+     */
+    protected void appendToGroupAccessTable(final DatabaseTransaction tx, final Group group, final String line) {
+        tx.append(DatabaseGroupTables.AccessTable.getFilename(group), (line + "\n")
+                .getBytes(DatabaseStructure.CHARSET));
+    }
+
+    /**
+     * Hängt eine Zeile an die Mitglieder-Tabelle der Gruppe an.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param group
+     *            Die Gruppe.
+     * @param line
+     *            Die Zeile.
+     */
+    protected void appendToGroupMemberTable(final DatabaseTransaction tx, final Group group, final String line) {
+        tx.append(DatabaseGroupTables.MemberTable.getFilename(group), (line + "\n")
+                .getBytes(DatabaseStructure.CHARSET));
+    }
+
     /**
      * Speichert einen User an das Ende der Benutzertabelle.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param user
      *            Das Benutzerobjekt.
      * @param pass
      *            Das Benutzerpasswort mit dem der private Schlüssel verschlüsselt wird.
+     * @return Gibt die geschriebene Tabellenzeile zurück.
      * @throws DatabaseException
      *             Wird geworfen, wenn der neue Benutzer nicht zur Benutertabelle hinzugefügt werden konnte.
      */
-    protected void appendUserToUsersTable(final User user, final String pass) throws DatabaseException {
-        DatabaseFiles.LOCK.lock();
-
+    protected String appendUserToUsersTable(final DatabaseTransaction tx, final User user, final String pass)
+            throws DatabaseException {
         try {
-            BufferedWriter fw = Utils.createBufferedWriter(DatabaseFiles.DB_USERS_TB, true);
+            String line = user.compile(pass);
 
-            fw.append(user.compile(pass));
-            fw.append("\n");
+            tx.append(DatabaseFiles.DB_USERS_TB, (line + "\n").getBytes(DatabaseStructure.CHARSET));
 
-            fw.flush();
-            fw.close();
-
-            Database.getInstance().shutdown();
+            return line;
         } catch (Exception e) {
             throw new DatabaseException("Fehler beim Schreiben in die Users-Tabelle!", e);
-        } finally {
-            DatabaseFiles.LOCK.unlock();
         }
     }
 
     /**
-     * Ließt die eigentliche Dateien-Tabelle aus.
+     * Hängt mehrere fertig kompilierte Benutzer mit einem einzigen Schreibvorgang an die Users-Tabelle an.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param lines
+     *            Die Zeilen der Benutzer, wie sie von {@link User#compile(String)} erzeugt wurden.
+     */
+    protected void appendUsersToUsersTable(final DatabaseTransaction tx, final Collection<String> lines) {
+        StringBuilder batch = new StringBuilder();
+
+        for (String line : lines) {
+            batch.append(line).append("\n");
+        }
+
+        tx.append(DatabaseFiles.DB_USERS_TB, batch.toString().getBytes(DatabaseStructure.CHARSET));
+    }
+
+    /**
+     * Beginnt eine neue Transaktion. Die Tabellen, die in der Transaktion geändert werden, müssen bis zum
+     * {@link #commit(DatabaseTransaction)} gesperrt bleiben.
+     * 
+     * @return Die Transaktion.
+     */
+    protected DatabaseTransaction beginTransaction() {
+        return new DatabaseTransaction();
+    }
+
+    /**
+     * Schließt die Tabellen-Logs und das Journal. Eine laufende Kompaktierung wird noch beendet.
+     */
+    protected void closeTables() {
+        this.journal.close();
+        this.filesLog.close();
+        this.aclLog.close();
+    }
+
+    /**
+     * Schreibt die Transaktion zuerst in das Journal und dann in die Tabellen. Gleichzeitige Commits anderer Threads
+     * werden dabei mit einer einzigen Synchronisation des Journals geschrieben. Erst danach werden die vorgemerkten
+     * Änderungen am Speicherabbild ausgeführt.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Transaktion nicht geschrieben werden kann. Konnte sie noch in das Journal
+     *             geschrieben werden, wird sie beim nächsten Öffnen der Datenbank wiederholt.
+     */
+    protected void commit(final DatabaseTransaction tx) throws DatabaseException {
+        if (tx.isEmpty()) {
+            tx.committed();
+
+            return;
+        }
+
+        this.journal.write(tx);
+
+        try {
+            this.apply(tx);
+        } catch (DatabaseException e) {
+            this.journal.failed();
+
+            throw e;
+        }
+
+        this.journal.applied();
+
+        tx.committed();
+    }
+
+    /**
+     * Legt das Log des Index der Zugriffsrechte an, falls es noch nicht existiert.
+     * 
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht angelegt werden kann.
+     */
+    protected void createAclTable() throws IOException {
+        if (new File(DatabaseFiles.DB_ACL_TB).createNewFile()) {
+            System.out.println("Index der Zugriffsrechte angelegt.");
+        }
+    }
+
+    /**
+     * Ermittelt, ob der Index der Zugriffsrechte schon angelegt wurde. Datenbanken aus älteren Versionen haben noch
+     * keinen Index.
+     * 
+     * @return <code>true</code>, wenn das Log des Index existiert.
+     */
+    protected boolean hasAclTable() {
+        return new File(DatabaseFiles.DB_ACL_TB).exists();
+    }
+
+    /**
+     * Ließt den Index der Zugriffsrechte aus, indem das Log abgespielt wird.
+     * 
+     * @return Die Datensätze der Freigaben.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn der Index nicht geladen werden konnte.
+     */
+    protected Vector<String> loadAclTable() throws DatabaseException {
+        return this.aclLog.replay();
+    }
+
+    /**
+     * Ließt die eigentliche Dateien-Tabelle aus, indem das Log abgespielt wird. Das Log wird dazu blockweise gelesen;
+     * nur die lebenden Datensätze werden in {@link FileItem}s gewandelt.
      * 
      * @return Gibt die {@link FileItem} als {@link Vector} zurück.
      * @throws DatabaseException
@@ -74,27 +278,57 @@ public abstract class DatabaseStructure extends DatabaseFiles {
      */
     protected Vector<FileItem> loadFilesTable() throws DatabaseException {
         try {
-            BufferedReader reader = Utils.createBufferedReader(DatabaseFiles.DB_FILES_TB);
+            Vector<FileItem> result = new Vector<FileItem>();
+            DatabaseTableScanner table = this.filesLog.scan();
 
-            DatabaseTableReader<FileItem> lr = new DatabaseTableReader<FileItem>(reader) {
+            try {
+                for (long offset : this.filesLog.replay(table)) {
+                    table.seek(offset);
+                    table.next();
 
-                @Override
-                protected FileItem process(final String line) throws Exception {
-                    FileItem file = FileItem.parse(null, line);
-
-                    return file;
+                    result.add(FileItem.parse(null, table.getInt(FileItem.COLUMN_ID), table
+                            .getString(FileItem.COLUMN_NAME), table.getHex(FileItem.COLUMN_HASH)));
                 }
+            } finally {
+                table.close();
+            }
 
-            };
-
-            return lr.getResult();
+            return result;
         } catch (Exception e) {
             throw new DatabaseException("Kann die Dateien-Tabelle nicht laden!", e);
         }
     }
 
     /**
-     * Lädt die Zugriffsrechte eines Benutzer und gibt die Dateien zurück, auf die der Benutzer Zugriff hat.
+     * Lädt die Gruppentabelle. Alle Gruppen sind danach gesperrt.
+     * 
+     * @return Gibt die Gruppen als {@link Vector} zurück.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Tabelle nicht geladen werden kann.
+     */
+    protected Vector<Group> loadGroupsTable() throws DatabaseException {
+        try {
+            return (new DatabaseTableReader<Group>(Utils.createBufferedReader(DatabaseFiles.DB_GROUPS_TB,
+                    DatabaseStructure.CHARSET)) {
+
+                @Override
+                protected Group process(final String line) throws Exception {
+                    return Group.parse(line);
+                }
+
+            }).getResult();
+        } catch (Exception e) {
+            throw new DatabaseException("Kann die Gruppentabelle nicht laden!", e);
+        }
+    }
+
+    /**
+     * Lädt die Zugriffsrechte eines Benutzer und gibt die Dateien zurück, auf die der Benutzer Zugriff hat. Die
+     * verpackten Dateischlüssel werden dabei nur an die Dateien gehängt und erst beim ersten Öffnen der Datei
+     * entpackt, so dass das Anmelden unabhängig von der Anzahl der freigegebenen Dateien ist.
+     * <p>
+     * Zeilen im alten Format, in dem der serialisierte Schlüssel blockweise RSA-verschlüsselt wurde, müssen dagegen
+     * sofort entschlüsselt werden. Sie werden dabei in das neue Format umgeschrieben, so dass das nur einmal nötig ist.
      * 
      * @param user
      *            Der Benutzerkontext.
@@ -104,23 +338,51 @@ public abstract class DatabaseStructure extends DatabaseFiles {
      */
     protected Vector<FileItem> loadUserAccessTable(final User user) throws DatabaseException {
         try {
-            String filename = DatabaseTables.AccessTable.getFilename(user);
             PrivateKey privateKey = user.getPrivateKey();
-            RsaReader reader = RsaReader.createReader(filename, privateKey);
+            Vector<FileItem> result = new Vector<FileItem>();
+            Vector<String> migrated = new Vector<String>();
+            boolean legacy = false;
 
-            return (new DatabaseTableReader<FileItem>(reader) {
+            for (String line : this.rawReadAccessTable(user)) {
+                String[] cols = line.split(DatabaseStructure.SEPARATOR);
+                FileItem file = Database.getInstance().getFile(Integer.parseInt(cols[0]));
 
-                @Override
-                protected FileItem process(final String line) throws Exception {
-                    String[] cols = line.split(DatabaseStructure.SEPARATOR);
-                    FileItem file = Database.getInstance().getFile(Integer.parseInt(cols[0]));
+                if ((cols.length > 2) && RsaAppender.WRAPPED_KEY.equals(cols[1])) {
+                    SecretKey known = user.getFileKey(file.getId());
 
-                    file.setKey((SecretKey) Utils.deserializeKeyHex(cols[1]));
+                    if (known != null) {
+                        file.setKey(known);
+                    } else {
+                        file.addWrappedKey(Utils.fromHexLine(cols[2]), user, user);
+                    }
 
-                    return file;
+                    migrated.add(line);
+                } else {
+                    String serialized = new String(RsaCrypto.decode(Utils.fromHexLine(cols[1]), privateKey));
+                    SecretKey key = (SecretKey) Utils.deserializeKeyHex(serialized);
+
+                    file.setKey(key);
+                    user.rememberFileKey(file.getId(), key);
+
+                    legacy = true;
+
+                    migrated.add(RsaAppender.compileKey(user.getPublicKey(), key, cols[0]));
                 }
 
-            }).getResult();
+                result.add(file);
+            }
+
+            if (legacy) {
+                DatabaseTransaction tx = this.beginTransaction();
+
+                this.writeAccessTable(tx, user, migrated);
+
+                this.commit(tx);
+
+                System.out.println("Access-Tabelle von " + user.getName() + " migriert.");
+            }
+
+            return result;
         } catch (Exception e) {
             throw new DatabaseException("Kann die Access-Tabelle nicht laden!", e);
         }
@@ -147,8 +409,15 @@ public abstract class DatabaseStructure extends DatabaseFiles {
 
                     int id = Integer.parseInt(cols[0]);
                     FileItem file = Database.getInstance().getFile(id);
+                    SecretKey key = user.getFileKey(id);
+
+                    if (key == null) {
+                        key = (SecretKey) Utils.deserializeKeyHex(cols[1]);
 
-                    file.setKey((SecretKey) Utils.deserializeKeyHex(cols[1]));
+                        user.rememberFileKey(id, key);
+                    }
+
+                    file.setKey(key);
                     file.setOwner(user);
 
                     return file;
@@ -189,7 +458,8 @@ public abstract class DatabaseStructure extends DatabaseFiles {
     }
 
     /**
-     * Lädt die Benutzertabelle. Im Fehlerfall bleiben die geladenen Benutzer unverändert.
+     * Lädt die Benutzertabelle. Im Fehlerfall bleiben die geladenen Benutzer unverändert. Die Tabelle wird blockweise
+     * gelesen und direkt im Puffer zerlegt; die Schlüsselspalten werden ohne Umweg über Strings dekodiert.
      * 
      * @return Gibt die Benutzer als {@link Vector} zurück.
      * @throws DatabaseException
@@ -199,15 +469,20 @@ public abstract class DatabaseStructure extends DatabaseFiles {
         DatabaseFiles.LOCK.lock();
 
         try {
-            BufferedReader reader = Utils.createBufferedReader(DatabaseFiles.DB_USERS_TB);
-
-            return (new DatabaseTableReader<User>(reader) {
-
-                @Override
-                protected User process(final String line) throws Exception {
-                    return User.parse(line);
+            Vector<User> result = new Vector<User>();
+            DatabaseTableScanner table = new DatabaseTableScanner(DatabaseFiles.DB_USERS_TB);
+
+            try {
+                while (table.next()) {
+                    result.add(User.parse(table.getString(User.COLUMN_NAME), table.getString(User.COLUMN_PW_HASH),
+                            table.getHex(User.COLUMN_CRYPT_KEY), table.getHex(User.COLUMN_PUBLIC_KEY), table
+                                    .getHex(User.COLUMN_PRIVATE_KEY)));
                 }
-            }).getResult();
+            } finally {
+                table.close();
+            }
+
+            return result;
         } catch (Exception e) {
             throw new DatabaseException("Kann die Benutzertabelle nicht laden!", e);
         } finally {
@@ -215,78 +490,330 @@ public abstract class DatabaseStructure extends DatabaseFiles {
         }
     }
 
+    /**
+     * Ließt die Access-Tabelle im Rohformat aus.
+     * 
+     * @param user
+     *            Der Dateiname der Access-Tabelle.
+     * @return Gibt die Tabelle im Rohformat zurück.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Tabellen nicht gelesen werden konnte.
+     */
+    protected Vector<String> rawReadAccessTable(final User user) throws DatabaseException {
+        try {
+            return this.rawReadTable(DatabaseTables.AccessTable.getFilename(user));
+        } catch (Exception e) {
+            throw new DatabaseException("Kann Access-Tabelle nicht lesen!", e);
+        }
+    }
+
+    /**
+     * Ließt eine Tabelle der Gruppe im Rohformat aus.
+     * 
+     * @param table
+     *            Die Tabelle.
+     * @param group
+     *            Die Gruppe.
+     * @return Gibt die Tabelle im Rohformat zurück.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Tabelle nicht gelesen werden konnte.
+     */
+    protected Vector<String> rawReadGroupTable(final DatabaseGroupTables table, final Group group)
+            throws DatabaseException {
+        try {
+            return this.rawReadTable(table.getFilename(group));
+        } catch (Exception e) {
+            throw new DatabaseException("Kann die Tabelle der Gruppe nicht lesen!", e);
+        }
+    }
+
+    /**
+     * Spielt die Transaktionen aus dem Journal ab, die vor einem Absturz nicht mehr vollständig in die Tabellen
+     * geschrieben wurden. Muss vor dem Laden der Tabellen aufgerufen werden.
+     * 
+     * @throws DatabaseException
+     *             Wird geworfen, wenn das Journal nicht abgespielt werden kann.
+     */
+    protected void recoverTables() throws DatabaseException {
+        Vector<DatabaseTransaction> transactions = this.journal.open();
+
+        for (DatabaseTransaction tx : transactions) {
+            this.apply(tx);
+        }
+
+        this.journal.recovered();
+
+        if (!transactions.isEmpty()) {
+            System.out.println(transactions.size() + " Transaktionen aus dem Journal wiederhergestellt.");
+        }
+    }
+
+    /**
+     * Markiert eine Freigabe im Log des Index der Zugriffsrechte als gelöscht.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param user
+     *            Der Benutzer, dem die Freigabe entzogen wird.
+     * @param item
+     *            Die Datei.
+     */
+    protected void removeFromAclTable(final DatabaseTransaction tx, final User user, final FileItem item) {
+        tx.log(DatabaseFiles.DB_ACL_TB, DatabaseLog.TOMBSTONE + DatabaseStructure.SEPARATOR
+                + DatabaseAccessIndex.compile(item.getId(), user.getName()));
+    }
+
+    /**
+     * Markiert eine Datei im Log der globalen Dateien-Tabelle als gelöscht.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param item
+     *            Die Datei.
+     */
+    protected void removeFromFilesTable(final DatabaseTransaction tx, final FileItem item) {
+        tx.log(DatabaseFiles.DB_FILES_TB, DatabaseLog.TOMBSTONE + DatabaseStructure.SEPARATOR
+                + Integer.toString(item.getId()));
+    }
+
+    /**
+     * Stellt ein, wann das Journal und die Tabellen auf die Platte gebracht werden.
+     * 
+     * @param durability
+     *            Die Dauerhaftigkeit.
+     */
+    protected void setJournalDurability(final DatabaseDurability durability) {
+        this.journal.setDurability(durability);
+    }
+
     /**
      * Schreibt die Access-Tabelle des Benutzers.
      * 
+     * @param tx
+     *            Die Transaktion.
      * @param user
      *            Der Benutzer-Kontext.
      * @param rawData
      *            Die Rohdaten der Tabelle.
+     */
+    protected void writeAccessTable(final DatabaseTransaction tx, final User user, final Vector<String> rawData) {
+        this.writePlainTable(tx, DatabaseTables.AccessTable.getFilename(user), rawData);
+    }
+
+    /**
+     * Schreibt eine Tabelle der Gruppe.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param table
+     *            Die Tabelle.
+     * @param group
+     *            Die Gruppe.
+     * @param rawData
+     *            Die Rohdaten der Tabelle.
+     */
+    protected void writeGroupTable(final DatabaseTransaction tx, final DatabaseGroupTables table, final Group group,
+            final Vector<String> rawData) {
+        this.writePlainTable(tx, table.getFilename(group), rawData);
+    }
+
+    /**
+     * Schreibt die Lend-Tabelle des Benutzers mit den angegebenen Tupeln.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param owner
+     *            Der Benutzer, der die Dateien verliehen hat.
+     * @param pairs
+     *            Die Tupel, wie sie nach dem Commit in der Lend-Liste stehen werden.
      * @throws DatabaseException
-     *             Wird geworfen, wenn die Tabelle nicht geschrieben werden kann.
+     *             Wird geworfen, wenn die Tabelle nicht verschlüsselt werden kann.
      */
-    protected void writeAccessTable(final User user, final Vector<String> rawData) throws DatabaseException {
-        try {
-            BufferedWriter writer = Utils.createBufferedWriter(DatabaseTables.AccessTable.getFilename(user), false);
+    protected void writeLendTable(final DatabaseTransaction tx, final User owner, final Iterable<UserFilePair> pairs)
+            throws DatabaseException {
+        Vector<String> lines = new Vector<String>();
 
-            new DatabaseTableWriter<String>(writer, rawData) {
+        for (UserFilePair ufp : pairs) {
+            lines.add(ufp.compile());
+        }
 
-                @Override
-                protected String process(final String item) throws Exception {
-                    return item;
-                }
+        this.writeEncryptedTable(tx, DatabaseTables.LendTable.getFilename(owner), owner, lines);
+    }
 
-            };
+    /**
+     * Schreibt die Files-Tabelle des Benutzers mit den angegebenen Dateien.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param user
+     *            Der Benutzer.
+     * @param items
+     *            Die Dateien, wie sie nach dem Commit in der Datei-Liste stehen werden.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Tabelle nicht geschrieben werden kann.
+     */
+    protected void writeUserFilesTable(final DatabaseTransaction tx, final User user,
+            final Collection<FileItem> items) throws DatabaseException {
+        Vector<String> lines = new Vector<String>();
+
+        try {
+            for (FileItem item : items) {
+                lines.add(Integer.toString(item.getId()) + DatabaseStructure.SEPARATOR
+                        + Utils.serializeKeyHex(item.getKey()));
+            }
         } catch (Exception e) {
-            throw new DatabaseException("Kann die Access-Tabelle nicht schreiben!", e);
+            throw new DatabaseException("Kann Tabelle nicht schreiben!", e);
         }
+
+        this.writeEncryptedTable(tx, DatabaseTables.FileTable.getFilename(user), user, lines);
     }
 
     /**
-     * Schreibt die globale Files-Tabelle.
+     * Schreibt die Änderungen einer Transaktion in die Tabellen.
      * 
-     * @param collection
-     *            Die Elemente der Tabelle.
+     * @param tx
+     *            Die Transaktion.
      * @throws DatabaseException
-     *             Wird geworfen, wenn die Tabelle nicht geschrieben werden kann.
+     *             Wird geworfen, wenn eine der Tabellen nicht geschrieben werden kann.
      */
-    protected void writeFilesTable(final Vector<FileItem> collection) throws DatabaseException {
+    private void apply(final DatabaseTransaction tx) throws DatabaseException {
         try {
-            BufferedWriter writer = Utils.createBufferedWriter(DatabaseFiles.DB_FILES_TB, false);
+            for (DatabaseTransaction.Entry entry : tx.getEntries()) {
+                switch (entry.getOperation()) {
+                case DatabaseTransaction.REPLACE:
+                    // synchronisiert wird beim Checkpoint, bis dahin steht die Änderung im Journal
+                    Utils.writeFileAtomic(entry.getFilename(), entry.getData(), false);
 
-            new DatabaseTableWriter<FileItem>(writer, collection) {
+                    break;
 
-                @Override
-                protected String process(final FileItem item) throws Exception {
-                    return item.compile();
-                }
+                case DatabaseTransaction.APPEND:
+                    RandomAccessFile raf = new RandomAccessFile(entry.getFilename(), "rw");
 
-            };
+                    try {
+                        raf.setLength(entry.getOffset());
+                        raf.seek(entry.getOffset());
+                        raf.write(entry.getData());
+                    } finally {
+                        raf.close();
+                    }
+
+                    break;
+
+                case DatabaseTransaction.LOG:
+                    this.applyLogRecord(entry.getFilename(), new String(entry.getData(), DatabaseStructure.CHARSET));
+
+                    break;
+
+                default:
+                    throw new IOException("Unbekannte Operation im Journal: " + entry.getOperation());
+                }
+            }
+        } catch (DatabaseException e) {
+            throw e;
         } catch (Exception e) {
-            throw new DatabaseException("Kann die Files-Tabelle nicht schreiben.", e);
+            throw new DatabaseException("Kann die Transaktion nicht in die Tabellen schreiben!", e);
         }
     }
 
     /**
-     * Schreibt die Files-Tabelle des Benutzers.
+     * Hängt einen Datensatz an das Log mit dem angegebenen Dateinamen an.
      * 
-     * @param user
-     *            Der Benutzer.
+     * @param filename
+     *            Der Dateiname des Logs.
+     * @param record
+     *            Der Datensatz.
      * @throws DatabaseException
-     *             Wird geworfen, wenn die Tabelle nicht geschrieben werden kann.
+     *             Wird geworfen, wenn das Log unbekannt ist oder der Datensatz nicht geschrieben werden kann.
      */
-    protected void writeUserFilesTable(final User user) throws DatabaseException {
-        AesWriter writer = AesWriter.createWriter(DatabaseTables.FileTable.getFilename(user), user.getCryptKey());
+    private void applyLogRecord(final String filename, final String record) throws DatabaseException {
+        DatabaseLog log;
+
+        if (DatabaseFiles.DB_FILES_TB.equals(filename)) {
+            log = this.filesLog;
+        } else if (DatabaseFiles.DB_ACL_TB.equals(filename)) {
+            log = this.aclLog;
+        } else {
+            throw new DatabaseException("Unbekanntes Log im Journal: " + filename);
+        }
+
+        String tombstone = DatabaseLog.TOMBSTONE + DatabaseStructure.SEPARATOR;
 
-        new DatabaseTableWriter<FileItem>(writer, user.getDescriptor().getFileList()) {
+        if (record.startsWith(tombstone)) {
+            log.appendTombstone(record.substring(tombstone.length()));
+        } else {
+            log.append(record);
+        }
+    }
+
+    /**
+     * Ließt eine unverschlüsselte Tabelle zeilenweise aus.
+     * 
+     * @param filename
+     *            Der Dateiname der Tabelle.
+     * @return Die Zeilen.
+     * @throws Exception
+     *             Wird geworfen, wenn die Tabelle nicht gelesen werden konnte.
+     */
+    private Vector<String> rawReadTable(final String filename) throws Exception {
+        return (new DatabaseTableReader<String>(Utils.createBufferedReader(filename, DatabaseStructure.CHARSET)) {
 
             @Override
-            protected String process(final FileItem item) throws Exception {
-                return Integer.toString(item.getId()) + DatabaseStructure.SEPARATOR
-                        + Utils.serializeKeyHex(item.getKey());
+            protected String process(final String line) throws Exception {
+                return line;
+            }
+
+        }).getResult();
+    }
+
+    /**
+     * Verschlüsselt die Zeilen mit dem Schlüssel des Benutzers und ersetzt damit den Inhalt der Tabelle.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param filename
+     *            Der Dateiname der Tabelle.
+     * @param user
+     *            Der Benutzer, mit dessen Schlüssel verschlüsselt wird.
+     * @param lines
+     *            Die Zeilen.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn die Tabelle nicht verschlüsselt werden kann.
+     */
+    private void writeEncryptedTable(final DatabaseTransaction tx, final String filename, final User user,
+            final Collection<String> lines) throws DatabaseException {
+        try {
+            AesWriter writer = AesWriter.createWriter(filename, user.getCryptKey());
+
+            for (String line : lines) {
+                writer.writeLine(line);
             }
 
-        };
+            tx.replace(filename, writer.toByteArray());
+        } catch (Exception e) {
+            throw new DatabaseException("Kann Tabelle nicht schreiben!", e);
+        }
+    }
+
+    /**
+     * Ersetzt den Inhalt einer unverschlüsselten Tabelle.
+     * 
+     * @param tx
+     *            Die Transaktion.
+     * @param filename
+     *            Der Dateiname der Tabelle.
+     * @param rawData
+     *            Die Zeilen.
+     */
+    private void writePlainTable(final DatabaseTransaction tx, final String filename,
+            final Collection<String> rawData) {
+        StringBuilder sb = new StringBuilder();
+
+        for (String line : rawData) {
+            sb.append(line);
+            sb.append("\n");
+        }
+
+        tx.replace(filename, sb.toString().getBytes(DatabaseStructure.CHARSET));
     }
 
 }
@@ -0,0 +1,352 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+
+/**
+ * Liest eine unverschlüsselte Tabelle blockweise in einen Puffer fester Größe und zerlegt die Datensätze direkt darin:
+ * Für jeden Datensatz werden nur die Grenzen der Spalten ermittelt, Strings und Byte-Arrays entstehen erst für die
+ * Spalten, die der Aufrufer tatsächlich abholt. Damit lassen sich auch sehr große Tabellen laden, ohne für jede Zeile
+ * einen String und ein Spalten-Array zu erzeugen oder die ganze Tabelle im Speicher zu halten.
+ * <p>
+ * Reicht ein Datensatz über das Ende des Puffers hinaus, wird sein Anfang an den Beginn des Puffers verschoben und der
+ * Rest dahinter nachgelesen. Ist ein einzelner Datensatz größer als der Puffer, wird der Puffer vergrößert.
+ * <p>
+ * Die Tabelle wird wie ein Cursor mit {@link #next()} durchlaufen. Über {@link #getRecordStart()} und
+ * {@link #seek(long)} kann ein Datensatz später noch einmal gelesen werden. Die Datei wird bewusst nicht in den
+ * Speicher eingeblendet, da sich eine Einblendung nicht gezielt aufheben lässt; sie bleibt stattdessen bis
+ * {@link #close()} geöffnet.
+ * 
+ * @author Smolli
+ */
+final class DatabaseTableScanner implements Closeable {
+
+    /** Hält das Trennzeichen der Spalten als Byte. */
+    private static final byte SEPARATOR = (byte) DatabaseStructure.SEPARATOR.charAt(0);
+    /** Hält das Zeilenende als Byte. */
+    private static final byte NEWLINE = (byte) '\n';
+    /** Hält die Größe des Puffers, in den die Tabelle blockweise gelesen wird. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /** Hält die anfängliche Anzahl der Spalten, für die Grenzen gespeichert werden können. */
+    private static final int INITIAL_COLUMNS = 8;
+    /** Hält die Basis der Zahlen in den Tabellen. */
+    private static final int RADIX = 10;
+
+    /** Hält den Dateinamen. */
+    private final String filename;
+    /** Hält die geöffnete Datei oder <code>null</code>, wenn es die Datei nicht gibt. */
+    private final RandomAccessFile file;
+    /** Hält die Länge der Tabelle beim Öffnen. */
+    private final long size;
+    /** Hält den gerade gelesenen Ausschnitt der Datei. */
+    private ByteBuffer buffer;
+    /** Hält die Position in der Datei, an der der Puffer beginnt. */
+    private long bufferStart = 0;
+    /** Hält die Position, an der der nächste Datensatz beginnt. */
+    private long position = 0;
+    /** Hält die Position, an der der aktuelle Datensatz beginnt. */
+    private long recordStart = -1;
+    /** Hält die Startpositionen der Spalten des aktuellen Datensatzes. */
+    private int[] starts = new int[DatabaseTableScanner.INITIAL_COLUMNS];
+    /** Hält die Endpositionen der Spalten des aktuellen Datensatzes. */
+    private int[] ends = new int[DatabaseTableScanner.INITIAL_COLUMNS];
+    /** Hält die Anzahl der Spalten des aktuellen Datensatzes. */
+    private int columns = 0;
+    /** Hält die Anzahl der bisher gelesenen Datensätze, ohne die mit {@link #seek(long)} wiederholten. */
+    private int count = 0;
+    /** Hält die Position, bis zu der die Tabelle schon einmal gelesen wurde. */
+    private long scanned = 0;
+
+    /**
+     * Öffnet die Tabelle. Existiert die Datei nicht, ist die Tabelle leer.
+     * 
+     * @param file
+     *            Der Dateiname.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht geöffnet werden kann.
+     */
+    DatabaseTableScanner(final String file) throws IOException {
+        this(file, DatabaseTableScanner.CHUNK_SIZE);
+    }
+
+    /**
+     * Öffnet die Tabelle mit einem Puffer der angegebenen Größe. Existiert die Datei nicht, ist die Tabelle leer.
+     * 
+     * @param file
+     *            Der Dateiname.
+     * @param chunkSize
+     *            Die anfängliche Größe des Puffers in Bytes.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht geöffnet werden kann.
+     */
+    DatabaseTableScanner(final String file, final int chunkSize) throws IOException {
+        this.filename = file;
+
+        if (new File(file).exists()) {
+            this.file = new RandomAccessFile(file, "r");
+            this.size = this.file.length();
+        } else {
+            this.file = null;
+            this.size = 0;
+        }
+
+        this.buffer = ByteBuffer.allocate(chunkSize);
+        this.buffer.limit(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.buffer = null;
+
+        if (this.file != null) {
+            this.file.close();
+        }
+
+        System.out.println(Integer.toString(this.count) + " Zeilen aus Datei " + this.filename + " gelesen.");
+    }
+
+    /**
+     * Vergleicht eine Spalte des aktuellen Datensatzes mit einem ASCII-Text, ohne einen String zu erzeugen.
+     * 
+     * @param column
+     *            Die Spalte.
+     * @param text
+     *            Der Text.
+     * @return Gibt <code>true</code> zurück, wenn die Spalte genau den Text enthält.
+     */
+    boolean columnEquals(final int column, final String text) {
+        int start = this.starts[column];
+
+        if (this.ends[column] - start != text.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            if (this.buffer.get(start + i) != (byte) text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gibt die Anzahl der Spalten des aktuellen Datensatzes zurück.
+     * 
+     * @return Die Anzahl.
+     */
+    int getColumnCount() {
+        return this.columns;
+    }
+
+    /**
+     * Dekodiert eine hexadezimal kodierte Spalte des aktuellen Datensatzes direkt aus dem Puffer.
+     * 
+     * @param column
+     *            Die Spalte.
+     * @return Die Bytes.
+     */
+    byte[] getHex(final int column) {
+        return Utils.fromHexBuffer(this.buffer, this.starts[column], this.ends[column]);
+    }
+
+    /**
+     * Liest eine dezimale Zahl aus einer Spalte des aktuellen Datensatzes, ohne einen String zu erzeugen.
+     * 
+     * @param column
+     *            Die Spalte.
+     * @return Die Zahl.
+     * @throws NumberFormatException
+     *             Wird geworfen, wenn die Spalte keine Zahl enthält.
+     */
+    int getInt(final int column) {
+        int start = this.starts[column];
+        int end = this.ends[column];
+        boolean negative = (start < end) && (this.buffer.get(start) == '-');
+        int value = 0;
+
+        if (negative) {
+            start++;
+        }
+
+        if (start == end) {
+            throw new NumberFormatException("Leere Zahl in Spalte " + column + "!");
+        }
+
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit((char) this.buffer.get(i), DatabaseTableScanner.RADIX);
+
+            if (digit < 0) {
+                throw new NumberFormatException("Ungültige Zahl in Spalte " + column + "!");
+            }
+
+            value = value * DatabaseTableScanner.RADIX + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Gibt die Position zurück, an der der aktuelle Datensatz beginnt.
+     * 
+     * @return Die Position in der Datei für {@link #seek(long)}.
+     */
+    long getRecordStart() {
+        return this.recordStart;
+    }
+
+    /**
+     * Gibt eine Spalte des aktuellen Datensatzes als String zurück.
+     * 
+     * @param column
+     *            Die Spalte.
+     * @return Der Inhalt der Spalte.
+     */
+    String getString(final int column) {
+        byte[] bytes = new byte[this.ends[column] - this.starts[column]];
+        ByteBuffer view = this.buffer.duplicate();
+
+        view.position(this.starts[column]);
+        view.get(bytes);
+
+        return new String(bytes, DatabaseStructure.CHARSET);
+    }
+
+    /**
+     * Geht zum nächsten Datensatz. Leere Zeilen werden übersprungen, eine Zeile ohne abschließenden Zeilenumbruch am
+     * Ende der Datei gilt als Datensatz.
+     * 
+     * @return Gibt <code>false</code> zurück, wenn das Ende der Tabelle erreicht ist.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht gelesen werden kann.
+     */
+    boolean next() throws IOException {
+        while (this.position < this.size) {
+            if ((this.position < this.bufferStart) || (this.position >= this.bufferStart + this.buffer.limit())) {
+                this.fill(this.position);
+            }
+
+            int limit = this.buffer.limit();
+            int start = (int) (this.position - this.bufferStart);
+
+            this.columns = 0;
+            this.addColumn(start);
+
+            int pos = start;
+
+            while ((pos < limit) && (this.buffer.get(pos) != DatabaseTableScanner.NEWLINE)) {
+                if (this.buffer.get(pos) == DatabaseTableScanner.SEPARATOR) {
+                    this.ends[this.columns - 1] = pos;
+                    this.addColumn(pos + 1);
+                }
+
+                pos++;
+            }
+
+            if ((pos == limit) && (this.bufferStart + limit < this.size)) {
+                // der Datensatz reicht über den Puffer hinaus und wird mit dem nächsten Block noch einmal zerlegt
+                this.fill(this.position);
+
+                continue;
+            }
+
+            this.ends[this.columns - 1] = pos;
+            this.position = this.bufferStart + pos + 1;
+
+            if (pos > start) {
+                this.recordStart = this.bufferStart + start;
+
+                if (this.recordStart >= this.scanned) {
+                    this.count++;
+                }
+
+                this.scanned = Math.max(this.scanned, this.position);
+
+                return true;
+            }
+        }
+
+        this.columns = 0;
+        this.recordStart = -1;
+
+        return false;
+    }
+
+    /**
+     * Setzt den Cursor so, dass {@link #next()} den Datensatz an der angegebenen Position liest.
+     * 
+     * @param offset
+     *            Die Position, wie sie von {@link #getRecordStart()} geliefert wurde.
+     */
+    void seek(final long offset) {
+        this.position = offset;
+    }
+
+    /**
+     * Beginnt eine neue Spalte im aktuellen Datensatz.
+     * 
+     * @param start
+     *            Die Startposition der Spalte.
+     */
+    private void addColumn(final int start) {
+        if (this.columns == this.starts.length) {
+            this.starts = Arrays.copyOf(this.starts, this.columns * 2);
+            this.ends = Arrays.copyOf(this.ends, this.columns * 2);
+        }
+
+        this.starts[this.columns++] = start;
+    }
+
+    /**
+     * Füllt den Puffer ab der angegebenen Position der Datei. Liegt die Position im Puffer, wird der Rest des Puffers
+     * an seinen Anfang verschoben und nur dahinter nachgelesen. Füllt dieser Rest den ganzen Puffer, wird der Puffer
+     * verdoppelt.
+     * 
+     * @param offset
+     *            Die Position in der Datei.
+     * @throws IOException
+     *             Wird geworfen, wenn die Datei nicht gelesen werden kann.
+     */
+    private void fill(final long offset) throws IOException {
+        int end = this.buffer.limit();
+
+        if ((offset >= this.bufferStart) && (offset <= this.bufferStart + end)) {
+            this.buffer.position((int) (offset - this.bufferStart));
+            this.buffer.compact();
+
+            if (!this.buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(this.buffer.capacity() * 2);
+
+                this.buffer.flip();
+                larger.put(this.buffer);
+
+                this.buffer = larger;
+            }
+        } else {
+            this.buffer.clear();
+        }
+
+        this.bufferStart = offset;
+
+        FileChannel channel = this.file.getChannel();
+        long remaining = this.size - offset - this.buffer.position();
+
+        this.buffer.limit((int) Math.min(this.buffer.capacity(), this.buffer.position() + remaining));
+
+        while (this.buffer.hasRemaining()) {
+            if (channel.read(this.buffer, offset + this.buffer.position()) < 0) {
+                break;
+            }
+        }
+
+        this.buffer.flip();
+    }
+
+}
@@ -0,0 +1,215 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fhma.ss10.srn.tischbein.core.Utils;
+
+/**
+ * Tests für die {@link DatabaseTableScanner}.
+ * 
+ * @author Smolli
+ */
+public final class DatabaseTableScannerTest {
+
+    /**
+     * Schreibt eine Tabelle im Zeichensatz der Datenbank.
+     * 
+     * @param content
+     *            Der Inhalt der Tabelle.
+     * @return Die Datei.
+     * @throws Exception
+     *             Wird geworfen, wenn die Datei nicht geschrieben werden kann.
+     */
+    private static File createTable(final String content) throws Exception {
+        File file = File.createTempFile("table", ".tb");
+        FileOutputStream fos = new FileOutputStream(file);
+
+        try {
+            fos.write(content.getBytes(DatabaseStructure.CHARSET));
+        } finally {
+            fos.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * Testet, ob eine fehlende Datei als leere Tabelle gelesen wird.
+     */
+    @Test
+    public void missingFile() {
+        try {
+            DatabaseTableScanner table = new DatabaseTableScanner("gibt/es/nicht.tb");
+
+            Assert.assertFalse(table.next());
+            Assert.assertEquals(-1, table.getRecordStart());
+
+            table.close();
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob die Spalten als Zahl, Hex und Text gelesen werden, Umlaute im Zeichensatz der Datenbank dekodiert,
+     * leere Zeilen übersprungen und eine letzte Zeile ohne Zeilenumbruch als Datensatz gelesen wird.
+     */
+    @Test
+    public void parseColumns() {
+        try {
+            byte[] key = new byte[] { 0, 1, (byte) 0xab, (byte) 0xff };
+            File file = DatabaseTableScannerTest.createTable("1;Müller.txt;" + Utils.toHexLine(key) + "\n\n-42;;x;y;z"
+                    + ";a;b;c;d;e");
+
+            try {
+                DatabaseTableScanner table = new DatabaseTableScanner(file.getPath());
+
+                try {
+                    Assert.assertTrue(table.next());
+                    Assert.assertEquals(3, table.getColumnCount());
+                    Assert.assertEquals(1, table.getInt(0));
+                    Assert.assertEquals("Müller.txt", table.getString(1));
+                    Assert.assertArrayEquals(key, table.getHex(2));
+                    Assert.assertTrue(table.columnEquals(0, "1"));
+                    Assert.assertFalse(table.columnEquals(0, "12"));
+
+                    // die leere Zeile wird übersprungen, die letzte hat keinen Zeilenumbruch und mehr Spalten als
+                    // anfänglich vorgesehen
+                    Assert.assertTrue(table.next());
+                    Assert.assertEquals(10, table.getColumnCount());
+                    Assert.assertEquals(-42, table.getInt(0));
+                    Assert.assertEquals("", table.getString(1));
+                    Assert.assertEquals("e", table.getString(9));
+
+                    Assert.assertFalse(table.next());
+                } finally {
+                    table.close();
+                }
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob eine Spalte, die keine Zahl enthält, abgelehnt wird.
+     */
+    @Test
+    public void rejectsInvalidNumber() {
+        try {
+            File file = DatabaseTableScannerTest.createTable("1x;a\n");
+
+            try {
+                DatabaseTableScanner table = new DatabaseTableScanner(file.getPath());
+
+                try {
+                    Assert.assertTrue(table.next());
+
+                    table.getInt(0);
+
+                    Assert.fail();
+                } catch (NumberFormatException e) {
+                    // erwartet
+                } finally {
+                    table.close();
+                }
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob Datensätze, die über die Grenze eines Blocks reichen oder größer als der Puffer sind, vollständig
+     * gelesen werden und ein Datensatz aus einem früheren Block über seine Startposition noch einmal gelesen werden
+     * kann.
+     */
+    @Test
+    public void recordsAcrossChunks() {
+        try {
+            File file = DatabaseTableScannerTest.createTable("1;abc\n22;defgh\n\n333;ijklmnopqrstuvwxyz\n4;x");
+
+            try {
+                DatabaseTableScanner table = new DatabaseTableScanner(file.getPath(), 4);
+
+                try {
+                    Assert.assertTrue(table.next());
+                    Assert.assertEquals(0, table.getRecordStart());
+                    Assert.assertEquals("abc", table.getString(1));
+
+                    Assert.assertTrue(table.next());
+
+                    long second = table.getRecordStart();
+
+                    Assert.assertEquals(22, table.getInt(0));
+                    Assert.assertEquals("defgh", table.getString(1));
+
+                    Assert.assertTrue(table.next());
+                    Assert.assertEquals(333, table.getInt(0));
+                    Assert.assertEquals("ijklmnopqrstuvwxyz", table.getString(1));
+
+                    Assert.assertTrue(table.next());
+                    Assert.assertEquals(4, table.getInt(0));
+                    Assert.assertTrue(table.columnEquals(1, "x"));
+                    Assert.assertFalse(table.next());
+
+                    table.seek(second);
+
+                    Assert.assertTrue(table.next());
+                    Assert.assertEquals(second, table.getRecordStart());
+                    Assert.assertEquals("defgh", table.getString(1));
+                } finally {
+                    table.close();
+                }
+            } finally {
+                file.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob ein Datensatz über seine Startposition noch einmal gelesen werden kann und ob die Datei nach dem
+     * Schließen der Tabelle gelöscht werden kann, da sie nicht eingeblendet wird.
+     */
+    @Test
+    public void seekAndDelete() {
+        try {
+            File file = DatabaseTableScannerTest.createTable("1;a\n2;b\n3;c\n");
+            DatabaseTableScanner table = new DatabaseTableScanner(file.getPath());
+
+            try {
+                Assert.assertTrue(table.next());
+                Assert.assertTrue(table.next());
+
+                long second = table.getRecordStart();
+
+                Assert.assertTrue(table.next());
+                Assert.assertEquals("c", table.getString(1));
+                Assert.assertFalse(table.next());
+
+                table.seek(second);
+
+                Assert.assertTrue(table.next());
+                Assert.assertEquals(2, table.getInt(0));
+                Assert.assertEquals("b", table.getString(1));
+            } finally {
+                table.close();
+            }
+
+            Assert.assertTrue(file.delete());
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Sammelt die Änderungen an mehreren Tabellen, die gemeinsam geschrieben werden sollen. Die Änderungen werden erst beim
+ * Commit zuerst in das Journal und dann in die Tabellen geschrieben, so dass nach einem Absturz entweder alle oder
+ * keine Änderung der Transaktion in den Tabellen steht.
+ * <p>
+ * Alle Operationen lassen sich beliebig oft wiederholen, ohne das Ergebnis zu ändern. Deshalb kann das Journal nach
+ * einem Absturz einfach noch einmal abgespielt werden, auch wenn ein Teil der Änderungen schon geschrieben war.
+ * <p>
+ * Änderungen am Speicherabbild der Datenbank werden mit {@link #afterCommit(Runnable)} vorgemerkt und erst ausgeführt,
+ * wenn die Transaktion in den Tabellen steht. Schlägt der Commit fehl, bleibt das Speicherabbild unverändert.
+ * 
+ * @author Smolli
+ */
+public final class DatabaseTransaction {
+
+    /**
+     * Eine einzelne Änderung an einer Tabelle.
+     */
+    static final class Entry {
+
+        /** Hält die Art der Änderung. */
+        private final byte operation;
+        /** Hält den Dateinamen der Tabelle. */
+        private final String filename;
+        /** Hält die Position, an der angehängt wird. */
+        private final long offset;
+        /** Hält die Daten. */
+        private final byte[] data;
+
+        /**
+         * Erstellt eine neue Änderung.
+         * 
+         * @param operation
+         *            Die Art der Änderung.
+         * @param filename
+         *            Der Dateiname der Tabelle.
+         * @param offset
+         *            Die Position, an der angehängt wird.
+         * @param data
+         *            Die Daten.
+         */
+        Entry(final byte operation, final String filename, final long offset, final byte[] data) {
+            this.operation = operation;
+            this.filename = filename;
+            this.offset = offset;
+            this.data = data;
+        }
+
+        /**
+         * Gibt die Daten zurück.
+         * 
+         * @return Die Daten.
+         */
+        byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * Gibt den Dateinamen der Tabelle zurück.
+         * 
+         * @return Der Dateiname.
+         */
+        String getFilename() {
+            return this.filename;
+        }
+
+        /**
+         * Gibt die Position zurück, an der angehängt wird.
+         * 
+         * @return Die Position.
+         */
+        long getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * Gibt die Art der Änderung zurück.
+         * 
+         * @return Eine der Konstanten {@link DatabaseTransaction#REPLACE}, {@link DatabaseTransaction#APPEND} oder
+         *         {@link DatabaseTransaction#LOG}.
+         */
+        byte getOperation() {
+            return this.operation;
+        }
+
+    }
+
+    /** Ersetzt den Inhalt der Tabelle. */
+    static final byte REPLACE = 'W';
+    /** Hängt an die Tabelle an, nachdem sie auf die gespeicherte Länge gekürzt wurde. */
+    static final byte APPEND = 'A';
+    /** Hängt einen Datensatz an ein {@link DatabaseLog} an. */
+    static final byte LOG = 'L';
+
+    /**
+     * Liest eine Transaktion aus einem Journal-Datensatz.
+     * 
+     * @param record
+     *            Der Datensatz, wie er von {@link #encode()} erzeugt wurde.
+     * @return Die Transaktion.
+     * @throws IOException
+     *             Wird geworfen, wenn der Datensatz nicht gelesen werden kann.
+     */
+    static DatabaseTransaction decode(final byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        DatabaseTransaction tx = new DatabaseTransaction();
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+            byte operation = in.readByte();
+            String filename = in.readUTF();
+            long offset = in.readLong();
+            byte[] data = new byte[in.readInt()];
+
+            in.readFully(data);
+
+            tx.entries.add(new Entry(operation, filename, offset, data));
+        }
+
+        return tx;
+    }
+
+    /** Hält die Änderungen in der Reihenfolge, in der sie angewendet werden. */
+    private final Vector<Entry> entries = new Vector<Entry>();
+    /** Hält die Länge, die eine Tabelle nach den bisherigen Änderungen haben wird. */
+    private final HashMap<String, Long> lengths = new HashMap<String, Long>();
+    /** Hält die Änderungen am Speicherabbild, die nach dem Commit ausgeführt werden. */
+    private final Vector<Runnable> actions = new Vector<Runnable>();
+
+    /**
+     * Erstellt eine neue, leere Transaktion.
+     */
+    DatabaseTransaction() {
+        super();
+    }
+
+    /**
+     * Merkt eine Änderung am Speicherabbild vor, die erst nach einem erfolgreichen Commit ausgeführt wird.
+     * 
+     * @param action
+     *            Die Änderung.
+     */
+    void afterCommit(final Runnable action) {
+        this.actions.add(action);
+    }
+
+    /**
+     * Hängt Daten an eine Tabelle an. Die aktuelle Länge der Tabelle wird mitgespeichert, damit das Anhängen beim
+     * Abspielen des Journals nicht doppelt passiert. Die Tabelle muss deshalb bis zum Commit gesperrt bleiben.
+     * 
+     * @param filename
+     *            Der Dateiname der Tabelle.
+     * @param data
+     *            Die Daten.
+     */
+    void append(final String filename, final byte[] data) {
+        Long length = this.lengths.get(filename);
+        long offset = (length != null) ? length : new File(filename).length();
+
+        this.entries.add(new Entry(DatabaseTransaction.APPEND, filename, offset, data));
+        this.lengths.put(filename, offset + data.length);
+    }
+
+    /**
+     * Führt die vorgemerkten Änderungen am Speicherabbild in der Reihenfolge aus, in der sie vorgemerkt wurden. Wird
+     * nach einem erfolgreichen Commit aufgerufen.
+     */
+    void committed() {
+        for (Runnable action : this.actions) {
+            action.run();
+        }
+    }
+
+    /**
+     * Ermittelt, ob die Transaktion den Inhalt einer Tabelle ersetzt.
+     * 
+     * @return <code>true</code>, wenn eine der Änderungen {@link #REPLACE} ist.
+     */
+    boolean containsReplace() {
+        for (Entry entry : this.entries) {
+            if (entry.operation == DatabaseTransaction.REPLACE) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Kodiert die Transaktion als Journal-Datensatz.
+     * 
+     * @return Der Datensatz.
+     * @throws IOException
+     *             Wird geworfen, wenn der Datensatz nicht erzeugt werden kann.
+     */
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+
+        out.writeInt(this.entries.size());
+
+        for (Entry entry : this.entries) {
+            out.writeByte(entry.operation);
+            out.writeUTF(entry.filename);
+            out.writeLong(entry.offset);
+            out.writeInt(entry.data.length);
+            out.write(entry.data);
+        }
+
+        out.flush();
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * Gibt die Änderungen zurück.
+     * 
+     * @return Die Änderungen in der Reihenfolge, in der sie angewendet werden.
+     */
+    Vector<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Gibt die Dateinamen aller geänderten Tabellen zurück.
+     * 
+     * @return Die Dateinamen.
+     */
+    Set<String> getFilenames() {
+        Set<String> filenames = new LinkedHashSet<String>();
+
+        for (Entry entry : this.entries) {
+            filenames.add(entry.filename);
+        }
+
+        return filenames;
+    }
+
+    /**
+     * Ermittelt, ob die Transaktion Änderungen enthält.
+     * 
+     * @return <code>true</code>, wenn es keine Änderungen gibt.
+     */
+    boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * Hängt einen Datensatz an ein {@link DatabaseLog} an. Das Log verkraftet es, wenn ein Datensatz beim Abspielen des
+     * Journals doppelt angehängt wird, da immer der letzte Datensatz eines Schlüssels gilt.
+     * 
+     * @param filename
+     *            Der Dateiname des Logs.
+     * @param record
+     *            Der Datensatz.
+     */
+    void log(final String filename, final String record) {
+        this.entries.add(new Entry(DatabaseTransaction.LOG, filename, 0, record.getBytes(DatabaseStructure.CHARSET)));
+    }
+
+    /**
+     * Ersetzt den Inhalt einer Tabelle. Frühere Änderungen derselben Tabelle in dieser Transaktion sind damit
+     * überholt und werden verworfen.
+     * 
+     * @param filename
+     *            Der Dateiname der Tabelle.
+     * @param content
+     *            Der neue Inhalt.
+     */
+    void replace(final String filename, final byte[] content) {
+        Iterator<Entry> it = this.entries.iterator();
+
+        while (it.hasNext()) {
+            Entry entry = it.next();
+
+            if ((entry.operation != DatabaseTransaction.LOG) && entry.filename.equals(filename)) {
+                it.remove();
+            }
+        }
+
+        this.entries.add(new Entry(DatabaseTransaction.REPLACE, filename, 0, content));
+        this.lengths.put(filename, (long) content.length);
+    }
+
+}
@@ -0,0 +1,139 @@
+package de.fhma.ss10.srn.tischbein.core.db.dbms;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Vector;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests für die {@link DatabaseTransaction}.
+ * 
+ * @author Smolli
+ */
+public final class DatabaseTransactionTest {
+
+    /**
+     * Testet, ob beim Anhängen die Länge der Tabelle und die vorherigen Anhänge derselben Transaktion mitgezählt
+     * werden.
+     */
+    @Test
+    public void appendOffsets() {
+        try {
+            File table = File.createTempFile("table", ".tb");
+            FileOutputStream fos = new FileOutputStream(table);
+
+            fos.write("12345".getBytes());
+            fos.close();
+
+            try {
+                DatabaseTransaction tx = new DatabaseTransaction();
+
+                tx.append(table.getPath(), "abc".getBytes());
+                tx.append(table.getPath(), "de".getBytes());
+
+                Vector<DatabaseTransaction.Entry> entries = tx.getEntries();
+
+                Assert.assertEquals(2, entries.size());
+                Assert.assertEquals(DatabaseTransaction.APPEND, entries.get(0).getOperation());
+                Assert.assertEquals(5, entries.get(0).getOffset());
+                Assert.assertEquals(8, entries.get(1).getOffset());
+                Assert.assertFalse(tx.containsReplace());
+            } finally {
+                table.delete();
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob vorgemerkte Änderungen am Speicherabbild erst mit {@link DatabaseTransaction#committed()} und in
+     * ihrer Reihenfolge ausgeführt werden.
+     */
+    @Test
+    public void commitActions() {
+        final StringBuilder sb = new StringBuilder();
+        DatabaseTransaction tx = new DatabaseTransaction();
+
+        for (final String step : new String[] { "a", "b", "c" }) {
+            tx.afterCommit(new Runnable() {
+
+                @Override
+                public void run() {
+                    sb.append(step);
+                }
+
+            });
+        }
+
+        Assert.assertEquals("", sb.toString());
+
+        tx.committed();
+
+        Assert.assertEquals("abc", sb.toString());
+    }
+
+    /**
+     * Testet, ob eine Transaktion mit allen drei Operationen unverändert aus dem Journal-Datensatz gelesen wird.
+     */
+    @Test
+    public void encodeAndDecode() {
+        try {
+            DatabaseTransaction tx = new DatabaseTransaction();
+
+            tx.replace("db/a.tb", "inhalt".getBytes());
+            tx.append("db/a.tb", "mehr".getBytes());
+            tx.log("db/files.tb", "1;x");
+
+            Vector<DatabaseTransaction.Entry> entries = DatabaseTransaction.decode(tx.encode()).getEntries();
+
+            Assert.assertEquals(3, entries.size());
+
+            Assert.assertEquals(DatabaseTransaction.REPLACE, entries.get(0).getOperation());
+            Assert.assertEquals("db/a.tb", entries.get(0).getFilename());
+            Assert.assertArrayEquals("inhalt".getBytes(), entries.get(0).getData());
+
+            Assert.assertEquals(DatabaseTransaction.APPEND, entries.get(1).getOperation());
+            Assert.assertEquals("inhalt".length(), entries.get(1).getOffset());
+            Assert.assertArrayEquals("mehr".getBytes(), entries.get(1).getData());
+
+            Assert.assertEquals(DatabaseTransaction.LOG, entries.get(2).getOperation());
+            Assert.assertEquals("db/files.tb", entries.get(2).getFilename());
+            Assert.assertArrayEquals("1;x".getBytes(), entries.get(2).getData());
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob das Ersetzen frühere Änderungen derselben Tabelle verwirft, Log-Datensätze und andere Tabellen aber
+     * behält.
+     */
+    @Test
+    public void replaceSupersedes() {
+        DatabaseTransaction tx = new DatabaseTransaction();
+
+        tx.replace("db/a.tb", "alt".getBytes());
+        tx.append("db/a.tb", "x".getBytes());
+        tx.log("db/a.tb", "1;x");
+        tx.replace("db/b.tb", "b".getBytes());
+        tx.replace("db/a.tb", "neu".getBytes());
+
+        Vector<DatabaseTransaction.Entry> entries = tx.getEntries();
+
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals(DatabaseTransaction.LOG, entries.get(0).getOperation());
+        Assert.assertEquals("db/b.tb", entries.get(1).getFilename());
+        Assert.assertEquals(DatabaseTransaction.REPLACE, entries.get(2).getOperation());
+        Assert.assertArrayEquals("neu".getBytes(), entries.get(2).getData());
+        Assert.assertTrue(tx.containsReplace());
+
+        // nach dem Ersetzen wird hinter dem neuen Inhalt angehängt
+        tx.append("db/a.tb", "y".getBytes());
+
+        Assert.assertEquals("neu".length(), tx.getEntries().lastElement().getOffset());
+    }
+
+}
@@ -0,0 +1,109 @@
+package de.fhma.ss10.srn.tischbein.core.db.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fhma.ss10.srn.tischbein.core.db.ContentCache;
+import de.fhma.ss10.srn.tischbein.core.db.PlainContent;
+
+/**
+ * Tests für den {@link ContentCache}.
+ * 
+ * @author Smolli
+ */
+public final class ContentCacheTest {
+
+    /**
+     * Testet, ob die am längsten nicht gelesenen Inhalte verdrängt und dabei geschlossen werden und die Zähler stimmen.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        try {
+            ContentCache cache = new ContentCache(30);
+            PlainContent second = PlainContent.copyOf(new byte[10]);
+
+            cache.put(1, PlainContent.copyOf(new byte[10]));
+            cache.put(2, second);
+            cache.put(3, PlainContent.copyOf(new byte[10]));
+
+            // 1 wird gelesen, damit ist 2 der älteste Inhalt
+            Assert.assertNotNull(cache.get(1));
+
+            cache.put(4, PlainContent.copyOf(new byte[10]));
+
+            Assert.assertTrue(second.isClosed());
+            Assert.assertNull(cache.get(2));
+            Assert.assertNotNull(cache.get(1));
+            Assert.assertNotNull(cache.get(3));
+            Assert.assertNotNull(cache.get(4));
+            Assert.assertEquals(30, cache.getSize());
+            Assert.assertEquals(4, cache.getHits());
+            Assert.assertEquals(1, cache.getMisses());
+            Assert.assertEquals(1, cache.getEvictions());
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet das Verkleinern, das Entfernen und zu große Inhalte.
+     */
+    @Test
+    public void limitAndRemove() {
+        try {
+            ContentCache cache = new ContentCache(100);
+            PlainContent first = PlainContent.copyOf(new byte[40]);
+            PlainContent second = PlainContent.copyOf(new byte[40]);
+            PlainContent tooLarge = PlainContent.copyOf(new byte[101]);
+
+            cache.put(1, first);
+            cache.put(2, second);
+            cache.put(3, tooLarge);
+
+            Assert.assertTrue(tooLarge.isClosed());
+            Assert.assertNull(cache.get(3));
+            Assert.assertEquals(80, cache.getSize());
+
+            cache.setMaxBytes(50);
+
+            Assert.assertTrue(first.isClosed());
+            Assert.assertNull(cache.get(1));
+            Assert.assertEquals(40, cache.getSize());
+
+            cache.remove(2);
+
+            Assert.assertTrue(second.isClosed());
+            Assert.assertNull(cache.get(2));
+            Assert.assertEquals(0, cache.getSize());
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob Bereiche als Kopie aus dem Inhalt gelesen werden und am Ende des Inhalts kürzer ausfallen.
+     */
+    @Test
+    public void readRange() {
+        try {
+            ContentCache cache = new ContentCache(100);
+            byte[] data = "0123456789".getBytes();
+
+            cache.put(1, PlainContent.copyOf(data));
+
+            Assert.assertArrayEquals("234".getBytes(), cache.read(1, 2, 3));
+            Assert.assertArrayEquals("89".getBytes(), cache.read(1, 8, 5));
+            Assert.assertEquals(0, cache.read(1, 20, 5).length);
+            Assert.assertArrayEquals(data, cache.get(1));
+            Assert.assertNull(cache.read(2, 0, 5));
+
+            cache.clear();
+
+            Assert.assertNull(cache.get(1));
+            Assert.assertEquals(0, cache.getSize());
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+}
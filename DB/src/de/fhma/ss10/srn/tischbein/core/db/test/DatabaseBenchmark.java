@@ -0,0 +1,195 @@
+package de.fhma.ss10.srn.tischbein.core.db.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
+import de.fhma.ss10.srn.tischbein.core.db.Database;
+import de.fhma.ss10.srn.tischbein.core.db.DatabaseException;
+import de.fhma.ss10.srn.tischbein.core.db.FileItem;
+import de.fhma.ss10.srn.tischbein.core.db.User;
+
+/**
+ * Misst die Kosten der schreibenden Datenbankoperationen in Abhängigkeit von der Datenbankgröße. Die Datenbank wird
+ * schrittweise auf die angegebenen Benutzerzahlen aufgefüllt und nach jedem Schritt werden Freigaben, Entzüge und
+ * Uploads gemessen. Da die Singleton-Instanz nicht mehr nach jeder Operation verworfen wird, sollten die Zeiten pro
+ * Operation unabhängig von der Benutzerzahl bleiben. Zusätzlich wird einmal pro Schritt eine Datei gelöscht, die allen
+ * Benutzern freigegeben ist; diese Zeit wächst linear mit der Benutzerzahl.
+ * <p>
+ * Aufruf: <code>DatabaseBenchmark [Runden] [Benutzerzahl...]</code>
+ * 
+ * @author Smolli
+ */
+public class DatabaseBenchmark {
+
+    /** Präfix der Benchmark-Benutzer. */
+    private static final String USER_PREFIX = "bench";
+    /** Passwort der Benchmark-Benutzer. */
+    private static final String PASSWORD = "bench";
+    /** Die Standard-Anzahl der gemessenen Runden pro Schritt. */
+    private static final int DEFAULT_ROUNDS = 20;
+    /** Die Standard-Benutzerzahlen. */
+    private static final int[] DEFAULT_SIZES = { 10, 50, 100 };
+    /** Umrechnungsfaktor von Nanosekunden in Millisekunden. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * Startet den Benchmark.
+     * 
+     * @param args
+     *            Optional die Anzahl der Runden, gefolgt von den Benutzerzahlen.
+     */
+    public static void main(final String[] args) {
+        int rounds = DatabaseBenchmark.DEFAULT_ROUNDS;
+        int[] sizes = DatabaseBenchmark.DEFAULT_SIZES;
+
+        if (args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        try {
+            System.out.println("Benutzer\tgetInstance [ms]\tgrant [ms]\tdeny [ms]\tupload [ms]\tdelete shared [ms]");
+
+            for (int size : sizes) {
+                DatabaseBenchmark.fillUsers(size);
+
+                DatabaseBenchmark.measure(size, rounds);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Füllt die Datenbank mit Benchmark-Benutzern auf, bis die angegebene Anzahl erreicht ist.
+     * 
+     * @param size
+     *            Die gewünschte Anzahl der Benchmark-Benutzer.
+     * @throws DatabaseException
+     *             Wird geworfen, wenn ein Benutzer nicht angelegt werden konnte.
+     */
+    private static void fillUsers(final int size) throws DatabaseException {
+        for (int i = 0; i < size; i++) {
+            String name = DatabaseBenchmark.USER_PREFIX + i;
+
+            if (!Database.getInstance().hasUser(name)) {
+                Database.getInstance().createUser(name, DatabaseBenchmark.PASSWORD);
+            }
+        }
+    }
+
+    /**
+     * Misst die einzelnen Operationen bei der aktuellen Datenbankgröße und gibt das Ergebnis als Tabellenzeile aus.
+     * 
+     * @param size
+     *            Die aktuelle Anzahl der Benchmark-Benutzer.
+     * @param rounds
+     *            Die Anzahl der Messrunden.
+     * @throws Exception
+     *             Wird geworfen, wenn eine der Operationen fehlschlägt.
+     */
+    private static void measure(final int size, final int rounds) throws Exception {
+        User owner = Database.getInstance().getUser(DatabaseBenchmark.USER_PREFIX + 0);
+
+        owner.unlock(DatabaseBenchmark.PASSWORD);
+
+        File source = File.createTempFile("bench", ".txt");
+        FileOutputStream fos = new FileOutputStream(source);
+
+        fos.write("Benchmark-Inhalt".getBytes());
+        fos.close();
+
+        long instanceTime = 0;
+        long grantTime = 0;
+        long denyTime = 0;
+        long uploadTime = 0;
+
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            Database db = Database.getInstance();
+            instanceTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FileItem item = FileItem.create(owner, source.getPath(), AesCrypto.generateKey());
+            item.encrypt();
+            db.addFileItem(item);
+            uploadTime += System.nanoTime() - start;
+
+            User grantee = db.getUser(DatabaseBenchmark.USER_PREFIX + (1 + (i % (size - 1))));
+
+            start = System.nanoTime();
+            db.grantAccess(grantee, item);
+            grantTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            db.denyAccess(grantee, item);
+            denyTime += System.nanoTime() - start;
+        }
+
+        long deleteTime = DatabaseBenchmark.measureSharedDelete(owner, source, size);
+
+        Database.getInstance().logout(owner);
+
+        if (!source.delete()) {
+            source.deleteOnExit();
+        }
+
+        System.out.println(size + "\t" + DatabaseBenchmark.format(instanceTime, rounds) + "\t"
+                + DatabaseBenchmark.format(grantTime, rounds) + "\t" + DatabaseBenchmark.format(denyTime, rounds)
+                + "\t" + DatabaseBenchmark.format(uploadTime, rounds) + "\t"
+                + DatabaseBenchmark.format(deleteTime, 1));
+    }
+
+    /**
+     * Gibt eine neue Datei allen anderen Benchmark-Benutzern frei und misst, wie lange das Löschen der Datei dauert.
+     * 
+     * @param owner
+     *            Der angemeldete Besitzer.
+     * @param source
+     *            Die Quelldatei.
+     * @param size
+     *            Die aktuelle Anzahl der Benchmark-Benutzer.
+     * @return Die Dauer des Löschens in Nanosekunden.
+     * @throws Exception
+     *             Wird geworfen, wenn eine der Operationen fehlschlägt.
+     */
+    private static long measureSharedDelete(final User owner, final File source, final int size) throws Exception {
+        Database db = Database.getInstance();
+        FileItem item = FileItem.create(owner, source.getPath(), AesCrypto.generateKey());
+
+        item.encrypt();
+        db.addFileItem(item);
+
+        for (int i = 1; i < size; i++) {
+            db.grantAccess(db.getUser(DatabaseBenchmark.USER_PREFIX + i), item);
+        }
+
+        long start = System.nanoTime();
+
+        db.deleteFileItem(item);
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Formatiert die mittlere Dauer einer Operation in Millisekunden.
+     * 
+     * @param total
+     *            Die Gesamtdauer in Nanosekunden.
+     * @param rounds
+     *            Die Anzahl der Runden.
+     * @return Die mittlere Dauer als Zeichenkette.
+     */
+    private static String format(final long total, final int rounds) {
+        return String.format("%.3f", total / DatabaseBenchmark.NANOS_PER_MILLI / rounds);
+    }
+
+}
@@ -6,8 +6,11 @@ import java.io.FileOutputStream;
 import org.junit.Assert;
 import org.junit.Test;
 
+import de.fhma.ss10.srn.tischbein.core.crypto.AesCrypto;
 import de.fhma.ss10.srn.tischbein.core.db.Database;
 import de.fhma.ss10.srn.tischbein.core.db.DatabaseException;
+import de.fhma.ss10.srn.tischbein.core.db.FileItem;
+import de.fhma.ss10.srn.tischbein.core.db.Group;
 import de.fhma.ss10.srn.tischbein.core.db.User;
 
 /**
@@ -23,10 +26,92 @@ public class DatabaseTest {
     private static final String TEST_SECRET = "secret!";
     /** Testuser. */
     private static final String TEST_USER = "UserThatWillBeDeleted";
+    /** Inhalt der Dateien, die von den Tests angelegt werden. */
+    private static final String TEST_CONTENT = "Geteilter Testtext.";
+    /** Zähler für eindeutige Benutzer- und Gruppennamen, da die Datenbank zwischen den Läufen erhalten bleibt. */
+    private static int counter;
 
     /** Hält den Testbenutzer. */
     private User user;
 
+    /**
+     * Legt eine Datei mit dem Testinhalt an, die dem Benutzer gehört.
+     * 
+     * @param owner
+     *            Der angemeldete Besitzer.
+     * @return Die Datei.
+     * @throws Exception
+     *             Wird geworfen, wenn die Datei nicht angelegt werden kann.
+     */
+    private static FileItem createFile(final User owner) throws Exception {
+        File source = File.createTempFile("test", ".txt");
+
+        try {
+            FileOutputStream fos = new FileOutputStream(source);
+
+            try {
+                fos.write(DatabaseTest.TEST_CONTENT.getBytes());
+            } finally {
+                fos.close();
+            }
+
+            FileItem file = FileItem.create(owner, source.getPath(), AesCrypto.generateKey());
+
+            file.encrypt();
+
+            Database.getInstance().addFileItem(file);
+
+            return file;
+        } finally {
+            source.delete();
+        }
+    }
+
+    /**
+     * Erzeugt einen Namen, der in der Datenbank noch nicht vorkommt.
+     * 
+     * @param prefix
+     *            Der Anfang des Namens.
+     * @return Der Name.
+     */
+    private static String createName(final String prefix) {
+        return prefix + System.currentTimeMillis() + "x" + (++DatabaseTest.counter);
+    }
+
+    /**
+     * Legt einen Benutzer mit einem eindeutigen Namen an und meldet ihn an.
+     * 
+     * @param prefix
+     *            Der Anfang des Benutzernamens.
+     * @return Der angemeldete Benutzer.
+     * @throws Exception
+     *             Wird geworfen, wenn der Benutzer nicht angelegt werden kann.
+     */
+    private static User createUser(final String prefix) throws Exception {
+        String name = DatabaseTest.createName(prefix);
+
+        Database.getInstance().createUser(name, DatabaseTest.TEST_SECRET);
+
+        return DatabaseTest.login(name);
+    }
+
+    /**
+     * Meldet einen Benutzer mit dem Testpasswort an.
+     * 
+     * @param name
+     *            Der Benutzername.
+     * @return Der angemeldete Benutzer.
+     * @throws Exception
+     *             Wird geworfen, wenn der Benutzer nicht angemeldet werden kann.
+     */
+    private static User login(final String name) throws Exception {
+        User user = Database.getInstance().getUser(name);
+
+        user.unlock(DatabaseTest.TEST_SECRET);
+
+        return user;
+    }
+
     /**
      * Die Datenbank wird hier vor der erstmaligen Verwendung initialisiert.
      */
@@ -155,4 +240,214 @@ public class DatabaseTest {
         //        Database.getInstance().removeUser(TEST_USER);
     }
 
+    /**
+     * Prüft, ob der Besitzer eine geöffnete Datei weiter lesen kann, nachdem sich ein Benutzer, dem die Datei
+     * freigegeben ist, an- und wieder abgemeldet hat. Ebenso darf ein abgemeldeter Benutzer den verpackten Schlüssel
+     * eines noch angemeldeten Benutzers nicht verdrängen.
+     */
+    @Test
+    public void test09GranteeLogoutKeepsKeys() {
+        try {
+            User owner = DatabaseTest.createUser("owner");
+            User first = DatabaseTest.createUser("first");
+            User second = DatabaseTest.createUser("second");
+            FileItem file = DatabaseTest.createFile(owner);
+
+            Database.getInstance().grantAccess(first, file);
+            Database.getInstance().grantAccess(second, file);
+            Database.getInstance().shutdown();
+
+            owner = DatabaseTest.login(owner.getName());
+            file = Database.getInstance().getFile(file.getId());
+
+            Assert.assertEquals(DatabaseTest.TEST_CONTENT, new String(file.getContent()));
+
+            first = DatabaseTest.login(first.getName());
+            Assert.assertTrue(first.getDescriptor().getAccessList().contains(file));
+            Database.getInstance().logout(first);
+
+            Assert.assertNotNull(file.getKey());
+            Assert.assertEquals(DatabaseTest.TEST_CONTENT, new String(file.getContent()));
+
+            // ohne den Besitzer bleiben die Schlüssel bis zum ersten Öffnen verpackt
+            Database.getInstance().shutdown();
+
+            first = DatabaseTest.login(first.getName());
+            second = DatabaseTest.login(second.getName());
+            file = Database.getInstance().getFile(file.getId());
+            Database.getInstance().logout(second);
+
+            Assert.assertEquals(DatabaseTest.TEST_CONTENT, new String(file.getContent()));
+            Assert.assertNotNull(first.getFileKey(file.getId()));
+            Assert.assertNull(second.getFileKey(file.getId()));
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Prüft das Anlegen einer Gruppe. Der Gründer ist ihr erstes Mitglied, ein Name darf nur einmal vergeben werden.
+     */
+    @Test
+    public void test10CreateGroup() {
+        try {
+            User founder = DatabaseTest.createUser("founder");
+            String name = DatabaseTest.createName("group");
+            Group group = Database.getInstance().createGroup(name, founder);
+
+            Assert.assertTrue(Database.getInstance().hasGroup(name.toUpperCase()));
+            Assert.assertEquals(group, Database.getInstance().getGroup(name));
+            Assert.assertNotNull(group.getPrivateKey());
+            Assert.assertEquals(1, Database.getInstance().getGroupMembers(group).size());
+            Assert.assertEquals(founder, Database.getInstance().getGroupMembers(group).get(0));
+            Assert.assertTrue(Database.getInstance().getGroups(founder).contains(group));
+
+            try {
+                Database.getInstance().createGroup(name, founder);
+
+                Assert.fail();
+            } catch (DatabaseException e) {
+                // erwartet
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Prüft das Aufnehmen von Mitgliedern. Nur Mitglieder dürfen Benutzer aufnehmen, und niemand wird zweimal
+     * aufgenommen.
+     */
+    @Test
+    public void test11AddGroupMember() {
+        try {
+            User founder = DatabaseTest.createUser("founder");
+            User member = DatabaseTest.createUser("member");
+            User outsider = DatabaseTest.createUser("outsider");
+            Group group = Database.getInstance().createGroup(DatabaseTest.createName("group"), founder);
+
+            Database.getInstance().addGroupMember(group, founder, member);
+
+            Assert.assertEquals(2, Database.getInstance().getGroupMembers(group).size());
+            Assert.assertTrue(Database.getInstance().getGroupMembers(group).contains(member));
+            Assert.assertTrue(Database.getInstance().getGroups(member).contains(group));
+
+            try {
+                Database.getInstance().addGroupMember(group, outsider, outsider);
+
+                Assert.fail();
+            } catch (DatabaseException e) {
+                // erwartet
+            }
+
+            try {
+                Database.getInstance().addGroupMember(group, member, founder);
+
+                Assert.fail();
+            } catch (DatabaseException e) {
+                // erwartet
+            }
+
+            Assert.assertFalse(Database.getInstance().getGroupMembers(group).contains(outsider));
+            Assert.assertTrue(Database.getInstance().getGroups(outsider).isEmpty());
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Prüft, ob eine der Gruppe freigegebene Datei für ihre Mitglieder lesbar ist und nach dem Entziehen der Freigabe
+     * nicht mehr in ihrer Zugriffsliste steht.
+     */
+    @Test
+    public void test12GroupAccess() {
+        try {
+            User owner = DatabaseTest.createUser("owner");
+            User member = DatabaseTest.createUser("member");
+            Group group = Database.getInstance().createGroup(DatabaseTest.createName("group"), owner);
+            FileItem file = DatabaseTest.createFile(owner);
+
+            Database.getInstance().addGroupMember(group, owner, member);
+            Database.getInstance().grantAccess(group, file);
+
+            Assert.assertTrue(Database.getInstance().getGroupFiles(group).contains(file));
+
+            try {
+                Database.getInstance().grantAccess(group, file);
+
+                Assert.fail();
+            } catch (DatabaseException e) {
+                // erwartet
+            }
+
+            Database.getInstance().shutdown();
+
+            member = DatabaseTest.login(member.getName());
+            file = Database.getInstance().getFile(file.getId());
+
+            Assert.assertTrue(member.getDescriptor().getAccessList().contains(file));
+            Assert.assertEquals(DatabaseTest.TEST_CONTENT, new String(file.getContent()));
+
+            group = Database.getInstance().getGroup(group.getName());
+            Database.getInstance().denyAccess(group, file);
+
+            Assert.assertTrue(Database.getInstance().getGroupFiles(group).isEmpty());
+            Assert.assertNull(member.getFileKey(file.getId()));
+
+            member = DatabaseTest.login(member.getName());
+
+            Assert.assertFalse(member.getDescriptor().getAccessList().contains(file));
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Prüft, ob eine Gruppe beim Abmelden eines Mitglieds freigeschaltet bleibt, solange noch ein anderes Mitglied
+     * angemeldet ist, und erst mit dem letzten Mitglied gesperrt wird.
+     */
+    @Test
+    public void test13GroupLogout() {
+        try {
+            User owner = DatabaseTest.createUser("owner");
+            User member = DatabaseTest.createUser("member");
+            Group group = Database.getInstance().createGroup(DatabaseTest.createName("group"), owner);
+            FileItem file = DatabaseTest.createFile(owner);
+
+            Database.getInstance().addGroupMember(group, owner, member);
+            Database.getInstance().grantAccess(group, file);
+            Database.getInstance().shutdown();
+
+            // der Besitzer meldet sich ab, bevor das Mitglied die Datei zum ersten Mal öffnet
+            owner = DatabaseTest.login(owner.getName());
+            member = DatabaseTest.login(member.getName());
+            group = Database.getInstance().getGroup(group.getName());
+            file = Database.getInstance().getFile(file.getId());
+
+            Assert.assertTrue(member.getDescriptor().getAccessList().contains(file));
+
+            Database.getInstance().logout(owner);
+
+            Assert.assertNotNull(group.getPrivateKey());
+            Assert.assertEquals(DatabaseTest.TEST_CONTENT, new String(file.getContent()));
+
+            Database.getInstance().logout(member);
+
+            Assert.assertNull(group.getPrivateKey());
+            Assert.assertNull(group.getCryptKey());
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            Assert.fail();
+        }
+    }
+
 }
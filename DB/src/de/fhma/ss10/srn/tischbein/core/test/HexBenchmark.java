@@ -0,0 +1,214 @@
+package de.fhma.ss10.srn.tischbein.core.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import de.fhma.ss10.srn.tischbein.core.HexInputStream;
+import de.fhma.ss10.srn.tischbein.core.HexOutputStream;
+import de.fhma.ss10.srn.tischbein.core.Utils;
+
+/**
+ * Vergleicht die tabellengesteuerte Hex-Konvertierung in {@link Utils} und die Hex-Streams mit der früheren
+ * Implementierung über {@link Integer#decode(String)}, {@link Integer#toHexString(int)} und
+ * {@link String#substring(int)}. Jede Variante wird zuerst aufgewärmt und dann über mehrere Runden gemessen. Dass
+ * alle Varianten dasselbe liefern, prüft {@link HexTest}.
+ * <p>
+ * Aufruf: <code>HexBenchmark [Runden] [Datengröße in Bytes...]</code>
+ * 
+ * @author Smolli
+ */
+public class HexBenchmark {
+
+    /**
+     * Eine gemessene Operation.
+     */
+    private interface Operation {
+
+        /**
+         * Führt die Operation einmal aus.
+         * 
+         * @param data
+         *            Die Eingabedaten.
+         * @param text
+         *            Die Eingabedaten als Hextext.
+         * @return Ein Ergebnis, damit der JIT die Operation nicht wegoptimiert.
+         * @throws Exception
+         *             Wird geworfen, wenn die Operation fehlschlägt.
+         */
+        int run(byte[] data, String text) throws Exception;
+
+    }
+
+    /** Die Standard-Anzahl der gemessenen Runden. */
+    private static final int DEFAULT_ROUNDS = 20;
+    /** Die Standard-Datengrößen. */
+    private static final int[] DEFAULT_SIZES = { 1024, 64 * 1024, 1024 * 1024 };
+    /** Die Anzahl der Aufwärmrunden. */
+    private static final int WARMUP_ROUNDS = 5;
+    /** Umrechnungsfaktor von Nanosekunden in Mikrosekunden. */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /**
+     * Startet den Benchmark.
+     * 
+     * @param args
+     *            Optional die Anzahl der Runden, gefolgt von den Datengrößen.
+     */
+    public static void main(final String[] args) {
+        int rounds = HexBenchmark.DEFAULT_ROUNDS;
+        int[] sizes = HexBenchmark.DEFAULT_SIZES;
+
+        if (args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        try {
+            System.out.println("Bytes\tOperation\talt [us]\tUtils [us]\tStream [us]");
+
+            for (int size : sizes) {
+                byte[] data = new byte[size];
+
+                Utils.getRandom().nextBytes(data);
+
+                String text = Utils.toHexText(data);
+                final byte[] encoded = text.getBytes();
+
+                HexBenchmark.compare(size, "toHexText", data, text, new Operation() {
+
+                    @Override
+                    public int run(final byte[] d, final String t) {
+                        return HexTest.legacyToHexText(d).length();
+                    }
+
+                }, new Operation() {
+
+                    @Override
+                    public int run(final byte[] d, final String t) {
+                        return Utils.toHexText(d).length();
+                    }
+
+                }, new Operation() {
+
+                    @Override
+                    public int run(final byte[] d, final String t) throws Exception {
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream(t.length());
+                        HexOutputStream hos = new HexOutputStream(bos);
+
+                        hos.write(d);
+                        hos.close();
+
+                        return bos.size();
+                    }
+
+                }, rounds);
+
+                HexBenchmark.compare(size, "fromHexText", data, text, new Operation() {
+
+                    @Override
+                    public int run(final byte[] d, final String t) {
+                        return HexTest.legacyFromHexText(t).length;
+                    }
+
+                }, new Operation() {
+
+                    @Override
+                    public int run(final byte[] d, final String t) {
+                        return Utils.fromHexText(t).length;
+                    }
+
+                }, new Operation() {
+
+                    @Override
+                    public int run(final byte[] d, final String t) throws Exception {
+                        HexInputStream his = new HexInputStream(new ByteArrayInputStream(encoded));
+                        ByteArrayOutputStream bos = new ByteArrayOutputStream(d.length);
+
+                        Utils.copyStream(his, bos);
+
+                        return bos.size();
+                    }
+
+                }, rounds);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Misst die alte Variante, die neue {@link Utils}-Methode und den entsprechenden Stream und gibt das Ergebnis als
+     * Tabellenzeile aus.
+     * 
+     * @param size
+     *            Die Datengröße.
+     * @param name
+     *            Der Name der Operation.
+     * @param data
+     *            Die Eingabedaten.
+     * @param text
+     *            Die Eingabedaten als Hextext.
+     * @param legacy
+     *            Die alte Variante.
+     * @param utils
+     *            Die neue {@link Utils}-Methode.
+     * @param stream
+     *            Der Stream.
+     * @param rounds
+     *            Die Anzahl der Runden.
+     * @throws Exception
+     *             Wird geworfen, wenn eine der Operationen fehlschlägt.
+     */
+    private static void compare(final int size, final String name, final byte[] data, final String text,
+            final Operation legacy, final Operation utils, final Operation stream, final int rounds) throws Exception {
+        System.out.println(size + "\t" + name + "\t" + HexBenchmark.measure(legacy, data, text, rounds) + "\t"
+                + HexBenchmark.measure(utils, data, text, rounds) + "\t"
+                + HexBenchmark.measure(stream, data, text, rounds));
+    }
+
+    /**
+     * Misst die mittlere Dauer einer Operation nach einigen Aufwärmrunden.
+     * 
+     * @param operation
+     *            Die Operation.
+     * @param data
+     *            Die Eingabedaten.
+     * @param text
+     *            Die Eingabedaten als Hextext.
+     * @param rounds
+     *            Die Anzahl der Runden.
+     * @return Die mittlere Dauer in Mikrosekunden, formatiert.
+     * @throws Exception
+     *             Wird geworfen, wenn die Operation fehlschlägt.
+     */
+    private static String measure(final Operation operation, final byte[] data, final String text, final int rounds)
+            throws Exception {
+        int sink = 0;
+
+        for (int i = 0; i < HexBenchmark.WARMUP_ROUNDS; i++) {
+            sink += operation.run(data, text);
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < rounds; i++) {
+            sink += operation.run(data, text);
+        }
+
+        long time = (System.nanoTime() - start) / rounds;
+
+        if (sink == 0) {
+            System.out.print("");
+        }
+
+        return String.format("%.1f", time / HexBenchmark.NANOS_PER_MICRO);
+    }
+
+}
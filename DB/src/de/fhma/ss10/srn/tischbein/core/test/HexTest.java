@@ -0,0 +1,144 @@
+package de.fhma.ss10.srn.tischbein.core.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fhma.ss10.srn.tischbein.core.HexInputStream;
+import de.fhma.ss10.srn.tischbein.core.HexOutputStream;
+import de.fhma.ss10.srn.tischbein.core.Utils;
+
+/**
+ * Tests für die Hex-Konvertierung in {@link Utils}, den {@link HexInputStream} und den {@link HexOutputStream}.
+ * 
+ * @author Smolli
+ */
+public final class HexTest {
+
+    /** Breite eines Hextextes wie in {@link Utils}. */
+    private static final int TEXT_BLOCK_WIDTH = 64;
+
+    /**
+     * Die frühere Implementierung von {@link Utils#fromHexText(String)}, auch für den {@link HexBenchmark}.
+     * 
+     * @param text
+     *            Der Hextext.
+     * @return Die Bytes.
+     */
+    static byte[] legacyFromHexText(final String text) {
+        StringBuilder sb = new StringBuilder();
+
+        for (String line : text.split("\n")) {
+            sb.append(line);
+        }
+
+        String hex = sb.toString();
+        byte[] res = new byte[hex.length() / 2];
+
+        for (int i = 0; i < hex.length() / 2; i++) {
+            res[i] = (byte) (int) Integer.decode("#" + hex.substring(i * 2, i * 2 + 2));
+        }
+
+        return res;
+    }
+
+    /**
+     * Die frühere Implementierung von {@link Utils#toHexText(byte[])}, auch für den {@link HexBenchmark}.
+     * 
+     * @param data
+     *            Die Bytes.
+     * @return Der Hextext.
+     */
+    static String legacyToHexText(final byte[] data) {
+        StringBuilder hexString = new StringBuilder();
+
+        for (byte b : data) {
+            if ((b < 16) && (b >= 0)) {
+                hexString.append("0");
+            }
+
+            hexString.append(Integer.toHexString(b & 0xff));
+        }
+
+        String line = hexString.toString();
+        StringBuilder sb = new StringBuilder();
+
+        while (line.length() > HexTest.TEXT_BLOCK_WIDTH) {
+            sb.append(line.substring(0, HexTest.TEXT_BLOCK_WIDTH));
+            sb.append("\n");
+
+            line = line.substring(HexTest.TEXT_BLOCK_WIDTH);
+        }
+
+        sb.append(line);
+
+        return sb.toString();
+    }
+
+    /**
+     * Testet die Konvertierung einzelner Zeilen gegen bekannte Werte.
+     */
+    @Test
+    public void hexLine() {
+        byte[] data = { 0, 1, 15, 16, 127, -128, -1 };
+
+        Assert.assertEquals("00010f107f80ff", Utils.toHexLine(data));
+        Assert.assertArrayEquals(data, Utils.fromHexLine("00010f107f80ff"));
+        Assert.assertArrayEquals(data, Utils.fromHexLine("00010F107F80FF"));
+    }
+
+    /**
+     * Testet, ob Hextext und die Streams dasselbe Format erzeugen und wieder lesen.
+     */
+    @Test
+    public void hexTextAndStreams() {
+        try {
+            for (int length : new int[] { 0, 1, 31, 32, 33, 1000 }) {
+                byte[] data = new byte[length];
+
+                Utils.getRandom().nextBytes(data);
+
+                String text = Utils.toHexText(data);
+
+                Assert.assertArrayEquals(data, Utils.fromHexText(text));
+
+                ByteArrayOutputStream hex = new ByteArrayOutputStream();
+                HexOutputStream out = new HexOutputStream(hex);
+
+                out.write(data);
+                out.close();
+
+                Assert.assertEquals(text, new String(hex.toByteArray()));
+
+                ByteArrayOutputStream plain = new ByteArrayOutputStream();
+
+                Utils.copyStream(new HexInputStream(new ByteArrayInputStream(hex.toByteArray())), plain);
+
+                Assert.assertArrayEquals(data, plain.toByteArray());
+            }
+        } catch (Exception e) {
+            Assert.fail();
+        }
+    }
+
+    /**
+     * Testet, ob die tabellengesteuerte Konvertierung dasselbe Format erzeugt und liest wie die frühere
+     * Implementierung, damit bestehende Datenbanken lesbar bleiben.
+     */
+    @Test
+    public void legacyFormat() {
+        for (int length : new int[] { 0, 1, 31, 32, 33, 1000 }) {
+            byte[] data = new byte[length];
+
+            Utils.getRandom().nextBytes(data);
+
+            String text = Utils.toHexText(data);
+
+            Assert.assertEquals(HexTest.legacyToHexText(data), text);
+            Assert.assertArrayEquals(HexTest.legacyFromHexText(text), Utils.fromHexText(text));
+        }
+    }
+
+}
@@ -1,5 +1,10 @@
 package de.fhma.ss10.srn.tischbein.gui.frames;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Vector;
 
 import javax.swing.DefaultListSelectionModel;
@@ -172,6 +177,30 @@ public final class WorkFrame extends WorkForm implements CloseActionListener, Lo
 
     /** Serial UID. */
     private static final long serialVersionUID = -5369888389274792872L;
+    /** Hält die maximale Anzahl der Bytes, die in der Vorschau angezeigt werden. */
+    private static final int PREVIEW_SIZE = 64 * 1024;
+
+    /**
+     * Dekodiert den Anfang einer Datei für die Vorschau. Ein Zeichen, das an der Grenze der Vorschau zerschnitten
+     * wurde, wird weggelassen, anstatt als Ersatzzeichen zu erscheinen.
+     * 
+     * @param bytes
+     *            Der Anfang der Datei.
+     * @return Der Text der Vorschau.
+     */
+    private static String decodePreview(final ByteBuffer bytes) {
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer text = CharBuffer.allocate((int) Math.ceil(bytes.remaining() * decoder.maxCharsPerByte()));
+
+        // ohne Ende der Eingabe bleibt ein unvollständiges Zeichen am Schluss einfach im Puffer liegen
+        decoder.decode(bytes, text, false);
+
+        text.flip();
+
+        return text.toString();
+    }
+
     /** Hält den eingeloggten Benutzer. */
     private final transient User currentUser;
     /** Hält die momentan ausgewählte Datei. */
@@ -221,7 +250,7 @@ public final class WorkFrame extends WorkForm implements CloseActionListener, Lo
 
     @Override
     public void logout() {
-        this.currentUser.lock();
+        Database.getInstance().logout(this.currentUser);
 
         new LoginFrame();
 
@@ -287,7 +316,8 @@ public final class WorkFrame extends WorkForm implements CloseActionListener, Lo
     }
 
     /**
-     * Setzt die FileView entsprechende der übergebenen Datei.
+     * Setzt die FileView entsprechende der übergebenen Datei. Es wird nur der Anfang der Datei gelesen und
+     * entschlüsselt, damit auch sehr große Dateien sofort angezeigt werden.
      * 
      * @param file
      *            Die Datei.
@@ -296,12 +326,21 @@ public final class WorkFrame extends WorkForm implements CloseActionListener, Lo
      */
     private void setFileView(final FileItem file) throws FileItemException {
         if (file != null) {
-            byte[] content = file.getContent();
+            // ein Byte mehr lesen, um zu erkennen, ob die Datei abgeschnitten wird
+            byte[] content = file.read(0, WorkFrame.PREVIEW_SIZE + 1);
+            String title = file.getName();
+
+            if (content.length > WorkFrame.PREVIEW_SIZE) {
+                this.fileView.setText(WorkFrame.decodePreview(ByteBuffer.wrap(content, 0, WorkFrame.PREVIEW_SIZE)));
+
+                title += " (Vorschau)";
+            } else {
+                this.fileView.setText(new String(content));
+            }
 
-            this.fileView.setText(new String(content));
             this.fileView.setCaretPosition(0);
 
-            ((TitledBorder) this.viewPanel.getBorder()).setTitle(file.getName());
+            ((TitledBorder) this.viewPanel.getBorder()).setTitle(title);
         } else {
             ((TitledBorder) this.viewPanel.getBorder()).setTitle("");
         }